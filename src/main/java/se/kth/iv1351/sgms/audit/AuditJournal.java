@@ -0,0 +1,249 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.audit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import se.kth.iv1351.sgms.integration.Metrics;
+
+/**
+ * An append-only audit journal. Callers hand events to <code>record</code>, which only puts them
+ * in a lock-free ring buffer and returns. A single writer thread drains the buffer and appends
+ * the events to memory-mapped segment files, with a CRC per record. All records drained in one
+ * batch are made durable with one <code>force</code>, and a new segment is started when the
+ * current one is full. Use <code>AuditLogReader</code> or <code>AuditTool</code> to read the
+ * journal.
+ * <p>
+ * Records that are larger than a segment are dropped and counted in
+ * <code>audit.oversized</code>. If the writer thread fails, it abandons the ring buffer, and the
+ * event it failed to write, the events it had not yet written and all later events are dropped and
+ * counted in <code>audit.dropped</code>, so that operations never wait for a writer that is gone.
+ * The failure is thrown by <code>close</code>.
+ */
+public class AuditJournal implements AutoCloseable {
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final AuditRingBuffer ringBuffer;
+    private final Path directory;
+    private final int segmentSize;
+    private final Metrics metrics;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private long segmentNo;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private int unforcedFrom;
+    private volatile Throwable writeFailure;
+
+    /**
+     * Opens the journal in the directory given by the system property <code>sgms.audit.dir</code>
+     * (default <code>audit</code>) with segments of <code>sgms.audit.segmentBytes</code> bytes
+     * (default 64 MiB), and starts the writer thread.
+     *
+     * @param metrics Written records and forces are counted here.
+     */
+    public AuditJournal(Metrics metrics) throws IOException {
+        this(Path.of(System.getProperty("sgms.audit.dir", "audit")),
+             Integer.getInteger("sgms.audit.segmentBytes", 64 * 1024 * 1024), 1 << 16, metrics);
+    }
+
+    /**
+     * Opens the journal in the specified directory, continuing after the last valid record of the
+     * newest segment, and starts the writer thread.
+     *
+     * @param directory      The directory holding the segment files. Created if missing.
+     * @param segmentSize    The size of each segment file, in bytes.
+     * @param bufferCapacity The number of events the ring buffer holds, a power of two.
+     * @param metrics        Written records and forces are counted here.
+     */
+    public AuditJournal(Path directory, int segmentSize, int bufferCapacity, Metrics metrics) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.metrics = metrics;
+        ringBuffer = new AuditRingBuffer(bufferCapacity);
+        Files.createDirectories(directory);
+        openLastSegment();
+        writer = new Thread(this::writeUntilClosed, "audit-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records an event. Does not block unless the writer is a full ring buffer behind, and does
+     * not perform any I/O.
+     *
+     * @param operation The audited operation.
+     * @param outcome   How the operation ended.
+     * @param actor     Who performed the operation.
+     * @param subject   The student personal number or rental agreement id.
+     * @param object    The rental instrument id, or <code>null</code> if there is none.
+     */
+    public void record(AuditRecord.Operation operation, AuditRecord.Outcome outcome, String actor, String subject, String object) {
+        if (!ringBuffer.publish(System.currentTimeMillis(), operation, outcome, actor, subject, object)) {
+            metrics.increment("audit.dropped");
+        }
+    }
+
+    /**
+     * Stops the writer thread after it has written and forced all recorded events.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        segmentChannel.close();
+        Throwable failure = writeFailure;
+        if (failure instanceof UncheckedIOException) {
+            failure = failure.getCause();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw new IOException("The audit journal writer failed.", failure);
+        }
+    }
+
+    private void writeUntilClosed() {
+        try {
+            while (running || !ringBuffer.isEmpty()) {
+                int written = ringBuffer.drain(this::append);
+                if (written > 0) {
+                    force();
+                    metrics.add("audit.records", written);
+                } else {
+                    LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                }
+            }
+            force();
+        } catch (Throwable failure) {
+            writeFailure = failure;
+            metrics.increment("audit.write_failures");
+            ringBuffer.abandon();
+            dropUntilClosed();
+        }
+    }
+
+    private void dropUntilClosed() {
+        while (running) {
+            int dropped = ringBuffer.drain(AuditJournal::drop);
+            if (dropped > 0) {
+                metrics.add("audit.dropped", dropped);
+            } else {
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+            }
+        }
+        metrics.add("audit.dropped", ringBuffer.drain(AuditJournal::drop));
+    }
+
+    private static void drop(long timestampMillis, AuditRecord.Operation operation, AuditRecord.Outcome outcome,
+                             String actor, String subject, String object) {
+    }
+
+    private void append(long timestampMillis, AuditRecord.Operation operation, AuditRecord.Outcome outcome,
+                        String actor, String subject, String object) {
+        byte[] actorBytes = AuditLogFormat.encodeField(actor);
+        byte[] subjectBytes = AuditLogFormat.encodeField(subject);
+        byte[] objectBytes = AuditLogFormat.encodeField(object);
+        int payloadLength = AuditLogFormat.FIXED_PAYLOAD_SIZE + actorBytes.length + subjectBytes.length + objectBytes.length;
+        if (AuditLogFormat.HEADER_SIZE + payloadLength > segmentSize) {
+            metrics.increment("audit.oversized");
+            return;
+        }
+        try {
+            if (segment.remaining() < AuditLogFormat.HEADER_SIZE + payloadLength) {
+                rotate();
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        int start = segment.position();
+        segment.position(start + AuditLogFormat.HEADER_SIZE);
+        segment.putLong(timestampMillis);
+        segment.put((byte) operation.ordinal());
+        segment.put((byte) outcome.ordinal());
+        putField(actorBytes);
+        putField(subjectBytes);
+        putField(objectBytes);
+        segment.putInt(start + Integer.BYTES, AuditLogFormat.crc(segment, start + AuditLogFormat.HEADER_SIZE, payloadLength));
+        segment.putInt(start, payloadLength);
+    }
+
+    private void putField(byte[] field) {
+        segment.putShort((short) field.length);
+        segment.put(field);
+    }
+
+    private void force() {
+        int forceTo = segment.position();
+        if (forceTo > unforcedFrom) {
+            segment.force(unforcedFrom, forceTo - unforcedFrom);
+            unforcedFrom = forceTo;
+            metrics.increment("audit.forces");
+        }
+    }
+
+    private void rotate() throws IOException {
+        force();
+        segmentChannel.close();
+        openSegment(segmentNo + 1);
+        metrics.increment("audit.segments");
+    }
+
+    private void openLastSegment() throws IOException {
+        List<Path> segments = AuditLogFormat.segments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0);
+            return;
+        }
+        openSegment(AuditLogFormat.segmentNo(segments.get(segments.size() - 1)));
+        while (AuditLogFormat.read(segment) != null) {
+            // Skips all valid records, a torn record at the end is overwritten.
+        }
+        unforcedFrom = segment.position();
+    }
+
+    private void openSegment(long newSegmentNo) throws IOException {
+        segmentNo = newSegmentNo;
+        Path file = directory.resolve(AuditLogFormat.segmentName(segmentNo));
+        segmentChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        unforcedFrom = 0;
+    }
+}
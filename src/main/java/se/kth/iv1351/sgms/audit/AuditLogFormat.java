@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * The binary layout of the audit log. The log is a directory of equally sized segment files,
+ * named by their sequence number. Each record is laid out as
+ * <pre>
+ * int    payload length (always > 0)
+ * int    CRC32C of the payload
+ * long   timestamp, milliseconds since the epoch
+ * byte   operation ordinal
+ * byte   outcome ordinal
+ * short  actor length, followed by the actor in UTF-8
+ * short  subject length, followed by the subject in UTF-8
+ * short  object length, followed by the object in UTF-8
+ * </pre>
+ * A length of zero marks the end of the records in a segment. Segment files are created
+ * zero-filled, so the unused tail of a segment always reads as end of records.
+ */
+final class AuditLogFormat {
+    static final int HEADER_SIZE = Integer.BYTES * 2;
+    static final int FIXED_PAYLOAD_SIZE = Long.BYTES + 2 + Short.BYTES * 3;
+    static final int MAX_FIELD_BYTES = Short.MAX_VALUE;
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private AuditLogFormat() {
+    }
+
+    static String segmentName(long segmentNo) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, segmentNo, SEGMENT_SUFFIX);
+    }
+
+    static long segmentNo(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * @return All segments in the specified directory, oldest first.
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    static byte[] encodeField(String field) {
+        byte[] bytes = (field == null ? "" : field).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_FIELD_BYTES) {
+            byte[] truncated = new byte[MAX_FIELD_BYTES];
+            System.arraycopy(bytes, 0, truncated, 0, MAX_FIELD_BYTES);
+            return truncated;
+        }
+        return bytes;
+    }
+
+    static int crc(ByteBuffer buffer, int payloadStart, int payloadLength) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(payloadStart + payloadLength).position(payloadStart);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads the record at the current position of the specified buffer and moves the position
+     * past it.
+     *
+     * @return The record, or <code>null</code> if the position is at the end of the records or
+     *         the record is torn or corrupt. The position is not moved if <code>null</code> is
+     *         returned.
+     */
+    static AuditRecord read(ByteBuffer segment) {
+        int start = segment.position();
+        if (segment.remaining() < HEADER_SIZE + FIXED_PAYLOAD_SIZE) {
+            return null;
+        }
+        int length = segment.getInt(start);
+        if (length < FIXED_PAYLOAD_SIZE || length > segment.remaining() - HEADER_SIZE) {
+            return null;
+        }
+        int storedCrc = segment.getInt(start + Integer.BYTES);
+        if (storedCrc != crc(segment, start + HEADER_SIZE, length)) {
+            return null;
+        }
+        ByteBuffer payload = segment.duplicate();
+        payload.position(start + HEADER_SIZE);
+        long timestamp = payload.getLong();
+        AuditRecord.Operation operation = AuditRecord.Operation.values()[payload.get()];
+        AuditRecord.Outcome outcome = AuditRecord.Outcome.values()[payload.get()];
+        String actor = readField(payload);
+        String subject = readField(payload);
+        String object = readField(payload);
+        segment.position(start + HEADER_SIZE + length);
+        return new AuditRecord(timestamp, operation, outcome, actor, subject, object);
+    }
+
+    private static String readField(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getShort()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.audit;
+
+import java.time.Instant;
+
+/**
+ * One entry in the audit journal: who did what to what, when, and how it ended.
+ */
+public class AuditRecord {
+    /**
+     * The audited operations.
+     */
+    public enum Operation {
+        RENT, TERMINATE
+    }
+
+    /**
+     * How an audited operation ended.
+     */
+    public enum Outcome {
+        /**
+         * The operation was performed.
+         */
+        SUCCESS,
+        /**
+         * The operation was refused, for example because the student already has the maximum
+         * number of rentals.
+         */
+        REJECTED,
+        /**
+         * The operation failed with an exception.
+         */
+        FAILED
+    }
+
+    private final long timestampMillis;
+    private final Operation operation;
+    private final Outcome outcome;
+    private final String actor;
+    private final String subject;
+    private final String object;
+
+    /**
+     * @param timestampMillis When the operation ended, in milliseconds since the epoch.
+     * @param operation       The operation.
+     * @param outcome         How the operation ended.
+     * @param actor           Who performed the operation.
+     * @param subject         The student personal number or rental agreement id the operation
+     *                        was performed for.
+     * @param object          The rental instrument id, or an empty string if there is none.
+     */
+    public AuditRecord(long timestampMillis, Operation operation, Outcome outcome, String actor, String subject, String object) {
+        this.timestampMillis = timestampMillis;
+        this.operation = operation;
+        this.outcome = outcome;
+        this.actor = actor;
+        this.subject = subject;
+        this.object = object;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getObject() {
+        return object;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + Instant.ofEpochMilli(timestampMillis) +
+                ", " + operation +
+                ", " + outcome +
+                ", by: " + actor +
+                ", subject: " + subject +
+                ", object: " + object +
+                ']';
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free ring buffer with many producers and a single consumer. Producers claim a
+ * sequence number with one atomic increment, write the event into the slot of that sequence and
+ * publish the slot. Events are stored in preallocated parallel arrays, so publishing does not
+ * allocate. If the consumer falls a full buffer behind, producers wait for it instead of
+ * dropping events, unless the consumer has abandoned the buffer.
+ */
+class AuditRingBuffer {
+    private static final long UNPUBLISHED = -1;
+
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLongArray published;
+    private final long[] timestamps;
+    private final AuditRecord.Operation[] operations;
+    private final AuditRecord.Outcome[] outcomes;
+    private final String[] actors;
+    private final String[] subjects;
+    private final String[] objects;
+    private volatile boolean abandoned;
+
+    /**
+     * @param capacity The number of slots, must be a power of two.
+     */
+    AuditRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, UNPUBLISHED);
+        }
+        timestamps = new long[capacity];
+        operations = new AuditRecord.Operation[capacity];
+        outcomes = new AuditRecord.Outcome[capacity];
+        actors = new String[capacity];
+        subjects = new String[capacity];
+        objects = new String[capacity];
+    }
+
+    /**
+     * Adds an event. May be called by any number of threads concurrently.
+     *
+     * @return <code>false</code> if the event was not added, because the consumer has abandoned
+     *         the buffer.
+     */
+    boolean publish(long timestampMillis, AuditRecord.Operation operation, AuditRecord.Outcome outcome,
+                    String actor, String subject, String object) {
+        if (abandoned) {
+            return false;
+        }
+        long sequence = claimed.getAndIncrement();
+        while (sequence - consumed.get() > mask) {
+            if (abandoned) {
+                return false;
+            }
+            LockSupport.parkNanos(1_000);
+        }
+        int slot = (int) sequence & mask;
+        timestamps[slot] = timestampMillis;
+        operations[slot] = operation;
+        outcomes[slot] = outcome;
+        actors[slot] = actor;
+        subjects[slot] = subject;
+        objects[slot] = object;
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    /**
+     * Tells producers that no more events will be consumed, so that they stop waiting for free
+     * slots and stop adding events.
+     */
+    void abandon() {
+        abandoned = true;
+    }
+
+    /**
+     * Hands all events published so far, in sequence order, to the specified handler. Must only
+     * be called by the single consumer thread. If the handler throws, the events before the one
+     * it threw for are consumed, that one and all later ones are handed out again by the next call.
+     *
+     * @return The number of handled events.
+     */
+    int drain(AuditEventHandler handler) {
+        long next = consumed.get();
+        int handled = 0;
+        int slot = (int) next & mask;
+        try {
+            while (published.get(slot) == next) {
+                handler.onEvent(timestamps[slot], operations[slot], outcomes[slot], actors[slot], subjects[slot], objects[slot]);
+                actors[slot] = null;
+                subjects[slot] = null;
+                objects[slot] = null;
+                next++;
+                handled++;
+                slot = (int) next & mask;
+            }
+        } finally {
+            consumed.lazySet(next);
+        }
+        return handled;
+    }
+
+    /**
+     * @return <code>true</code> if every claimed slot has been consumed.
+     */
+    boolean isEmpty() {
+        return consumed.get() == claimed.get();
+    }
+
+    /**
+     * Receives events drained from the buffer.
+     */
+    interface AuditEventHandler {
+        void onEvent(long timestampMillis, AuditRecord.Operation operation, AuditRecord.Outcome outcome,
+                     String actor, String subject, String object);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.audit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.function.Predicate;
+
+/**
+ * Prints the records of an audit journal. Usage:
+ * <pre>
+ * AuditTool [--dir &lt;directory&gt;] [--op rent|terminate] [--outcome success|rejected|failed]
+ *           [--subject &lt;personal number or rental agreement id&gt;] [--actor &lt;actor&gt;]
+ *           [--since &lt;yyyy-mm-dd&gt;] [--count]
+ * </pre>
+ * The directory defaults to the system property <code>sgms.audit.dir</code>, or
+ * <code>audit</code>.
+ */
+public class AuditTool {
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(System.getProperty("sgms.audit.dir", "audit"));
+        Predicate<AuditRecord> filter = record -> true;
+        boolean onlyCount = false;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--count")) {
+                onlyCount = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + option);
+                return;
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--dir":
+                    directory = Path.of(value);
+                    break;
+                case "--op":
+                    AuditRecord.Operation operation = AuditRecord.Operation.valueOf(value.toUpperCase());
+                    filter = filter.and(record -> record.getOperation() == operation);
+                    break;
+                case "--outcome":
+                    AuditRecord.Outcome outcome = AuditRecord.Outcome.valueOf(value.toUpperCase());
+                    filter = filter.and(record -> record.getOutcome() == outcome);
+                    break;
+                case "--subject":
+                    filter = filter.and(record -> record.getSubject().equals(value));
+                    break;
+                case "--actor":
+                    filter = filter.and(record -> record.getActor().equals(value));
+                    break;
+                case "--since":
+                    long since = LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    filter = filter.and(record -> record.getTimestampMillis() >= since);
+                    break;
+                default:
+                    usage("Unknown option " + option);
+                    return;
+            }
+        }
+
+        Predicate<AuditRecord> matches = filter;
+        long[] matching = new long[1];
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        boolean print = !onlyCount;
+        long total = new AuditLogReader(directory).replay(record -> {
+            if (!matches.test(record)) {
+                return;
+            }
+            matching[0]++;
+            if (print) {
+                try {
+                    out.write(record.toString());
+                    out.newLine();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+        });
+        out.write(matching[0] + " of " + total + " records matched.");
+        out.newLine();
+        out.flush();
+    }
+
+    private static void usage(String problem) {
+        System.out.println(problem);
+        System.out.println("Usage: AuditTool [--dir <directory>] [--op rent|terminate] [--outcome success|rejected|failed]"
+                           + " [--subject <id>] [--actor <actor>] [--since <yyyy-mm-dd>] [--count]");
+    }
+}
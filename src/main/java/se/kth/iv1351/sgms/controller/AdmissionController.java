@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.controller;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import se.kth.iv1351.sgms.integration.Metrics;
+import se.kth.iv1351.sgms.model.RejectedException;
+
+/**
+ * Caps the number of operations that use the database at the same time. An operation that can
+ * not start within a short wait is rejected immediately with a busy message, instead of queueing
+ * until the database is overloaded.
+ */
+class AdmissionController {
+    private final Semaphore permits;
+    private final long maxWaitMillis;
+    private final Metrics metrics;
+
+    /**
+     * @param maxInFlight   The maximum number of operations executing at the same time.
+     * @param maxWaitMillis The longest time an operation waits to start before it is rejected.
+     * @param metrics       Admitted and rejected operations are counted here.
+     */
+    AdmissionController(int maxInFlight, long maxWaitMillis, Metrics metrics) {
+        this.permits = new Semaphore(maxInFlight);
+        this.maxWaitMillis = maxWaitMillis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Waits, at most the configured time, until the operation may start. Every call that returns
+     * normally must be followed by a call to <code>exit</code>.
+     *
+     * @throws RejectedException If too many operations are executing.
+     */
+    void enter() throws RejectedException {
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                metrics.increment("admission.rejected");
+                throw new RejectedException("Busy, too many operations in progress. Please try again.");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RejectedException("Interrupted while waiting to start operation.", ie);
+        }
+        metrics.increment("admission.admitted");
+    }
+
+    /**
+     * Tells that an admitted operation is done.
+     */
+    void exit() {
+        permits.release();
+    }
+}
@@ -23,11 +23,34 @@
 
 package se.kth.iv1351.sgms.controller;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import se.kth.iv1351.sgms.audit.AuditJournal;
+import se.kth.iv1351.sgms.audit.AuditRecord;
+import se.kth.iv1351.sgms.integration.CircuitBreaker;
+import se.kth.iv1351.sgms.integration.IsolationLevel;
+import se.kth.iv1351.sgms.integration.Metrics;
 import se.kth.iv1351.sgms.integration.SchoolDAO;
 import se.kth.iv1351.sgms.integration.SchoolDBException;
+import se.kth.iv1351.sgms.integration.ShardMap;
+import se.kth.iv1351.sgms.integration.ShardedDatabase;
+import se.kth.iv1351.sgms.integration.SnapshotReader;
+import se.kth.iv1351.sgms.integration.TransactionTemplate;
 import se.kth.iv1351.sgms.model.*;
 
 /**
@@ -35,78 +58,1278 @@ import se.kth.iv1351.sgms.model.*;
  * The controller is also responsible for calling the DAO. Typically, the
  * controller first calls the DAO to retrieve data (if needed), then operates on
  * the data, and finally tells the DAO to store the updated data (if any).
+ * Each operation is executed in one transaction, which is retried if it fails
+ * because of a conflict with another transaction or a broken connection.
+ * Rentals and terminations are recorded in the audit journal. Each operation
+ * has a deadline, reads get <code>sgms.deadline.readMillis</code> (default 5000)
+ * and writes <code>sgms.deadline.writeMillis</code> (default 3000), and is
+ * rejected with <code>RejectedException</code> if too many operations are
+ * already executing. Rental statistics are built from the rental history on
+ * first use and then kept up to date by the rentals and terminations made
+ * through this controller. Additional sessions, each with its own database
+ * connection, are opened with <code>openSession</code>. Further features:
+ * <ul>
+ * <li>If the branches of the school have separate databases, see
+ * <code>ShardMap</code>, rentals are made in the database of this client's
+ * branch, and instruments and agreements are listed from all branches.</li>
+ * <li>Students that can not find an available instrument can join a waitlist,
+ * returned instruments are given to the first student in the waitlist for their
+ * type.</li>
+ * <li>Rentals and terminations can be given a client request key, a retry with
+ * the same key returns the outcome of the first request instead of executing it
+ * again.</li>
+ * <li>The schedule of all instructors is held in memory, see
+ * <code>InstructorSchedule</code>, to find free instructors and overlapping
+ * lessons without querying the database.</li>
+ * <li>Reports of past days are read from one snapshot of the database, on
+ * connections shared by all sessions, see <code>SnapshotReader</code>.</li>
+ * <li>The overviews of many students are read in batches, see
+ * <code>StudentOverviewLoader</code>.</li>
+ * </ul>
+ * Background jobs create overdue reminders, apply fees, serve the waitlist,
+ * remove expired request keys and old schedule changes, and check the database,
+ * see the constructor and <code>getDatabaseHealth</code>.
  */
 public class Controller {
+    private static final String RENTAL_SUCCESSFUL = "rental successful";
+    private static final String TERMINATION_SUCCESSFUL = "Terminated successfully";
+    private static final String OVERDUE_JOB = "overdue";
+    private static final String FEES_JOB = "fees";
+    private static final String WAITLIST_JOB = "waitlist";
+    private static final String WAITLIST_ACTOR = "waitlist";
+    private static final String REQUEST_KEYS_JOB = "requestKeys";
+    private static final String HEALTH_JOB = "health";
+    private static final String SCHEDULE_JOB = "schedule";
+    private static final String STARTUP_READY_METRIC = "startup.readyMillis";
+    private static final String[] LESSON_TABLES = {"individual_lesson", "group_lesson", "ensemble"};
+    private static final String[] INSTRUCTOR_TABLES = {"instructor", "instructor_instrument"};
+    private static final String RENT_REQUEST = "rent";
+    private static final String TERMINATE_REQUEST = "terminate";
+    private static final int MAX_ACTIVE_RENTALS = 2;
+
     private final SchoolDAO schoolDb;
+    private final ShardedDatabase shards;
+    private final SnapshotReader reports;
+    private final Metrics metrics;
+    private final TransactionTemplate transactions;
+    private final IsolationLevel rentIsolation;
+    private final AuditJournal audit;
+    private final AdmissionController admission;
+    private final long readDeadlineMillis = Long.getLong("sgms.deadline.readMillis", 5000);
+    private final long writeDeadlineMillis = Long.getLong("sgms.deadline.writeMillis", 3000);
+    private final long reportDeadlineMillis = Long.getLong("sgms.deadline.reportMillis", 60000);
+    private final int rentalTermMonths = Integer.getInteger("sgms.overdue.termMonths", 12);
+    private final int waitlistBatchSize = Integer.getInteger("sgms.waitlist.batchSize", 50);
+    private final Duration lessonLength = Duration.ofMinutes(Integer.getInteger("sgms.lesson.durationMinutes", 60));
+    private final Duration scheduleSlotLength = Duration.ofMinutes(Integer.getInteger("sgms.schedule.slotMinutes", 15));
+    private final Duration scheduleRefreshInterval = Duration.ofMillis(Long.getLong("sgms.schedule.refreshMillis", 1000));
+    private final int scheduleChangeRetentionDays = Integer.getInteger("sgms.schedule.changeRetentionDays", 7);
+    private final String deskUser = System.getProperty("user.name");
+    private final AtomicReference<RentalStatistics> statistics;
+    private final AtomicLong statisticsEventsStarted;
+    private final AtomicLong statisticsEventsRecorded;
+    private final AtomicReference<InstructorSchedule> schedule;
+    private final RequestKeys requestKeys;
+    private final AtomicInteger openSessions;
+    private final boolean ownsAudit;
+    private final JobScheduler jobs;
+    private final Controller jobSession;
+    private final JobScheduler healthJobs;
+    private final Controller healthSession;
+
+    /**
+     * Creates a new instance. The database connection is opened in the background, this
+     * constructor returns without waiting for it. Rentals are executed with the isolation level
+     * given by the system property <code>sgms.rent.isolation</code>, default
+     * <code>SERIALIZABLE</code>. Request keys expire after
+     * <code>sgms.requestKeys.ttlMinutes</code> (default 1440). These background jobs are run now
+     * and then regularly, each unless its system property <code>sgms.&lt;job&gt;.enabled</code>
+     * is <code>false</code>, or the database does not support the statements of the job:
+     * <ul>
+     * <li><code>overdue</code> creates reminders about overdue rentals, every day at
+     * <code>sgms.overdue.runAt</code> (default 02:00).</li>
+     * <li><code>fees</code> applies fees that have started to the listed instruments, every day at
+     * the same time.</li>
+     * <li><code>waitlist</code> gives available instruments to waitlisted students, every
+     * <code>sgms.waitlist.tickSeconds</code> (default 60).</li>
+     * <li><code>requestKeys</code> removes expired request keys, every hour.</li>
+     * <li><code>schedule</code> removes schedule changes older than
+     * <code>sgms.schedule.changeRetentionDays</code> (default 7), every day.</li>
+     * <li><code>health</code> reaches the database, every <code>sgms.db.healthCheckSeconds</code>
+     * (default 5).</li>
+     * </ul>
+     * The health check runs in a session and on a thread of its own, all other jobs share
+     * another session and thread.
+     *
+     * @throws IOException If the audit journal could not be opened.
+     */
+    public Controller() throws SchoolDBException, IOException {
+        this(true);
+    }
+
+    /**
+     * Creates a new instance, see {@link #Controller()}. The time from JVM start until the
+     * database connection is open, that is until the first command can be served, is recorded
+     * as the metric <code>startup.readyMillis</code>.
+     *
+     * @param runJobs <code>false</code> if no background jobs shall be run, whatever the
+     *                <code>sgms.&lt;job&gt;.enabled</code> properties say. This is used when
+     *                the application is only started to record the class data sharing archive,
+     *                and must not change the database.
+     * @throws IOException If the audit journal could not be opened.
+     */
+    public Controller(boolean runJobs) throws SchoolDBException, IOException {
+        metrics = new Metrics();
+        shards = new ShardedDatabase(new ShardMap(), metrics);
+        schoolDb = new SchoolDAO(homeUrl());
+        reports = new SnapshotReader(homeUrl(), Integer.getInteger("sgms.report.workers", 4), metrics);
+        transactions = new TransactionTemplate(schoolDb, metrics);
+        rentIsolation = IsolationLevel.valueOf(System.getProperty("sgms.rent.isolation", "SERIALIZABLE"));
+        audit = new AuditJournal(metrics);
+        admission = new AdmissionController(Integer.getInteger("sgms.admission.maxInFlight", 16),
+                                            Long.getLong("sgms.admission.maxWaitMillis", 50), metrics);
+        statistics = new AtomicReference<>();
+        statisticsEventsStarted = new AtomicLong();
+        statisticsEventsRecorded = new AtomicLong();
+        schedule = new AtomicReference<>();
+        requestKeys = new RequestKeys(Duration.ofMinutes(Integer.getInteger("sgms.requestKeys.ttlMinutes", 1440)), metrics);
+        openSessions = new AtomicInteger(1);
+        ownsAudit = true;
+        schoolDb.whenConnected(() -> metrics.add(STARTUP_READY_METRIC, ManagementFactory.getRuntimeMXBean().getUptime()));
+        boolean overdue = runJobs && isJobEnabled(OVERDUE_JOB);
+        boolean fees = runJobs && isJobEnabled(FEES_JOB);
+        boolean waitlist = runJobs && isJobEnabled(WAITLIST_JOB) && schoolDb.supportsWaitlists();
+        boolean expireKeys = runJobs && isJobEnabled(REQUEST_KEYS_JOB);
+        boolean cleanSchedule = runJobs && isJobEnabled(SCHEDULE_JOB) && schoolDb.supportsScheduleChanges();
+        if (overdue || fees || waitlist || expireKeys || cleanSchedule) {
+            jobs = new JobScheduler("sgms-jobs", metrics);
+            jobSession = openSession();
+            LocalTime runAt = LocalTime.parse(System.getProperty("sgms.overdue.runAt", "02:00"));
+            if (overdue)
+                jobs.scheduleDaily(OVERDUE_JOB, runAt, jobSession::createOverdueReminders);
+            if (fees)
+                jobs.scheduleDaily(FEES_JOB, runAt, jobSession::refreshInstrumentFees);
+            if (waitlist)
+                jobs.scheduleEvery(WAITLIST_JOB, Duration.ofSeconds(Long.getLong("sgms.waitlist.tickSeconds", 60)),
+                                   jobSession::allocateWaitlistedInstruments);
+            if (expireKeys)
+                jobs.scheduleEvery(REQUEST_KEYS_JOB, Duration.ofHours(1), jobSession::removeExpiredRequestKeys);
+            if (cleanSchedule)
+                jobs.scheduleDaily(SCHEDULE_JOB, runAt, jobSession::removeOldScheduleChanges);
+        } else {
+            jobs = null;
+            jobSession = null;
+        }
+        if (runJobs && isJobEnabled(HEALTH_JOB)) {
+            healthJobs = new JobScheduler("sgms-health", metrics);
+            healthSession = openSession();
+            healthJobs.scheduleEvery(HEALTH_JOB, Duration.ofSeconds(Long.getLong("sgms.db.healthCheckSeconds", 5)),
+                                     healthSession::checkDatabase);
+        } else {
+            healthJobs = null;
+            healthSession = null;
+        }
+    }
 
-    public Controller() throws SchoolDBException {
-        schoolDb = new SchoolDAO();
+    /**
+     * @return <code>false</code> if the system property <code>sgms.&lt;job&gt;.enabled</code> is
+     *         <code>false</code>, else <code>true</code>.
+     */
+    private static boolean isJobEnabled(String job) {
+        return Boolean.parseBoolean(System.getProperty("sgms." + job + ".enabled", "true"));
     }
 
-    public List<? extends InstrumentDTO> getAllInstruments() throws InstrumentException {
+    private Controller(Controller parent) {
+        metrics = parent.metrics;
+        shards = parent.shards;
+        reports = parent.reports;
+        schoolDb = new SchoolDAO(homeUrl());
+        transactions = new TransactionTemplate(schoolDb, metrics);
+        rentIsolation = parent.rentIsolation;
+        audit = parent.audit;
+        admission = parent.admission;
+        statistics = parent.statistics;
+        statisticsEventsStarted = parent.statisticsEventsStarted;
+        statisticsEventsRecorded = parent.statisticsEventsRecorded;
+        schedule = parent.schedule;
+        requestKeys = parent.requestKeys;
+        openSessions = parent.openSessions;
+        openSessions.incrementAndGet();
+        ownsAudit = false;
+        jobs = null;
+        jobSession = null;
+        healthJobs = null;
+        healthSession = null;
+    }
+
+    /**
+     * Opens a new session, with its own database connection. The session shares metrics, audit
+     * journal, admission limit, rental statistics and instructor schedule with this controller. A controller executes
+     * one operation at a time, operations that shall execute concurrently must use different
+     * sessions.
+     *
+     * @return The new session. It must be closed when it is no longer used.
+     */
+    public Controller openSession() {
+        return new Controller(this);
+    }
+
+    /**
+     * Closes the database connection. If this is not a session opened with
+     * <code>openSession</code>, all recorded audit events are also written to disk and the audit
+     * journal is closed.
+     */
+    public void close() throws IOException {
+        if (jobs != null) {
+            jobs.shutdown();
+            jobSession.close();
+        }
+        if (healthJobs != null) {
+            healthJobs.shutdown();
+            healthSession.close();
+        }
+        schoolDb.close();
+        openSessions.decrementAndGet();
+        if (ownsAudit) {
+            shards.close();
+            reports.close();
+            audit.close();
+        }
+    }
+
+    /**
+     * Waits until the database connection is open. It is never necessary to call this method,
+     * operations wait for the connection themselves.
+     *
+     * @throws SchoolDBException If the database could not be reached.
+     */
+    public void awaitStartup() throws SchoolDBException {
+        schoolDb.awaitConnection();
+    }
+
+    /**
+     * @return The current value of all counters, for example committed, retried and aborted
+     *         transactions.
+     */
+    public Map<String, Long> getMetrics() {
+        return metrics.snapshot();
+    }
+
+    public List<? extends InstrumentDTO> getAllInstruments() throws InstrumentException, RejectedException {
+        admission.enter();
         try {
-            return schoolDb.readAllInstruments();
+            if (shards.getShardMap().isSharded()) {
+                return shards.readAll(IsolationLevel.READ_COMMITTED, readDeadlineMillis, SchoolDAO::readAllInstruments,
+                                      SchoolDAO.INSTRUMENT_ORDER);
+            }
+            return transactions.execute(IsolationLevel.READ_COMMITTED, readDeadlineMillis, schoolDb::readAllInstruments);
         } catch (Exception e) {
             throw new InstrumentException("Unable to list instruments.", e);
+        } finally {
+            admission.exit();
         }
     }
 
-    public List<? extends InstrumentDTO> getInstrumentsForType(String instrument) throws InstrumentException {
+    public List<? extends InstrumentDTO> getInstrumentsForType(String instrument) throws InstrumentException, RejectedException {
         if (instrument == null) {
             return new ArrayList<>();
         }
+        admission.enter();
         try {
-            return schoolDb.readInstrumentsByType(instrument);
+            if (shards.getShardMap().isSharded()) {
+                return shards.readAll(IsolationLevel.READ_COMMITTED, readDeadlineMillis, shard -> shard.readInstrumentsByType(instrument),
+                                      SchoolDAO.INSTRUMENT_ORDER);
+            }
+            return transactions.execute(IsolationLevel.READ_COMMITTED, readDeadlineMillis, () -> schoolDb.readInstrumentsByType(instrument));
         } catch (Exception e) {
             throw new InstrumentException("Could not search for instrument.", e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Rents the specified instrument to the specified student, unless the student already has the
+     * maximum number of active rentals. The check and the rental are executed in the same
+     * transaction, with the isolation level given by <code>sgms.rent.isolation</code>. With
+     * <code>SERIALIZABLE</code>, two concurrent rentals can never both pass the check.
+     */
+    public String rent(String studentPersonalNumber, String rentalInstrumentId) throws SchoolDBException, InstrumentException, RejectedException {
+        return rent(studentPersonalNumber, rentalInstrumentId, null);
+    }
+
+    /**
+     * Same as <code>rent(studentPersonalNumber, rentalInstrumentId)</code>, but the rental is
+     * made at most once for each request key. A retry with the same key returns the outcome of
+     * the first rental, and a retry that arrives while the first rental is executing waits for
+     * it. The key is stored in the same transaction as the rental.
+     *
+     * @param requestKey The client's key of this request, or <code>null</code> if the request
+     *                   shall always be executed.
+     */
+    public String rent(String studentPersonalNumber, String rentalInstrumentId, String requestKey) throws SchoolDBException, InstrumentException, RejectedException {
+        admission.enter();
+        try {
+            if (requestKey == null)
+                return rentOnce(studentPersonalNumber, rentalInstrumentId, null);
+            return requestKeys.execute(RENT_REQUEST, requestKey, writeDeadlineMillis,
+                                       () -> rentOnce(studentPersonalNumber, rentalInstrumentId, requestKey));
+        } catch (SchoolDBException sdbe) {
+            audit.record(AuditRecord.Operation.RENT, AuditRecord.Outcome.FAILED, deskUser, studentPersonalNumber, rentalInstrumentId);
+            throw sdbe;
+        } finally {
+            admission.exit();
         }
     }
 
-    public String rent(String studentPersonalNumber, String rentalInstrumentId) throws SchoolDBException, InstrumentException {
+    private String rentOnce(String studentPersonalNumber, String rentalInstrumentId, String requestKey) throws SchoolDBException {
+        Keyed<String> keyed = transactions.execute(rentIsolation, writeDeadlineMillis, () -> {
+            String previousOutcome = claimRequestKey(RENT_REQUEST, requestKey);
+            if (previousOutcome != null)
+                return Keyed.replayed(previousOutcome);
+            String outcome = rentInTransaction(studentPersonalNumber, rentalInstrumentId);
+            storeRequestOutcome(RENT_REQUEST, requestKey, outcome);
+            return Keyed.executed(outcome);
+        });
+        if (keyed.isReplayed())
+            return keyed.previousOutcome;
+        rentalCommitted(studentPersonalNumber, rentalInstrumentId, keyed.result, deskUser);
+        return keyed.result;
+    }
+
+    /**
+     * Executes several rentals in one transaction, in the specified order. Each rental is checked
+     * exactly as by <code>rent</code>, and a rental that is not allowed does not stop the
+     * others. If the transaction fails, no rental is made and nothing is recorded in the audit
+     * journal, the caller can then execute the rentals one by one with <code>rent</code>.
+     *
+     * @param studentPersonalNumbers The students, one for each rental.
+     * @param rentalInstrumentIds    The instruments, one for each rental.
+     * @return The outcome of each rental, in the same order as the rentals.
+     */
+    public List<String> rentAll(List<String> studentPersonalNumbers, List<String> rentalInstrumentIds) throws SchoolDBException, RejectedException {
+        if (studentPersonalNumbers.size() != rentalInstrumentIds.size()) {
+            throw new IllegalArgumentException("Each rental must have one student and one instrument.");
+        }
+        admission.enter();
+        try {
+            List<String> outcomes = transactions.execute(rentIsolation, writeDeadlineMillis, () -> {
+                List<String> batchOutcomes = new ArrayList<>();
+                for (int i = 0; i < studentPersonalNumbers.size(); i++)
+                    batchOutcomes.add(rentInTransaction(studentPersonalNumbers.get(i), rentalInstrumentIds.get(i)));
+                return batchOutcomes;
+            });
+            for (int i = 0; i < outcomes.size(); i++)
+                rentalCommitted(studentPersonalNumbers.get(i), rentalInstrumentIds.get(i), outcomes.get(i), deskUser);
+            return outcomes;
+        } finally {
+            admission.exit();
+        }
+    }
+
+    private String rentInTransaction(String studentPersonalNumber, String rentalInstrumentId) throws SchoolDBException {
         String studentId = schoolDb.readStudentIdByPersonalNumber(studentPersonalNumber);
         if (studentId == null)
             return "Student with personal number " + studentPersonalNumber + " does not exist";
 
         Integer nofActiveRentalsForStudent = schoolDb.readNofActiveRentalsForStudent(studentId);
-        if (nofActiveRentalsForStudent >= 2)
+        if (nofActiveRentalsForStudent >= MAX_ACTIVE_RENTALS)
             return  "Student with personal number " + studentPersonalNumber + " already has the maximum number of active rentals.";
 
         schoolDb.createRentalAgreement(studentId, rentalInstrumentId);
-        commitOngoingTransaction("Could not create rental agreement for student " + studentId + " and instrument " + rentalInstrumentId);
-        return "rental successful";
+        return RENTAL_SUCCESSFUL;
+    }
+
+    private void rentalCommitted(String studentPersonalNumber, String rentalInstrumentId, String outcome, String actor) {
+        boolean rented = RENTAL_SUCCESSFUL.equals(outcome);
+        if (rented) {
+            statisticsEventsStarted.incrementAndGet();
+            RentalStatistics currentStatistics = statistics.get();
+            if (currentStatistics != null)
+                currentStatistics.recordRental(rentalInstrumentId, LocalDate.now());
+            statisticsEventsRecorded.incrementAndGet();
+        }
+        audit.record(AuditRecord.Operation.RENT, rented ? AuditRecord.Outcome.SUCCESS : AuditRecord.Outcome.REJECTED,
+                     actor, studentPersonalNumber, rentalInstrumentId);
     }
 
-    public List<? extends RentalAgreementDTO> listActiveAgreements() throws RentalAgreementException {
+    public List<? extends RentalAgreementDTO> listActiveAgreements() throws RentalAgreementException, RejectedException {
+        admission.enter();
         try{
-            return schoolDb.readAllActiveAgreements();
+            if (shards.getShardMap().isSharded()) {
+                return shards.readAll(IsolationLevel.READ_COMMITTED, readDeadlineMillis, SchoolDAO::readAllActiveAgreements,
+                                      SchoolDAO.AGREEMENT_ORDER);
+            }
+            return transactions.execute(IsolationLevel.READ_COMMITTED, readDeadlineMillis, schoolDb::readAllActiveAgreements);
         } catch (Exception e) {
             throw new RentalAgreementException("Unable to list accounts.", e);
+        } finally {
+            admission.exit();
         }
     }
 
-    public String terminate(String rental_agreement_id) throws RentalAgreementException {
+    /**
+     * Lists the agreements that were active at the end of the specified day, rented on or before
+     * that day and not returned until after it. The fee is the fee of the instrument when it was
+     * rented. The agreements are read from one snapshot of the database, by
+     * <code>sgms.report.workers</code> (default 4) parallel transactions sharing the snapshot,
+     * with the deadline <code>sgms.deadline.reportMillis</code> (default 60000). If the branches
+     * have separate databases, each branch is read from its own snapshot.
+     */
+    public List<? extends RentalAgreementDTO> listAgreementsActiveOn(LocalDate date) throws RentalAgreementException, RejectedException {
+        if (date == null) {
+            throw new RentalAgreementException("No date specified.");
+        }
+        admission.enter();
+        try {
+            if (shards.getShardMap().isSharded()) {
+                return shards.readAll(IsolationLevel.REPEATABLE_READ, reportDeadlineMillis, shard -> {
+                    shard.beginSnapshot(null);
+                    return shard.readAgreementsActiveOn(date, 0, 1);
+                }, SchoolDAO.AGREEMENT_ORDER);
+            }
+            return reports.read(reportDeadlineMillis, (db, partition, partitions) -> db.readAgreementsActiveOn(date, partition, partitions),
+                                SchoolDAO.AGREEMENT_ORDER);
+        } catch (Exception e) {
+            throw new RentalAgreementException("Unable to list agreements active on " + date, e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    public String terminate(String rental_agreement_id) throws RentalAgreementException, RejectedException {
+        return terminate(rental_agreement_id, null);
+    }
+
+    /**
+     * Same as <code>terminate(rental_agreement_id)</code>, but the agreement is terminated at most
+     * once for each request key. A retry with the same key returns the outcome of the first
+     * termination, and a retry that arrives while the first termination is executing waits for
+     * it.
+     *
+     * @param requestKey The client's key of this request, or <code>null</code> if the request
+     *                   shall always be executed.
+     */
+    public String terminate(String rental_agreement_id, String requestKey) throws RentalAgreementException, RejectedException {
         String failureMsg = "Could not terminate rental agreement: " + rental_agreement_id;
         if (rental_agreement_id == null) {
             throw new RentalAgreementException(failureMsg);
         }
+        admission.enter();
         try {
-            boolean lockingStatus = schoolDb.lockRentalForUpdate(rental_agreement_id);
-            if (!lockingStatus)
-                return "Could not find rental agreement";
-            schoolDb.updateRentalDateReturned(rental_agreement_id);
-            commitOngoingTransaction(failureMsg);
-            return "Terminated successfully";
+            if (requestKey == null)
+                return terminateOnce(rental_agreement_id, null);
+            return requestKeys.execute(TERMINATE_REQUEST, requestKey, writeDeadlineMillis,
+                                       () -> terminateOnce(rental_agreement_id, requestKey));
         } catch (Exception e) {
+            audit.record(AuditRecord.Operation.TERMINATE, AuditRecord.Outcome.FAILED, deskUser, rental_agreement_id, null);
             throw new RentalAgreementException(failureMsg, e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Terminates an agreement. The request key is claimed, and its outcome stored, in one
+     * transaction in the database of this client's branch. An agreement that is not in this
+     * branch is terminated in its own branch while that transaction is still open. The key row
+     * then stays locked until the outcome is committed, so a duplicate request waits for the
+     * outcome instead of finding the key without one and executing again. There is no
+     * transaction spanning both databases, the other branch commits first. If the home
+     * transaction is retried after that, the result of the other branch is reused instead of
+     * terminating again, which would report the agreement as already terminated.
+     */
+    private String terminateOnce(String rentalAgreementId, String requestKey) throws SchoolDBException {
+        AtomicReference<RentalPeriod> otherBranchRental = new AtomicReference<>();
+        Keyed<RentalPeriod> keyed = transactions.execute(IsolationLevel.READ_COMMITTED, writeDeadlineMillis, () -> {
+            String previousOutcome = claimRequestKey(TERMINATE_REQUEST, requestKey);
+            if (previousOutcome != null)
+                return Keyed.replayed(previousOutcome);
+            RentalPeriod lockedRental = terminateInTransaction(schoolDb, rentalAgreementId);
+            if (lockedRental == null) {
+                if (otherBranchRental.get() == null)
+                    otherBranchRental.set(terminateInOtherBranch(rentalAgreementId));
+                lockedRental = otherBranchRental.get();
+            }
+            storeRequestOutcome(TERMINATE_REQUEST, requestKey, terminationOutcome(lockedRental));
+            return Keyed.executed(lockedRental);
+        });
+        if (keyed.isReplayed())
+            return keyed.previousOutcome;
+        RentalPeriod rental = keyed.result;
+        String outcome = terminationCommitted(rentalAgreementId, rental);
+        if (TERMINATION_SUCCESSFUL.equals(outcome))
+            allocateReturnedInstrument(rental);
+        return outcome;
+    }
+
+    /**
+     * Terminates several rental agreements of this client's branch in one transaction, in the
+     * specified order. Agreements that are not in this client's branch are not terminated, since
+     * that would need a transaction in each branch, and must be terminated with
+     * <code>terminate</code>. If the transaction fails, no agreement is terminated and nothing is
+     * recorded in the audit journal, the caller can then terminate the agreements one by one with
+     * <code>terminate</code>.
+     *
+     * @return The outcome of each termination, in the same order as the agreements. The outcome
+     *         is <code>null</code> for an agreement that was not found in this client's branch
+     *         and was therefore not terminated.
+     */
+    public List<String> terminateAll(List<String> rentalAgreementIds) throws RentalAgreementException, RejectedException {
+        admission.enter();
+        try {
+            List<RentalPeriod> rentals = transactions.execute(IsolationLevel.READ_COMMITTED, writeDeadlineMillis, () -> {
+                List<RentalPeriod> lockedRentals = new ArrayList<>();
+                for (String rentalAgreementId : rentalAgreementIds)
+                    lockedRentals.add(terminateInTransaction(schoolDb, rentalAgreementId));
+                return lockedRentals;
+            });
+            List<String> outcomes = new ArrayList<>();
+            List<RentalPeriod> returned = new ArrayList<>();
+            for (int i = 0; i < rentals.size(); i++) {
+                RentalPeriod rental = rentals.get(i);
+                if (rental == null && shards.getShardMap().isSharded()) {
+                    outcomes.add(null);
+                    continue;
+                }
+                String outcome = terminationCommitted(rentalAgreementIds.get(i), rental);
+                if (TERMINATION_SUCCESSFUL.equals(outcome))
+                    returned.add(rental);
+                outcomes.add(outcome);
+            }
+            for (RentalPeriod rental : returned)
+                allocateReturnedInstrument(rental);
+            return outcomes;
+        } catch (Exception e) {
+            throw new RentalAgreementException("Could not terminate rental agreements: " + rentalAgreementIds, e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    private RentalPeriod terminateInTransaction(SchoolDAO branchDb, String rentalAgreementId) throws SchoolDBException {
+        RentalPeriod lockedRental = branchDb.readRentalPeriodForUpdate(rentalAgreementId);
+        if (lockedRental != null && lockedRental.isActive())
+            branchDb.updateRentalDateReturned(rentalAgreementId);
+        return lockedRental;
+    }
+
+    /**
+     * Terminates an agreement that is not in this client's branch, which happens when a student
+     * returns an instrument to another branch than the one it was rented from.
+     *
+     * @return The agreement, or <code>null</code> if no branch has it.
+     */
+    private RentalPeriod terminateInOtherBranch(String rentalAgreementId) throws SchoolDBException {
+        ShardMap shardMap = shards.getShardMap();
+        for (String branch : shardMap.getBranches()) {
+            if (branch.equals(shardMap.getHomeBranch())) {
+                continue;
+            }
+            RentalPeriod rental = shards.executeOn(branch, IsolationLevel.READ_COMMITTED, writeDeadlineMillis,
+                                                   branchDb -> terminateInTransaction(branchDb, rentalAgreementId));
+            if (rental != null) {
+                return rental;
+            }
+        }
+        return null;
+    }
+
+    private String terminationCommitted(String rentalAgreementId, RentalPeriod rental) {
+        String outcome = terminationOutcome(rental);
+        if (TERMINATION_SUCCESSFUL.equals(outcome)) {
+            statisticsEventsStarted.incrementAndGet();
+            RentalStatistics currentStatistics = statistics.get();
+            if (currentStatistics != null)
+                currentStatistics.recordReturn(rental, LocalDate.now());
+            statisticsEventsRecorded.incrementAndGet();
+        }
+        audit.record(AuditRecord.Operation.TERMINATE, TERMINATION_SUCCESSFUL.equals(outcome) ? AuditRecord.Outcome.SUCCESS : AuditRecord.Outcome.REJECTED,
+                     deskUser, rentalAgreementId, null);
+        return outcome;
+    }
+
+    private String terminationOutcome(RentalPeriod rental) {
+        if (rental == null)
+            return "Could not find rental agreement";
+        if (!rental.isActive())
+            return "Rental agreement is already terminated";
+        return TERMINATION_SUCCESSFUL;
+    }
+
+    /**
+     * Claims a request key in the ongoing transaction, see <code>SchoolDAO.claimRequestKey</code>.
+     *
+     * @return The outcome of an earlier request with the same key, or <code>null</code> if the
+     *         request shall be executed. Always <code>null</code> if there is no key.
+     */
+    private String claimRequestKey(String operation, String requestKey) throws SchoolDBException {
+        if (requestKey == null)
+            return null;
+        String previousOutcome = schoolDb.claimRequestKey(operation, requestKey);
+        if (previousOutcome != null)
+            metrics.increment("requestKeys.replayed");
+        return previousOutcome;
+    }
+
+    private void storeRequestOutcome(String operation, String requestKey, String outcome) throws SchoolDBException {
+        if (requestKey != null)
+            schoolDb.updateRequestOutcome(operation, requestKey, outcome);
+    }
+
+    private int removeExpiredRequestKeys() throws SchoolDBException {
+        requestKeys.removeExpired();
+        return transactions.execute(IsolationLevel.READ_COMMITTED, reportDeadlineMillis,
+                                    () -> schoolDb.deleteExpiredRequestKeys((int) requestKeys.getTtl().toMinutes()));
+    }
+
+    /**
+     * Puts a student in the waitlist for an instrument type. Students with siblings are placed
+     * before all students without siblings, otherwise students are served in the order they
+     * joined. If there are available instruments of the type, they are given to the first
+     * students in the waitlist at once.
+     *
+     * @return The student's place in the waitlist, the instrument the student was given, or why
+     *         the student could not join the waitlist.
+     */
+    public String joinWaitlist(String studentPersonalNumber, String instrument) throws InstrumentException, RejectedException {
+        admission.enter();
+        try {
+            WaitlistEntry entry = transactions.execute(IsolationLevel.READ_COMMITTED, writeDeadlineMillis, () -> {
+                String studentId = schoolDb.readStudentIdByPersonalNumber(studentPersonalNumber);
+                if (studentId == null)
+                    return null;
+                schoolDb.createWaitlistEntry(studentId, instrument);
+                return schoolDb.readWaitlistEntry(studentId, instrument);
+            });
+            if (entry == null)
+                return "There is no student with personal number " + studentPersonalNumber + " or no instrument of type " + instrument;
+            for (Allocation allocation : allocateQuietly(instrument)) {
+                if (allocation.entry.getWaitlistNo() == entry.getWaitlistNo())
+                    return "Student with personal number " + studentPersonalNumber + " was given instrument " + allocation.rentalInstrumentId;
+            }
+            return "Student with personal number " + studentPersonalNumber + " is number " + entry.getPosition() +
+                   " in the waitlist for " + instrument;
+        } catch (Exception e) {
+            throw new InstrumentException("Could not put student " + studentPersonalNumber + " in the waitlist for " + instrument, e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Removes a student from the waitlist for an instrument type.
+     */
+    public String leaveWaitlist(String studentPersonalNumber, String instrument) throws InstrumentException, RejectedException {
+        admission.enter();
+        try {
+            boolean removed = transactions.execute(IsolationLevel.READ_COMMITTED, writeDeadlineMillis, () -> {
+                String studentId = schoolDb.readStudentIdByPersonalNumber(studentPersonalNumber);
+                return studentId != null && schoolDb.deleteWaitlistEntry(studentId, instrument);
+            });
+            return removed ? "Student with personal number " + studentPersonalNumber + " left the waitlist for " + instrument
+                           : "Student with personal number " + studentPersonalNumber + " is not in the waitlist for " + instrument;
+        } catch (Exception e) {
+            throw new InstrumentException("Could not remove student " + studentPersonalNumber + " from the waitlist for " + instrument, e);
+        } finally {
+            admission.exit();
         }
     }
 
-    private void commitOngoingTransaction(String failureMsg) throws InstrumentException {
+    /**
+     * Lists the first students in the waitlist for an instrument type, in the order they will be
+     * given instruments. A student that already has the maximum number of active rentals is
+     * skipped when instruments are given, but keeps the place.
+     *
+     * @param maxEntries The maximum number of students to list.
+     */
+    public List<? extends WaitlistEntryDTO> getWaitlist(String instrument, int maxEntries) throws InstrumentException, RejectedException {
+        admission.enter();
         try {
-            schoolDb.commit();
-        } catch (SchoolDBException bdbe) {
-            throw new InstrumentException(failureMsg, bdbe);
+            return transactions.execute(IsolationLevel.READ_COMMITTED, readDeadlineMillis, () -> schoolDb.readWaitlist(instrument, maxEntries));
+        } catch (Exception e) {
+            throw new InstrumentException("Could not list the waitlist for " + instrument, e);
+        } finally {
+            admission.exit();
         }
     }
 
+    /**
+     * Gives the available instruments of all types to the first students in the waitlists. Each
+     * type is handled in transactions of at most <code>sgms.waitlist.batchSize</code> (default
+     * 50) rentals, which are checked against the maximum number of active rentals exactly as by
+     * <code>rent</code>.
+     *
+     * @return The number of instruments that were given to waitlisted students.
+     */
+    public int allocateWaitlistedInstruments() throws InstrumentException, RejectedException {
+        admission.enter();
+        try {
+            List<String> instruments = transactions.execute(IsolationLevel.READ_COMMITTED, readDeadlineMillis,
+                                                            schoolDb::readWaitlistedAvailableTypes);
+            int nofAllocations = 0;
+            for (String instrument : instruments) {
+                int nofAllocated;
+                do {
+                    nofAllocated = allocate(instrument).size();
+                    nofAllocations += nofAllocated;
+                } while (nofAllocated == waitlistBatchSize);
+            }
+            return nofAllocations;
+        } catch (Exception e) {
+            throw new InstrumentException("Could not give instruments to waitlisted students.", e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Gives a returned instrument to the first student in the waitlist for its type. An
+     * instrument returned to another branch is not found here, it is given away by the
+     * waitlist job of its own branch. Nothing is done if the database does not support waitlists.
+     */
+    private void allocateReturnedInstrument(RentalPeriod rental) {
+        if (!schoolDb.supportsWaitlists())
+            return;
+        try {
+            String instrument = transactions.execute(IsolationLevel.READ_COMMITTED, writeDeadlineMillis,
+                                                     () -> schoolDb.readInstrumentType(rental.getRentalInstrumentId()));
+            if (instrument != null)
+                allocateQuietly(instrument);
+        } catch (SchoolDBException sdbe) {
+            metrics.increment("waitlist.failures");
+        }
+    }
+
+    /**
+     * Same as <code>allocate</code>, but a failure is only counted in the metric
+     * <code>waitlist.failures</code>. The instruments are then given away by the next run of the
+     * waitlist job.
+     */
+    private List<Allocation> allocateQuietly(String instrument) {
+        try {
+            return allocate(instrument);
+        } catch (SchoolDBException sdbe) {
+            metrics.increment("waitlist.failures");
+            return List.of();
+        }
+    }
+
+    /**
+     * Gives at most <code>waitlistBatchSize</code> available instruments of the specified type to
+     * the first students in the waitlist that can rent more instruments, in one transaction, and
+     * removes those students from the waitlist. Instruments and waitlist entries locked by a
+     * concurrent allocation are skipped, instead of waited for.
+     */
+    private List<Allocation> allocate(String instrument) throws SchoolDBException {
+        List<Allocation> allocations = transactions.execute(rentIsolation, writeDeadlineMillis, () -> {
+            List<Allocation> batch = new ArrayList<>();
+            List<String> rentalInstrumentIds = schoolDb.lockAvailableInstruments(instrument, waitlistBatchSize);
+            if (rentalInstrumentIds.isEmpty())
+                return batch;
+            List<WaitlistEntry> entries = schoolDb.lockEligibleWaitlistEntries(instrument, MAX_ACTIVE_RENTALS, rentalInstrumentIds.size());
+            if (entries.isEmpty())
+                return batch;
+            for (int i = 0; i < entries.size(); i++) {
+                schoolDb.createRentalAgreement(entries.get(i).getStudentId(), rentalInstrumentIds.get(i));
+                batch.add(new Allocation(entries.get(i), rentalInstrumentIds.get(i)));
+            }
+            schoolDb.deleteWaitlistEntries(entries);
+            return batch;
+        });
+        for (Allocation allocation : allocations)
+            rentalCommitted(allocation.entry.getPersonalNumber(), allocation.rentalInstrumentId, RENTAL_SUCCESSFUL, WAITLIST_ACTOR);
+        metrics.add("waitlist.allocations", allocations.size());
+        return allocations;
+    }
+
+    /**
+     * Creates reminders about rentals that became overdue since the last time this method was
+     * called, by any client. A rental is overdue when it has been kept longer than the rental term,
+     * <code>sgms.overdue.termMonths</code> months (default 12). Only rentals rented during the days
+     * not yet scanned are read, the first call reads all active rentals.
+     *
+     * @return The number of created reminders.
+     */
+    public int createOverdueReminders() throws RentalAgreementException, RejectedException {
+        admission.enter();
+        try {
+            return transactions.execute(IsolationLevel.READ_COMMITTED, reportDeadlineMillis, () -> {
+                LocalDate scannedUntil = schoolDb.lockScheduledJob(OVERDUE_JOB);
+                LocalDate rentedUntil = LocalDate.now().minusMonths(rentalTermMonths);
+                if (scannedUntil != null && !rentedUntil.isAfter(scannedUntil))
+                    return 0;
+                int nofReminders = schoolDb.createOverdueReminders(rentalTermMonths, scannedUntil, rentedUntil);
+                schoolDb.updateScheduledJob(OVERDUE_JOB, rentedUntil);
+                return nofReminders;
+            });
+        } catch (Exception e) {
+            throw new RentalAgreementException("Could not create reminders about overdue rentals.", e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Applies fees that have started since they were entered to the listed instruments.
+     *
+     * @return The number of instruments whose fee changed.
+     */
+    public int refreshInstrumentFees() throws InstrumentException, RejectedException {
+        admission.enter();
+        try {
+            return transactions.execute(IsolationLevel.READ_COMMITTED, reportDeadlineMillis, schoolDb::refreshInstrumentFees);
+        } catch (Exception e) {
+            throw new InstrumentException("Could not refresh instrument fees.", e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Lists the reminders created on the specified date, about rentals that are still active.
+     */
+    public List<? extends OverdueRentalDTO> getOverdueRentals(LocalDate createdOn) throws RentalAgreementException, RejectedException {
+        admission.enter();
+        try {
+            return transactions.execute(IsolationLevel.READ_COMMITTED, readDeadlineMillis, () -> schoolDb.readRemindersCreatedOn(createdOn));
+        } catch (Exception e) {
+            throw new RentalAgreementException("Could not list reminders about overdue rentals.", e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Summarizes the rentals of each instrument type in the specified period.
+     *
+     * @param from The first day of the period.
+     * @param to   The last day of the period.
+     */
+    public List<? extends InstrumentTypeStatisticsDTO> getRentalStatistics(LocalDate from, LocalDate to) throws RentalAgreementException, RejectedException {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new RentalAgreementException("Invalid period: " + from + " to " + to);
+        }
+        return statistics(false).summarize(from, to);
+    }
+
+    /**
+     * @return The revenue from rentals of the specified instrument type in each month of the
+     *         specified year, January first.
+     */
+    public long[] getMonthlyRevenue(String instrument, int year) throws RentalAgreementException, RejectedException {
+        if (instrument == null) {
+            throw new RentalAgreementException("No instrument type specified.");
+        }
+        return statistics(false).monthlyRevenue(instrument, year);
+    }
+
+    /**
+     * Rebuilds the rental statistics from the rental history. This is only needed if rentals have
+     * been changed by someone else than this controller.
+     */
+    public void refreshRentalStatistics() throws RentalAgreementException, RejectedException {
+        statistics(true);
+    }
+
+    /**
+     * Checks the database of each branch, by asking whether it is the primary or a standby. Not
+     * limited by the admission control, so that the health can be checked when the program is
+     * overloaded. A check of a database whose circuit breaker is open fails at once.
+     *
+     * @return The health of the database of each branch. For this client's branch, the number
+     *         of connections is the number of open sessions, for other branches it is the size
+     *         of the connection pool.
+     */
+    public List<? extends DatabaseHealthDTO> getDatabaseHealth() {
+        List<DatabaseHealth> health = new ArrayList<>();
+        ShardMap shardMap = shards.getShardMap();
+        for (String branch : shardMap.getBranches()) {
+            boolean home = branch.equals(shardMap.getHomeBranch());
+            long startNanos = System.nanoTime();
+            boolean reachable;
+            String status;
+            try {
+                status = home ? transactions.execute(IsolationLevel.READ_COMMITTED, readDeadlineMillis, schoolDb::readServerStatus)
+                              : shards.executeOn(branch, IsolationLevel.READ_COMMITTED, readDeadlineMillis, SchoolDAO::readServerStatus);
+                reachable = true;
+            } catch (SchoolDBException sdbe) {
+                status = sdbe.getCause() == null ? sdbe.getMessage() : sdbe.getCause().getMessage();
+                reachable = false;
+            }
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            String breakerState = CircuitBreaker.forDatabase(shardMap.getUrl(branch)).getState().name().toLowerCase();
+            int connections = home ? openSessions.get() : shards.getOpenConnections(branch);
+            health.add(new DatabaseHealth(branch, breakerState, connections, reachable, status, latencyMillis));
+        }
+        return health;
+    }
+
+    /**
+     * Reaches the database, so that a broken connection is opened again, and the circuit breaker
+     * closes, without waiting for a user's operation.
+     */
+    private int checkDatabase() throws SchoolDBException {
+        transactions.execute(IsolationLevel.READ_COMMITTED, readDeadlineMillis, schoolDb::readServerStatus);
+        return 0;
+    }
+
+    /**
+     * Checks if an instructor is free to give a lesson starting at the specified time. Lessons
+     * are assumed to take <code>sgms.lesson.durationMinutes</code> (default 60).
+     *
+     * @param instructorPersonalNumber The personal number of the instructor.
+     * @param start                    The start of the lesson.
+     * @return A message telling if the instructor is free, or which lesson the instructor gives
+     *         at that time.
+     */
+    public String checkInstructorFree(String instructorPersonalNumber, LocalDateTime start) throws LessonException, RejectedException {
+        if (instructorPersonalNumber == null || start == null) {
+            throw new LessonException("No instructor or time specified.");
+        }
+        InstructorSchedule currentSchedule = schedule();
+        Instructor instructor = currentSchedule.findInstructorByPersonalNumber(instructorPersonalNumber);
+        if (instructor == null)
+            return "No instructor with personal number " + instructorPersonalNumber + " exists";
+        LessonSlot lesson = currentSchedule.findLessonDuring(instructor.getInstructorId(), start);
+        if (lesson == null)
+            return instructor.getName() + " is free at " + start;
+        return instructor.getName() + " gives " + lesson.getType() + " " + lesson.getLessonId() + " at " + lesson.getStart();
+    }
+
+    /**
+     * Lists all pairs of overlapping lessons given by the same instructor.
+     *
+     * @param from The first day of the period, or <code>null</code> for the first day of the
+     *             current term.
+     * @param to   The last day of the period, or <code>null</code> for the last day of the term
+     *             <code>from</code> is in. A lesson is listed if the later lesson of the pair
+     *             starts in the period.
+     */
+    public List<? extends ScheduleConflictDTO> getScheduleConflicts(LocalDate from, LocalDate to) throws LessonException, RejectedException {
+        LocalDate first = from == null ? termStart(LocalDate.now()) : from;
+        LocalDate last = to == null ? termStart(first).plusMonths(6).minusDays(1) : to;
+        if (last.isBefore(first)) {
+            throw new LessonException("Invalid period: " + first + " to " + last);
+        }
+        return schedule().findConflicts(first.atStartOfDay(), last.plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * Lists the instructors that teach the specified instrument type and give no lesson during
+     * the specified period. Time is divided in slots of <code>sgms.schedule.slotMinutes</code>
+     * (default 15), and the period is widened to whole slots.
+     *
+     * @param instrument The instrument type.
+     * @param from       The start of the period.
+     * @param to         The end of the period, exclusive.
+     * @return The free instructors, ordered by name.
+     */
+    public List<? extends InstructorDTO> findFreeInstructors(String instrument, LocalDateTime from, LocalDateTime to) throws LessonException, RejectedException {
+        if (instrument == null || from == null || to == null || !to.isAfter(from)) {
+            throw new LessonException("Invalid search: " + instrument + " from " + from + " to " + to);
+        }
+        return schedule().findFreeInstructors(instrument, from, to);
+    }
+
+    /**
+     * Terms run from January to June and from July to December.
+     */
+    private static LocalDate termStart(LocalDate date) {
+        return LocalDate.of(date.getYear(), date.getMonthValue() <= 6 ? 1 : 7, 1);
+    }
+
+    /**
+     * Returns the schedule, after reading the changes made since it was last read if that was
+     * more than <code>sgms.schedule.refreshMillis</code> (default 1000) ago. The whole schedule
+     * is read on first use, and if it was last read so long ago that the changes since then may
+     * have been removed.
+     */
+    private InstructorSchedule schedule() throws LessonException, RejectedException {
+        InstructorSchedule currentSchedule = schedule.get();
+        if (currentSchedule != null && !currentSchedule.isOlderThan(scheduleRefreshInterval)) {
+            return currentSchedule;
+        }
+        admission.enter();
+        try {
+            synchronized (schedule) {
+                currentSchedule = schedule.get();
+                if (currentSchedule == null || currentSchedule.isOlderThan(Duration.ofDays(scheduleChangeRetentionDays - 1))) {
+                    schedule.set(transactions.execute(IsolationLevel.REPEATABLE_READ, reportDeadlineMillis, this::readSchedule));
+                } else if (currentSchedule.isOlderThan(scheduleRefreshInterval)) {
+                    InstructorSchedule refreshed = currentSchedule;
+                    transactions.execute(IsolationLevel.REPEATABLE_READ, readDeadlineMillis, () -> refreshSchedule(refreshed));
+                }
+                return schedule.get();
+            }
+        } catch (Exception e) {
+            throw new LessonException("Could not read the schedule.", e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    private InstructorSchedule readSchedule() throws SchoolDBException {
+        long snapshotXmin = schoolDb.readSnapshotXmin();
+        return new InstructorSchedule(schoolDb.readInstructors(), schoolDb.readLessonSlots(), snapshotXmin, lessonLength,
+                                      scheduleSlotLength);
+    }
+
+    /**
+     * Applies all changes made by transactions that were not finished when the schedule was last
+     * read. Changes that were already applied are read again, which does no harm.
+     */
+    private InstructorSchedule refreshSchedule(InstructorSchedule currentSchedule) throws SchoolDBException {
+        long snapshotXmin = schoolDb.readSnapshotXmin();
+        List<String> lessonIds = schoolDb.readChangedScheduleRows(currentSchedule.getSnapshotXmin(), LESSON_TABLES);
+        List<String> instructorIds = schoolDb.readChangedScheduleRows(currentSchedule.getSnapshotXmin(), INSTRUCTOR_TABLES);
+        if (lessonIds.isEmpty() && instructorIds.isEmpty()) {
+            currentSchedule.refreshed(snapshotXmin);
+            return currentSchedule;
+        }
+        List<Instructor> instructors = instructorIds.isEmpty() ? List.of() : schoolDb.readInstructors(instructorIds);
+        List<LessonSlot> lessons = lessonIds.isEmpty() ? List.of() : schoolDb.readLessonSlots(lessonIds);
+        currentSchedule.apply(instructors, new HashSet<>(instructorIds), lessons, new HashSet<>(lessonIds), snapshotXmin);
+        metrics.add("schedule.changesApplied", lessonIds.size() + instructorIds.size());
+        return currentSchedule;
+    }
+
+    private int removeOldScheduleChanges() throws SchoolDBException {
+        return transactions.execute(IsolationLevel.READ_COMMITTED, reportDeadlineMillis,
+                                    () -> schoolDb.deleteOldScheduleChanges(scheduleChangeRetentionDays));
+    }
+
+    private String homeUrl() {
+        ShardMap shardMap = shards.getShardMap();
+        return shardMap.getUrl(shardMap.getHomeBranch());
+    }
+
+    /**
+     * Returns the rental statistics, and builds them first if they are missing, stale or
+     * <code>rebuild</code> is <code>true</code>. A rental or return is recorded in the statistics
+     * after its transaction has committed, so one that is being recorded while the statistics are
+     * built might be missing from the new statistics, or might be counted twice. The new
+     * statistics are marked stale if that could have happened, and are then built again when
+     * they are next used.
+     */
+    private RentalStatistics statistics(boolean rebuild) throws RentalAgreementException, RejectedException {
+        RentalStatistics currentStatistics = statistics.get();
+        if (!rebuild && currentStatistics != null && !currentStatistics.isStale()) {
+            return currentStatistics;
+        }
+        admission.enter();
+        try {
+            synchronized (statistics) {
+                if (rebuild || statistics.get() == currentStatistics) {
+                    long recordedBefore = statisticsEventsRecorded.get();
+                    long startedBefore = statisticsEventsStarted.get();
+                    RentalStatistics newStatistics = transactions.execute(IsolationLevel.REPEATABLE_READ, reportDeadlineMillis,
+                                                                          schoolDb::readRentalStatistics);
+                    statistics.set(newStatistics);
+                    if (startedBefore != recordedBefore || statisticsEventsStarted.get() != startedBefore) {
+                        newStatistics.markStale();
+                        metrics.increment("statistics.staleRebuilds");
+                    }
+                }
+                return statistics.get();
+            }
+        } catch (Exception e) {
+            throw new RentalAgreementException("Could not read rental history.", e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Reads the profile, active rentals, contact persons, siblings and upcoming lessons of the
+     * students with the specified personal numbers. All students are read together, with one
+     * query for each table, see <code>StudentOverviewLoader</code>.
+     *
+     * @return The overviews, in the order of the personal numbers. Personal numbers without a
+     *         student are skipped.
+     */
+    public List<? extends StudentOverviewDTO> getStudentOverviews(List<String> studentPersonalNumbers) throws StudentException, RejectedException {
+        if (studentPersonalNumbers == null || studentPersonalNumbers.isEmpty()) {
+            return new ArrayList<>();
+        }
+        admission.enter();
+        try {
+            return transactions.execute(IsolationLevel.REPEATABLE_READ, readDeadlineMillis, () -> {
+                Map<String, String> studentIds = schoolDb.readStudentIdsByPersonalNumbers(studentPersonalNumbers);
+                List<String> foundIds = new ArrayList<>();
+                for (String personalNumber : studentPersonalNumbers) {
+                    String studentId = studentIds.get(personalNumber);
+                    if (studentId != null) {
+                        foundIds.add(studentId);
+                    }
+                }
+                return loadOverviews(foundIds);
+            });
+        } catch (Exception e) {
+            throw new StudentException("Could not read the overviews of students " + studentPersonalNumbers, e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Reads the overviews of all students booked on the specified individual lesson, group
+     * lesson or ensemble, see <code>getStudentOverviews</code>.
+     *
+     * @return The overviews, ordered by name.
+     */
+    public List<? extends StudentOverviewDTO> getLessonRoster(String lessonId) throws StudentException, RejectedException {
+        if (lessonId == null) {
+            throw new StudentException("No lesson specified.");
+        }
+        admission.enter();
+        try {
+            return transactions.execute(IsolationLevel.REPEATABLE_READ, readDeadlineMillis, () -> {
+                List<StudentOverview> roster = loadOverviews(schoolDb.readLessonStudentIds(lessonId));
+                roster.sort(Comparator.comparing((StudentOverview overview) -> overview.getStudent().getName())
+                                      .thenComparing(overview -> overview.getStudent().getPersonalNumber()));
+                return roster;
+            });
+        } catch (Exception e) {
+            throw new StudentException("Could not read the students of lesson " + lessonId, e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Loads the overviews of the specified students with a new loader, so that nothing is
+     * remembered from earlier requests or from an earlier attempt of the transaction.
+     */
+    private List<StudentOverview> loadOverviews(List<String> studentIds) throws SchoolDBException {
+        StudentOverviewLoader loader = new StudentOverviewLoader(schoolDb, LocalDate.now(), metrics);
+        List<CompletableFuture<StudentOverview>> requested = new ArrayList<>();
+        for (String studentId : studentIds) {
+            requested.add(loader.load(studentId));
+        }
+        loader.dispatch();
+        List<StudentOverview> overviews = new ArrayList<>();
+        for (CompletableFuture<StudentOverview> overview : requested) {
+            if (overview.join() != null) {
+                overviews.add(overview.join());
+            }
+        }
+        return overviews;
+    }
+
+    /**
+     * Lists group lessons and ensembles which still have open seats.
+     *
+     * @param instrument The instrument taught on the lesson.
+     * @param level      The level of the group lessons to search for. Ensembles are listed
+     *                   regardless of level.
+     * @param fromDate   The first date to search from, in the format yyyy-mm-dd. Today is used if
+     *                   this is <code>null</code>.
+     */
+    public List<? extends LessonDTO> getLessonsWithOpenSeats(String instrument, String level, String fromDate) throws LessonException, RejectedException {
+        if (instrument == null || level == null) {
+            return new ArrayList<>();
+        }
+        admission.enter();
+        try {
+            String from = fromDate == null ? String.valueOf(LocalDate.now()) : fromDate;
+            return transactions.execute(IsolationLevel.READ_COMMITTED, readDeadlineMillis,
+                                        () -> schoolDb.readLessonsWithOpenSeats(instrument, level, from));
+        } catch (Exception e) {
+            throw new LessonException("Could not search for lessons with open seats.", e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Books all specified students on a group lesson or an ensemble in one transaction. Seats are
+     * taken from the lesson's seat counter before the students are booked, which means two desks
+     * booking the last seat at the same time can never overbook the lesson.
+     *
+     * @param lessonId                The id of the group lesson or ensemble.
+     * @param studentPersonalNumbers  The personal numbers of all students to book.
+     * @return A message describing the outcome of the booking.
+     */
+    public String book(String lessonId, List<String> studentPersonalNumbers) throws LessonException, RejectedException {
+        String failureMsg = "Could not book students on lesson " + lessonId;
+        if (lessonId == null || studentPersonalNumbers.isEmpty()) {
+            throw new LessonException(failureMsg);
+        }
+        admission.enter();
+        try {
+            return transactions.execute(IsolationLevel.READ_COMMITTED, writeDeadlineMillis, () -> {
+                Map<String, String> studentIds = schoolDb.readStudentIdsByPersonalNumbers(studentPersonalNumbers);
+                List<String> unknownStudents = new ArrayList<>(studentPersonalNumbers);
+                unknownStudents.removeAll(studentIds.keySet());
+                if (studentIds.isEmpty())
+                    return "No student with personal number " + unknownStudents + " exists";
+
+                List<String> studentsToBook = new ArrayList<>(studentIds.values());
+                int seats = studentsToBook.size();
+                int bookedStudents;
+                if (schoolDb.reserveGroupLessonSeats(lessonId, seats)) {
+                    bookedStudents = schoolDb.createGroupLessonBookings(lessonId, studentsToBook);
+                    if (bookedStudents < seats)
+                        schoolDb.releaseGroupLessonSeats(lessonId, seats - bookedStudents);
+                } else if (schoolDb.reserveEnsembleSeats(lessonId, seats)) {
+                    bookedStudents = schoolDb.createEnsembleBookings(lessonId, studentsToBook);
+                    if (bookedStudents < seats)
+                        schoolDb.releaseEnsembleSeats(lessonId, seats - bookedStudents);
+                } else {
+                    return "Lesson " + lessonId + " does not exist or does not have " + seats + " open seats";
+                }
+
+                String outcome = "Booked " + bookedStudents + " of " + seats + " students";
+                if (bookedStudents < seats)
+                    outcome += ", " + (seats - bookedStudents) + " were already booked";
+                if (!unknownStudents.isEmpty())
+                    outcome += ", no student with personal number " + unknownStudents + " exists";
+                return outcome;
+            });
+        } catch (Exception e) {
+            throw new LessonException(failureMsg, e);
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * An instrument given to a waitlisted student.
+     */
+    private static class Allocation {
+        private final WaitlistEntry entry;
+        private final String rentalInstrumentId;
+
+        private Allocation(WaitlistEntry entry, String rentalInstrumentId) {
+            this.entry = entry;
+            this.rentalInstrumentId = rentalInstrumentId;
+        }
+    }
+
+    /**
+     * The result of a request executed with a request key, or the outcome of an earlier
+     * request with the same key.
+     */
+    private static class Keyed<T> {
+        private final T result;
+        private final String previousOutcome;
+
+        private Keyed(T result, String previousOutcome) {
+            this.result = result;
+            this.previousOutcome = previousOutcome;
+        }
+
+        private static <T> Keyed<T> executed(T result) {
+            return new Keyed<>(result, null);
+        }
+
+        private static <T> Keyed<T> replayed(String previousOutcome) {
+            return new Keyed<>(null, previousOutcome);
+        }
+
+        private boolean isReplayed() {
+            return previousOutcome != null;
+        }
+    }
 }
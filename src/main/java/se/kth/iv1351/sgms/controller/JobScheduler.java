@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.controller;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import se.kth.iv1351.sgms.integration.Metrics;
+
+/**
+ * Runs background jobs once a day or at a fixed interval, on a single daemon thread, so a job
+ * that must not wait for slow jobs needs a scheduler of its own. Each job is
+ * also run as soon as it is scheduled, to catch up on days when no client was running. A job
+ * that fails is run again after <code>RETRY_DELAY</code>, or at its next regular run if that
+ * comes earlier. Runs, failures, processed rows and elapsed time of each job are counted in the
+ * metrics <code>jobs.&lt;name&gt;.runs</code>, <code>.failures</code>, <code>.rows</code> and
+ * <code>.millis</code>.
+ */
+class JobScheduler {
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(10);
+
+    /**
+     * A job executed by the scheduler.
+     */
+    interface Job {
+        /**
+         * @return The number of rows the job created or changed.
+         */
+        int run() throws Exception;
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Metrics metrics;
+
+    /**
+     * @param threadName The name of the thread that runs the jobs.
+     * @param metrics    Runs and failures of the jobs are counted here.
+     */
+    JobScheduler(String threadName, Metrics metrics) {
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs the specified job now, and then every day at the specified time.
+     *
+     * @param name  The name of the job in the metrics.
+     * @param runAt The time of day the job is run.
+     */
+    void scheduleDaily(String name, LocalTime runAt, Job job) {
+        executor.execute(() -> runAndReschedule(name, () -> untilNext(runAt), job));
+    }
+
+    /**
+     * Runs the specified job now, and then each time the specified interval has passed since the
+     * previous run ended.
+     *
+     * @param name     The name of the job in the metrics.
+     * @param interval The time between two runs.
+     */
+    void scheduleEvery(String name, Duration interval, Job job) {
+        executor.execute(() -> runAndReschedule(name, () -> interval, job));
+    }
+
+    /**
+     * Stops all jobs. A job that is running is interrupted.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void runAndReschedule(String name, Supplier<Duration> nextDelay, Job job) {
+        long startNanos = System.nanoTime();
+        Duration delay;
+        try {
+            int rows = job.run();
+            metrics.increment("jobs." + name + ".runs");
+            metrics.add("jobs." + name + ".rows", rows);
+            delay = nextDelay.get();
+        } catch (Exception e) {
+            metrics.increment("jobs." + name + ".failures");
+            Duration next = nextDelay.get();
+            delay = next.compareTo(RETRY_DELAY) < 0 ? next : RETRY_DELAY;
+        }
+        metrics.add("jobs." + name + ".millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        if (!executor.isShutdown()) {
+            executor.schedule(() -> runAndReschedule(name, nextDelay, job), delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Duration untilNext(LocalTime runAt) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(runAt);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        return Duration.between(now, next);
+    }
+}
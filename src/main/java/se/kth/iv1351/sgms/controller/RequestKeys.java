@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.controller;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import se.kth.iv1351.sgms.integration.Metrics;
+import se.kth.iv1351.sgms.integration.SchoolDBException;
+
+/**
+ * Remembers the outcome of requests made with a client request key, so that a request that is
+ * retried with the same key is executed only once. This is the in-memory part, which answers
+ * retries to this client without using the database, and makes a duplicate that arrives while
+ * the first request is executing wait for its outcome. Requests from other clients, and
+ * requests made before this client started, are deduplicated by the <code>request_key</code>
+ * table. Replayed outcomes are counted in the metric <code>requestKeys.replayed</code>.
+ */
+class RequestKeys {
+    /**
+     * A request that is executed at most once for each key.
+     */
+    interface Request {
+        /**
+         * @return The outcome of the request, which is given to all retries.
+         */
+        String execute() throws SchoolDBException;
+    }
+
+    private final Map<String, Entry> outcomes = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Metrics metrics;
+
+    /**
+     * @param ttl     How long an outcome is remembered.
+     * @param metrics Replayed outcomes are counted here.
+     */
+    RequestKeys(Duration ttl, Metrics metrics) {
+        this.ttl = ttl;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return How long an outcome is remembered.
+     */
+    Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Executes the specified request, unless a request with the same operation and key has
+     * already been executed by this client. If such a request is executing, this method waits
+     * for it. If it fails, the request is executed again.
+     *
+     * @param maxWaitMillis The longest time to wait for a request with the same key.
+     * @return The outcome of the request, or of the earlier request with the same key.
+     * @throws SchoolDBException If the request failed, or a request with the same key did not
+     *                           finish in time.
+     */
+    String execute(String operation, String requestKey, long maxWaitMillis, Request request) throws SchoolDBException {
+        String key = operation + " " + requestKey;
+        while (true) {
+            Entry own = new Entry(System.nanoTime());
+            Entry existing = outcomes.putIfAbsent(key, own);
+            if (existing == null) {
+                return executeClaimed(key, own, request);
+            }
+            if (existing.isExpired(ttl)) {
+                outcomes.remove(key, existing);
+                continue;
+            }
+            try {
+                String outcome = existing.outcome.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+                metrics.increment("requestKeys.replayed");
+                return outcome;
+            } catch (ExecutionException failed) {
+                // The earlier request was removed when it failed, try to claim the key again.
+            } catch (TimeoutException timeout) {
+                throw new SchoolDBException("Request " + requestKey + " is still executing.", timeout);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new SchoolDBException("Interrupted while waiting for request " + requestKey, interrupted);
+            }
+        }
+    }
+
+    /**
+     * Forgets all outcomes older than the time to live.
+     */
+    void removeExpired() {
+        outcomes.values().removeIf(entry -> entry.isExpired(ttl));
+    }
+
+    private String executeClaimed(String key, Entry own, Request request) throws SchoolDBException {
+        try {
+            String outcome = request.execute();
+            own.outcome.complete(outcome);
+            return outcome;
+        } catch (SchoolDBException | RuntimeException e) {
+            outcomes.remove(key, own);
+            own.outcome.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static class Entry {
+        private final CompletableFuture<String> outcome = new CompletableFuture<>();
+        private final long createdNanos;
+
+        private Entry(long createdNanos) {
+            this.createdNanos = createdNanos;
+        }
+
+        private boolean isExpired(Duration ttl) {
+            return outcome.isDone() && System.nanoTime() - createdNanos > ttl.toNanos();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.controller;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import se.kth.iv1351.sgms.integration.Metrics;
+import se.kth.iv1351.sgms.integration.SchoolDAO;
+import se.kth.iv1351.sgms.integration.SchoolDBException;
+import se.kth.iv1351.sgms.model.ContactPerson;
+import se.kth.iv1351.sgms.model.RentalAgreement;
+import se.kth.iv1351.sgms.model.Student;
+import se.kth.iv1351.sgms.model.StudentOverview;
+import se.kth.iv1351.sgms.model.UpcomingLesson;
+
+/**
+ * Loads the overviews of students in batches, so that the overviews of a whole class take one
+ * query for each table, instead of one query for each table and student. Students requested with
+ * <code>load</code> are collected until <code>dispatch</code>, which reads the profiles, active
+ * rentals, contact persons, siblings and upcoming lessons of all collected students, each with one
+ * query taking an array of student ids, and assembles the overviews in memory. Batches hold at
+ * most <code>MAX_BATCH_SIZE</code> students. The number of batches and loaded students are counted
+ * in the metrics <code>overview.batches</code> and <code>overview.students</code>.
+ * <p>
+ * A loader serves one request and remembers every overview it has been asked for, so a student
+ * requested twice is read once. The reads of a dispatch shall be executed in one
+ * <code>REPEATABLE_READ</code> transaction, so that all tables are read from the same snapshot.
+ */
+class StudentOverviewLoader {
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final SchoolDAO schoolDb;
+    private final LocalDate today;
+    private final Metrics metrics;
+    private final Map<String, CompletableFuture<StudentOverview>> overviews = new HashMap<>();
+    private final List<String> pending = new ArrayList<>();
+
+    /**
+     * @param schoolDb The DAO the overviews are read with.
+     * @param today    Lessons from this day are upcoming.
+     * @param metrics  Batches and loaded students are counted here.
+     */
+    StudentOverviewLoader(SchoolDAO schoolDb, LocalDate today, Metrics metrics) {
+        this.schoolDb = schoolDb;
+        this.today = today;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Requests the overview of the specified student. The overview is read by the next
+     * <code>dispatch</code>, unless it has already been requested from this loader.
+     *
+     * @return The overview, which is completed by <code>dispatch</code>. It is completed with
+     *         <code>null</code> if there is no such student.
+     */
+    CompletableFuture<StudentOverview> load(String studentId) {
+        return overviews.computeIfAbsent(studentId, id -> {
+            pending.add(id);
+            return new CompletableFuture<>();
+        });
+    }
+
+    /**
+     * Reads the overviews of all students requested since the last dispatch.
+     */
+    void dispatch() throws SchoolDBException {
+        for (int from = 0; from < pending.size(); from += MAX_BATCH_SIZE) {
+            loadBatch(pending.subList(from, Math.min(pending.size(), from + MAX_BATCH_SIZE)));
+        }
+        pending.clear();
+    }
+
+    private void loadBatch(List<String> studentIds) throws SchoolDBException {
+        metrics.increment("overview.batches");
+        metrics.add("overview.students", studentIds.size());
+        List<Student> students = schoolDb.readStudents(studentIds);
+        if (!students.isEmpty()) {
+            List<String> foundIds = new ArrayList<>(students.size());
+            for (Student student : students) {
+                foundIds.add(student.getStudentId());
+            }
+            Map<String, List<RentalAgreement>> rentals = schoolDb.readActiveRentals(foundIds);
+            Map<String, List<ContactPerson>> contactPersons = schoolDb.readContactPersons(foundIds);
+            Map<String, List<Student>> siblings = schoolDb.readSiblings(foundIds);
+            Map<String, List<UpcomingLesson>> lessons = schoolDb.readUpcomingLessons(foundIds, today);
+            for (Student student : students) {
+                String studentId = student.getStudentId();
+                overviews.get(studentId).complete(new StudentOverview(student, rentals.getOrDefault(studentId, List.of()),
+                                                                      contactPersons.getOrDefault(studentId, List.of()),
+                                                                      siblings.getOrDefault(studentId, List.of()),
+                                                                      lessons.getOrDefault(studentId, List.of())));
+            }
+        }
+        for (String studentId : studentIds) {
+            // Has no effect on the overviews completed above.
+            overviews.get(studentId).complete(null);
+        }
+    }
+}
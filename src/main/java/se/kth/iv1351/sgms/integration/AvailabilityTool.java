@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.util.List;
+
+/**
+ * Checks that the <code>instrument_availability</code> table, which is maintained by triggers,
+ * matches the rental agreements and fees, and optionally repairs it. Repairing an empty table
+ * fills it, which is how the table is backfilled in a database created before it existed. Usage:
+ * <pre>
+ * AvailabilityTool [--branch &lt;branch&gt;] [--repair]
+ * </pre>
+ * The branch defaults to <code>sgms.branch</code>, see <code>ShardMap</code>. The exit status is
+ * 1 if a mismatch was found and not repaired.
+ */
+public class AvailabilityTool {
+    private static final int MAX_LISTED_MISMATCHES = 20;
+    private static final long DEADLINE_MILLIS = 600_000;
+
+    public static void main(String[] args) throws SchoolDBException {
+        ShardMap shardMap = new ShardMap();
+        String branch = shardMap.getHomeBranch();
+        boolean repair = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--repair":
+                    repair = true;
+                    break;
+                case "--branch":
+                    if (i + 1 >= args.length) {
+                        usage("Missing value for --branch");
+                        return;
+                    }
+                    branch = args[++i];
+                    break;
+                default:
+                    usage("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        SchoolDAO schoolDb = new SchoolDAO(shardMap.getUrl(branch));
+        TransactionTemplate transactions = new TransactionTemplate(schoolDb, new Metrics());
+        try {
+            List<String> mismatches = transactions.execute(IsolationLevel.REPEATABLE_READ, DEADLINE_MILLIS,
+                                                           schoolDb::readAvailabilityMismatches);
+            System.out.println(mismatches.size() + " instruments in branch " + branch + " have missing or wrong availability.");
+            for (String rentalInstrumentId : mismatches.subList(0, Math.min(mismatches.size(), MAX_LISTED_MISMATCHES))) {
+                System.out.println(rentalInstrumentId);
+            }
+            if (mismatches.isEmpty()) {
+                return;
+            }
+            if (!repair) {
+                System.exit(1);
+            }
+            int nofRepaired = transactions.execute(IsolationLevel.READ_COMMITTED, DEADLINE_MILLIS,
+                                                   () -> schoolDb.refreshInstrumentAvailability(mismatches));
+            System.out.println("Repaired " + nofRepaired + " instruments.");
+        } finally {
+            schoolDb.close();
+        }
+    }
+
+    private static void usage(String problem) {
+        System.out.println(problem);
+        System.out.println("Usage: AvailabilityTool [--branch <branch>] [--repair]");
+    }
+}
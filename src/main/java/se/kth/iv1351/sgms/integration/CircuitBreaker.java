@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending transactions to a database that can not be reached, so that operations fail at
+ * once during an outage instead of each waiting for its own connection attempts. The breaker
+ * opens after <code>sgms.breaker.failureThreshold</code> (default 5) consecutive connection
+ * failures. When it has been open for <code>sgms.breaker.openMillis</code> (default 5000), one
+ * transaction is let through as a trial. If the trial reaches the database the breaker closes,
+ * otherwise it opens again. All connections to the same database share one breaker.
+ */
+public class CircuitBreaker {
+    /**
+     * The states of a breaker.
+     */
+    public enum State {
+        /**
+         * The database is reachable, all transactions are let through.
+         */
+        CLOSED,
+        /**
+         * The database could not be reached, all transactions are rejected.
+         */
+        OPEN,
+        /**
+         * One trial transaction is executing, all other transactions are rejected.
+         */
+        HALF_OPEN
+    }
+
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+
+    /**
+     * @param failureThreshold The number of consecutive connection failures that opens the breaker.
+     * @param openMillis       The time the breaker stays open before a trial is let through.
+     */
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @param url The JDBC url of the database.
+     * @return The breaker of the specified database.
+     */
+    public static CircuitBreaker forDatabase(String url) {
+        return BREAKERS.computeIfAbsent(url, key -> new CircuitBreaker(Integer.getInteger("sgms.breaker.failureThreshold", 5),
+                                                                       Long.getLong("sgms.breaker.openMillis", 5000)));
+    }
+
+    /**
+     * @return The current state of this breaker.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Decides if a transaction may be sent to the database. A transaction that is let through
+     * must report its result with <code>recordSuccess</code> or <code>recordFailure</code>.
+     *
+     * @return <code>true</code> if the transaction may be sent.
+     */
+    synchronized boolean allowRequest() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - openedAtNanos >= openNanos) {
+            // Also lets a new trial through if the previous trial never reported its result.
+            state = State.HALF_OPEN;
+            openedAtNanos = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reports that a transaction reached the database, whether it succeeded or not.
+     */
+    synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Reports that a transaction could not reach the database.
+     *
+     * @return <code>true</code> if this failure opened the breaker.
+     */
+    synchronized boolean recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+}
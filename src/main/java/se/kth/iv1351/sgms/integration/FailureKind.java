@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.sql.SQLException;
+
+/**
+ * Classifies why a database call failed, based on the SQLState of the <code>SQLException</code>
+ * that caused the failure. Only transient failures are worth retrying.
+ */
+public enum FailureKind {
+    /**
+     * SQLState 40001, a serializable transaction conflicted with a concurrent transaction. The
+     * MySQL driver also reports deadlocks and lock wait timeouts with this state.
+     */
+    SERIALIZATION_FAILURE(true),
+    /**
+     * SQLState 40P01, the transaction was chosen as deadlock victim.
+     */
+    DEADLOCK(true),
+    /**
+     * SQLState class 08 or 57P01-57P03, the connection is broken and must be opened again. Also
+     * SQLState 25006, the server has become a standby after a failover, and a new connection
+     * must be opened to the new primary.
+     */
+    CONNECTION_FAILURE(true),
+    /**
+     * SQLState 55P03, a lock could not be acquired within <code>lock_timeout</code>. Retried as
+     * long as the deadline of the operation allows.
+     */
+    LOCK_TIMEOUT(true),
+    /**
+     * SQLState 57014, or S1008 and 70100 on MySQL, the statement was cancelled because the
+     * deadline of the operation passed.
+     */
+    DEADLINE_EXCEEDED(false),
+    /**
+     * Any other failure, retrying will not help.
+     */
+    PERMANENT(false);
+
+    private final boolean isTransient;
+
+    FailureKind(boolean isTransient) {
+        this.isTransient = isTransient;
+    }
+
+    /**
+     * @return <code>true</code> if the failed transaction may succeed if it is executed again.
+     */
+    public boolean isTransient() {
+        return isTransient;
+    }
+
+    /**
+     * Finds the first <code>SQLException</code> in the cause chain of the specified exception and
+     * classifies it.
+     *
+     * @param failure The exception thrown by the failed call.
+     * @return The kind of failure.
+     */
+    public static FailureKind of(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                return ofSqlState(((SQLException) cause).getSQLState());
+            }
+        }
+        return PERMANENT;
+    }
+
+    private static FailureKind ofSqlState(String sqlState) {
+        if (sqlState == null) {
+            return PERMANENT;
+        }
+        switch (sqlState) {
+            case "40001":
+                return SERIALIZATION_FAILURE;
+            case "40P01":
+                return DEADLOCK;
+            case "55P03":
+                return LOCK_TIMEOUT;
+            case "57014":
+            case "S1008":
+            case "70100":
+                return DEADLINE_EXCEEDED;
+            case "57P01":
+            case "57P02":
+            case "57P03":
+            case "25006":
+                return CONNECTION_FAILURE;
+            default:
+                return sqlState.startsWith("08") ? CONNECTION_FAILURE : PERMANENT;
+        }
+    }
+}
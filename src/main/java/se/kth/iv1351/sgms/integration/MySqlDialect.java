@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * MySQL 8.0.16 or later, which enforces <code>CHECK</code> constraints, with the tables created by <code>create_db_mysql.sql</code>. UUIDs are
+ * stored as <code>BINARY(16)</code> with the time fields first,
+ * <code>UUID_TO_BIN(uuid, 1)</code>, so that rows inserted after each other are close in the
+ * primary key index. MySQL has no partial indexes and no triggers maintaining
+ * <code>instrument_availability</code>, so available instruments are found with an anti-join
+ * against the index of rentals by instrument and return date, and fees are read when instruments
+ * are listed. Statements using arrays, <code>SKIP LOCKED</code> queues or PostgreSQL transaction
+ * ids are not translated, which means bookings, waitlists, the instructor schedule, student
+ * overviews and the availability check are not available on MySQL. A transaction can not share
+ * its snapshot, so snapshot reports are read by one transaction.
+ * <p>
+ * Batched inserts are rewritten to multi-row inserts, and statements are prepared on the server
+ * and cached by the driver. Results are read with a server side cursor when a fetch size is set.
+ * Connection attempts time out after <code>sgms.db.connectTimeoutSeconds</code> (default 5), and
+ * reads from a silent server after <code>sgms.db.socketTimeoutSeconds</code> (default 90).
+ */
+class MySqlDialect implements SqlDialect {
+    static final String URL_PREFIX = "jdbc:mysql:";
+
+    private static final String AVAILABLE_INSTRUMENTS_SQL = "SELECT BIN_TO_UUID(ri.rental_instrument_id, 1) AS rental_instrument_id, ri.instrument, ri.brand, ri.category,\n" +
+            "(SELECT f.fee FROM instrument_fee f WHERE f.rental_instrument_id = ri.rental_instrument_id\n" +
+            " ORDER BY f.starting_from <= CURRENT_DATE DESC, f.starting_from DESC LIMIT 1) AS fee\n" +
+            "FROM rental_instrument ri\n" +
+            "WHERE NOT EXISTS (SELECT 1 FROM rental_agreement ra WHERE ra.rental_instrument_id = ri.rental_instrument_id AND ra.date_returned IS NULL)\n";
+
+    private static final String INSTRUMENT_ORDER_SQL = "ORDER BY ri.instrument, fee IS NULL, fee";
+
+    private static final Map<String, String> STATEMENTS = Map.ofEntries(
+            Map.entry(SchoolDAO.FIND_ALL_INSTRUMENTS_SQL, AVAILABLE_INSTRUMENTS_SQL + INSTRUMENT_ORDER_SQL),
+            Map.entry(SchoolDAO.FIND_INSTRUMENTS_BY_TYPE_SQL, AVAILABLE_INSTRUMENTS_SQL + "AND ri.instrument = ?\n" + INSTRUMENT_ORDER_SQL),
+            Map.entry(SchoolDAO.FIND_STUDENT_ID_BY_PERSONAL_NUMBER_SQL,
+                      "SELECT BIN_TO_UUID(student_id, 1) AS student_id, personal_number, name FROM student WHERE personal_number = ?"),
+            Map.entry(SchoolDAO.FIND_NOF_ACTIVE_RENTALS_FOR_STUDENT_SQL,
+                      "SELECT BIN_TO_UUID(s.student_id, 1) AS student_id, s.name,\n" +
+                      "(SELECT count(*) FROM rental_agreement ra WHERE ra.student_id = s.student_id AND ra.date_returned IS NULL) AS nof_active_rentals\n" +
+                      "FROM student s WHERE s.student_id = UUID_TO_BIN(?, 1)"),
+            Map.entry(SchoolDAO.CREATE_RENTAL_AGREEMENT_SQL,
+                      "INSERT INTO rental_agreement (date_rented, student_id, rental_instrument_id) VALUES (CAST(? AS DATE), UUID_TO_BIN(?, 1), UUID_TO_BIN(?, 1))"),
+            Map.entry(SchoolDAO.FIND_ALL_ACTIVE_AGREEMENTS_SQL,
+                      "SELECT BIN_TO_UUID(ra.rental_agreement_id, 1) AS rental_agreement_id, s.name, s.personal_number, ri.instrument, ri.brand, rif.fee, ra.date_rented\n" +
+                      "FROM rental_agreement ra\n" +
+                      "LEFT JOIN student s ON ra.student_id = s.student_id\n" +
+                      "LEFT JOIN rental_instrument ri ON ri.rental_instrument_id = ra.rental_instrument_id\n" +
+                      "LEFT JOIN instrument_fee rif ON rif.rental_instrument_id = ra.rental_instrument_id\n" +
+                      "WHERE ra.date_returned IS NULL\n" +
+                      "ORDER BY ri.instrument, rif.fee IS NULL, rif.fee"),
+            Map.entry(SchoolDAO.TERMINATE_RENTAL_SQL,
+                      "UPDATE rental_agreement SET date_returned = CURRENT_DATE WHERE rental_agreement_id = UUID_TO_BIN(?, 1)"),
+            Map.entry(SchoolDAO.LOCK_RENTAL_FOR_UPDATE_SQL,
+                      "SELECT BIN_TO_UUID(ra.rental_agreement_id, 1) AS rental_agreement_id, BIN_TO_UUID(ra.rental_instrument_id, 1) AS rental_instrument_id,\n" +
+                      "ra.date_rented, ra.date_returned,\n" +
+                      "COALESCE((SELECT f.fee FROM instrument_fee f WHERE f.rental_instrument_id = ra.rental_instrument_id\n" +
+                      "          ORDER BY f.starting_from <= ra.date_rented DESC, f.starting_from DESC LIMIT 1), 0) AS fee\n" +
+                      "FROM rental_agreement ra WHERE ra.rental_agreement_id = UUID_TO_BIN(?, 1) FOR UPDATE"),
+            Map.entry(SchoolDAO.FIND_FIRST_RENTAL_DATE_SQL, SchoolDAO.FIND_FIRST_RENTAL_DATE_SQL),
+            Map.entry(SchoolDAO.FIND_INSTRUMENTS_WITH_CURRENT_FEE_SQL,
+                      "SELECT BIN_TO_UUID(ri.rental_instrument_id, 1) AS rental_instrument_id, ri.instrument, COALESCE(f.fee, 0) AS fee FROM rental_instrument ri\n" +
+                      "LEFT JOIN LATERAL (SELECT fee FROM instrument_fee f WHERE f.rental_instrument_id = ri.rental_instrument_id\n" +
+                      "                   ORDER BY f.starting_from <= CURRENT_DATE DESC, f.starting_from DESC LIMIT 1) f ON TRUE"),
+            Map.entry(SchoolDAO.FIND_RENTAL_ROLLUP_SQL, SchoolDAO.FIND_RENTAL_ROLLUP_SQL),
+            Map.entry(SchoolDAO.FIND_LESSONS_WITH_OPEN_SEATS_SQL,
+                      "SELECT BIN_TO_UUID(gl.group_lesson_id, 1) AS lesson_id, 'group lesson' AS type, i.instrument, l.level, gl.date, gl.time,\n" +
+                      "gl.max_no_of_students - gl.no_of_booked_students AS open_seats FROM group_lesson gl\n" +
+                      "JOIN instrument i ON i.instrument_id = gl.instrument_id\n" +
+                      "JOIN level l ON l.level_id = gl.level_id\n" +
+                      "WHERE gl.no_of_booked_students < gl.max_no_of_students AND i.instrument = ? AND l.level = ? AND gl.date >= CAST(? AS DATE)\n" +
+                      "UNION ALL\n" +
+                      "SELECT BIN_TO_UUID(e.ensemble_id, 1), 'ensemble', i.instrument, NULL, e.date, e.time,\n" +
+                      "e.max_no_of_students - e.no_of_booked_students FROM ensemble e\n" +
+                      "JOIN ensemble_instrument ei ON ei.ensemble_id = e.ensemble_id\n" +
+                      "JOIN instrument i ON i.instrument_id = ei.instrument_id\n" +
+                      "WHERE e.no_of_booked_students < e.max_no_of_students AND i.instrument = ? AND e.date >= CAST(? AS DATE)\n" +
+                      "ORDER BY date, time"),
+            // Fees are read when instruments are listed, there is nothing to refresh.
+            Map.entry(SchoolDAO.REFRESH_INSTRUMENT_FEES_SQL, "DO 0"),
+            Map.entry(SchoolDAO.CREATE_SCHEDULED_JOB_SQL, "INSERT IGNORE INTO scheduled_job (job, scanned_until) VALUES (?, NULL)"),
+            Map.entry(SchoolDAO.LOCK_SCHEDULED_JOB_SQL, SchoolDAO.LOCK_SCHEDULED_JOB_SQL),
+            Map.entry(SchoolDAO.UPDATE_SCHEDULED_JOB_SQL, SchoolDAO.UPDATE_SCHEDULED_JOB_SQL),
+            Map.entry(SchoolDAO.CREATE_OVERDUE_REMINDERS_SQL,
+                      "INSERT IGNORE INTO rental_reminder (rental_agreement_id, overdue_since, date_created)\n" +
+                      "SELECT ra.rental_agreement_id, DATE_ADD(ra.date_rented, INTERVAL ? MONTH), CURRENT_DATE FROM rental_agreement ra\n" +
+                      "WHERE ra.date_returned IS NULL AND ra.date_rented > COALESCE(?, DATE '1000-01-01') AND ra.date_rented <= ?"),
+            Map.entry(SchoolDAO.FIND_REMINDERS_CREATED_ON_SQL,
+                      "SELECT BIN_TO_UUID(rr.rental_agreement_id, 1) AS rental_agreement_id, s.name, s.personal_number, ri.instrument, ri.brand,\n" +
+                      "ra.date_rented, rr.overdue_since\n" +
+                      "FROM rental_reminder rr\n" +
+                      "JOIN rental_agreement ra ON ra.rental_agreement_id = rr.rental_agreement_id\n" +
+                      "JOIN student s ON s.student_id = ra.student_id\n" +
+                      "JOIN rental_instrument ri ON ri.rental_instrument_id = ra.rental_instrument_id\n" +
+                      "WHERE rr.date_created = ? AND ra.date_returned IS NULL\n" +
+                      "ORDER BY rr.overdue_since, s.name"),
+            Map.entry(SchoolDAO.FIND_INSTRUMENT_TYPE_SQL,
+                      "SELECT instrument FROM rental_instrument WHERE rental_instrument_id = UUID_TO_BIN(?, 1)"),
+            Map.entry(SchoolDAO.CREATE_REQUEST_KEY_SQL, "INSERT IGNORE INTO request_key (operation, request_key) VALUES (?, ?)"),
+            Map.entry(SchoolDAO.LOCK_REQUEST_KEY_SQL, SchoolDAO.LOCK_REQUEST_KEY_SQL),
+            Map.entry(SchoolDAO.UPDATE_REQUEST_KEY_SQL, SchoolDAO.UPDATE_REQUEST_KEY_SQL),
+            Map.entry(SchoolDAO.DELETE_EXPIRED_REQUEST_KEYS_SQL, "DELETE FROM request_key WHERE date_created < NOW() - INTERVAL ? MINUTE"),
+            Map.entry(SchoolDAO.BEGIN_SNAPSHOT_SQL, SchoolDAO.BEGIN_SNAPSHOT_SQL),
+            Map.entry(SchoolDAO.FIND_AGREEMENTS_ACTIVE_ON_SQL,
+                      "SELECT BIN_TO_UUID(ra.rental_agreement_id, 1) AS rental_agreement_id, s.name, s.personal_number, ri.instrument, ri.brand,\n" +
+                      "(SELECT f.fee FROM instrument_fee f WHERE f.rental_instrument_id = ra.rental_instrument_id\n" +
+                      " ORDER BY f.starting_from <= ra.date_rented DESC, f.starting_from DESC LIMIT 1) AS fee, ra.date_rented\n" +
+                      "FROM rental_agreement ra\n" +
+                      "LEFT JOIN student s ON ra.student_id = s.student_id\n" +
+                      "LEFT JOIN rental_instrument ri ON ri.rental_instrument_id = ra.rental_instrument_id\n" +
+                      "WHERE ra.date_rented <= ? AND (ra.date_returned IS NULL OR ra.date_returned > ?)\n" +
+                      "AND ORD(RIGHT(ra.rental_agreement_id, 1)) % ? = ?\n" +
+                      "ORDER BY ri.instrument, fee IS NULL, fee"),
+            Map.entry(SchoolDAO.FIND_SERVER_STATUS_SQL,
+                      "SELECT CONCAT(IF(@@global.read_only, 'standby', 'primary'), ' at ', @@hostname, ':', @@port) AS status"));
+
+    @Override
+    public Properties connectionProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("tcpKeepAlive", "true");
+        properties.setProperty("connectTimeout", secondsAsMillis("sgms.db.connectTimeoutSeconds", 5));
+        properties.setProperty("socketTimeout", secondsAsMillis("sgms.db.socketTimeoutSeconds", 90));
+        properties.setProperty("rewriteBatchedStatements", "true");
+        properties.setProperty("useServerPrepStmts", "true");
+        properties.setProperty("cachePrepStmts", "true");
+        properties.setProperty("prepStmtCacheSize", "256");
+        properties.setProperty("prepStmtCacheSqlLimit", "4096");
+        properties.setProperty("useCursorFetch", "true");
+        return properties;
+    }
+
+    /**
+     * MySQL waits for locks a whole number of seconds, at least one.
+     */
+    @Override
+    public String lockTimeoutSql(long lockTimeoutMillis) {
+        return "SET SESSION innodb_lock_wait_timeout = " + Math.max(1, (lockTimeoutMillis + 999) / 1000);
+    }
+
+    @Override
+    public String translate(String sql) throws SQLException {
+        String translated = STATEMENTS.get(sql);
+        if (translated == null) {
+            throw new SQLFeatureNotSupportedException("Not supported on MySQL: " + sql.lines().findFirst().orElse(sql));
+        }
+        return translated;
+    }
+
+    @Override
+    public boolean canTranslate(String sql) {
+        return STATEMENTS.containsKey(sql);
+    }
+
+    /**
+     * A MySQL transaction can not read the snapshot of another transaction.
+     */
+    @Override
+    public boolean canShareSnapshots() {
+        return false;
+    }
+
+    private static String secondsAsMillis(String property, long defaultSeconds) {
+        return String.valueOf(Long.getLong(property, defaultSeconds) * 1000);
+    }
+}
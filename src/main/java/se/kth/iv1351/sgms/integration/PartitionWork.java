@@ -0,0 +1,44 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+/**
+ * Reads one partition of a report, see <code>SnapshotReader</code>. Like
+ * <code>TransactionalWork</code>, it may be executed more than once.
+ *
+ * @param <T> The type of the result of the work.
+ */
+@FunctionalInterface
+public interface PartitionWork<T> {
+    /**
+     * Reads the specified partition. Shall not commit or roll back the transaction.
+     *
+     * @param db         The DAO whose transaction reads the snapshot of the report.
+     * @param partition  The partition to read, from zero to <code>partitions - 1</code>.
+     * @param partitions The number of partitions the report is divided in.
+     * @return The result of the work.
+     */
+    T execute(SchoolDAO db, int partition, int partitions) throws SchoolDBException;
+}
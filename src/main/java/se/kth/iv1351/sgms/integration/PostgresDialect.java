@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.util.Properties;
+
+/**
+ * PostgreSQL, the dialect all statements are written in. The url may list several hosts, the
+ * connection is then opened to the first host that is of the server type given by
+ * <code>sgms.db.targetServerType</code> (default <code>master</code>, the primary). TCP keepalive
+ * is on, connection attempts time out after <code>sgms.db.connectTimeoutSeconds</code> (default
+ * 5), and reads from a silent server after <code>sgms.db.socketTimeoutSeconds</code> (default 90).
+ */
+class PostgresDialect implements SqlDialect {
+    @Override
+    public Properties connectionProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("targetServerType", System.getProperty("sgms.db.targetServerType", "master"));
+        properties.setProperty("tcpKeepAlive", "true");
+        properties.setProperty("connectTimeout", System.getProperty("sgms.db.connectTimeoutSeconds", "5"));
+        properties.setProperty("socketTimeout", System.getProperty("sgms.db.socketTimeoutSeconds", "90"));
+        return properties;
+    }
+
+    @Override
+    public String lockTimeoutSql(long lockTimeoutMillis) {
+        return "SET lock_timeout = " + lockTimeoutMillis;
+    }
+
+    @Override
+    public String translate(String sql) {
+        return sql;
+    }
+
+    @Override
+    public boolean canTranslate(String sql) {
+        return true;
+    }
+
+    @Override
+    public boolean canShareSnapshots() {
+        return true;
+    }
+}
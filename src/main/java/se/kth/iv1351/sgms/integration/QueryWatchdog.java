@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels statements that are still executing when their deadline passes. One daemon thread
+ * serves all statements, a statement that finishes in time only costs scheduling and
+ * unscheduling one task.
+ */
+class QueryWatchdog {
+    private final ScheduledThreadPoolExecutor timer;
+
+    QueryWatchdog() {
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "query-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Schedules cancellation of the specified statement at the specified deadline.
+     *
+     * @param stmt          The statement that is about to be executed.
+     * @param deadlineNanos The deadline, as a <code>System.nanoTime()</code> value.
+     * @return The scheduled cancellation, which must be cancelled when the statement finishes.
+     */
+    ScheduledFuture<?> cancelAtDeadline(Statement stmt, long deadlineNanos) {
+        return timer.schedule(() -> {
+            try {
+                stmt.cancel();
+            } catch (SQLException ignored) {
+                // The statement finished or the connection is gone, nothing left to cancel.
+            }
+        }, deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+}
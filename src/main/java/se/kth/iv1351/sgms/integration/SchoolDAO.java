@@ -24,12 +24,38 @@
 package se.kth.iv1351.sgms.integration;
 
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+import se.kth.iv1351.sgms.model.ContactPerson;
+import se.kth.iv1351.sgms.model.Instructor;
 import se.kth.iv1351.sgms.model.Instrument;
+import se.kth.iv1351.sgms.model.Lesson;
+import se.kth.iv1351.sgms.model.LessonSlot;
+import se.kth.iv1351.sgms.model.OverdueRental;
 import se.kth.iv1351.sgms.model.RentalAgreement;
+import se.kth.iv1351.sgms.model.RentalPeriod;
+import se.kth.iv1351.sgms.model.RentalStatistics;
+import se.kth.iv1351.sgms.model.Student;
+import se.kth.iv1351.sgms.model.UpcomingLesson;
+import se.kth.iv1351.sgms.model.WaitlistEntry;
 
 /**
  * This data access object (DAO) encapsulates all database calls in the bank
@@ -43,37 +69,559 @@ public class SchoolDAO {
     private static final String INSTRUMENT_BRAND_COLUMN_NAME = "brand";
     private static final String INSTRUMENT_CATEGORY_COLUMN_NAME = "category";
 
-    private Connection connection;
+    static final String FIND_ALL_INSTRUMENTS_SQL = "SELECT rental_instrument_id, instrument, brand, category, fee FROM instrument_availability\n" +
+            "WHERE available\n" +
+            "ORDER BY instrument COLLATE \"C\", fee";
 
-    private PreparedStatement findInstrumentsByTypeStmt;
-    private PreparedStatement findAllInstrumentsStmt;
-    private PreparedStatement findStudentIdByPersonalNumberStmt;
-    private PreparedStatement findNofActiveRentalsForStudentStmt;
-    private PreparedStatement createRentalAgreementStmt;
-    private PreparedStatement findAllActiveAgreementsStmt;
-    private PreparedStatement terminateRentalStmt;
-    private PreparedStatement lockRentalForUpdateStmt;
+    static final String FIND_INSTRUMENTS_BY_TYPE_SQL = "SELECT rental_instrument_id, instrument, brand, category, fee FROM instrument_availability\n" +
+            "WHERE available AND instrument COLLATE \"C\" = ?\n" +
+            "ORDER BY instrument COLLATE \"C\", fee";
 
-    public SchoolDAO() throws SchoolDBException {
+    static final String FIND_STUDENT_ID_BY_PERSONAL_NUMBER_SQL = "SELECT * FROM student WHERE personal_number = ?";
+
+    static final String FIND_NOF_ACTIVE_RENTALS_FOR_STUDENT_SQL = "SELECT s2.student_id, s2.name, COALESCE(nof_active_rentals,0) AS nof_active_rentals\n" +
+            "FROM student s2 \n" +
+            "LEFT JOIN (SELECT s.student_id, s.name, count(s.student_id) AS nof_active_rentals FROM rental_agreement ra \n" +
+            "LEFT JOIN student s \n" +
+            "ON ra.student_id = s.student_id \n" +
+            "WHERE ra.date_returned IS NULL \n" +
+            "GROUP BY s.student_id) AS students_with_rental_agreements \n" +
+            "ON students_with_rental_agreements.student_id = s2.student_id \n" +
+            "WHERE s2.student_id = (?)::UUID";
+
+    static final String CREATE_RENTAL_AGREEMENT_SQL = "INSERT INTO rental_agreement"
+            + "(date_rented, student_id, rental_instrument_id) VALUES ((?)::DATE, (?)::UUID, (?)::UUID)";
+
+    static final String FIND_ALL_ACTIVE_AGREEMENTS_SQL = "SELECT ra.rental_agreement_id, s.name, s.personal_number, ri.instrument, ri.brand , rif.fee, ra.date_rented FROM rental_agreement ra \n" +
+            "LEFT JOIN student s \n" +
+            "ON ra.student_id = s.student_id\n" +
+            "LEFT JOIN rental_instrument ri \n" +
+            "ON ri.rental_instrument_id = ra.rental_instrument_id \n" +
+            "LEFT JOIN instrument_fee rif \n" +
+            "ON rif.rental_instrument_id = ra.rental_instrument_id \n" +
+            "WHERE date_returned IS NULL\n" +
+            "ORDER BY ri.instrument COLLATE \"C\", rif.fee";
+
+    static final String TERMINATE_RENTAL_SQL = "UPDATE rental_agreement\n" +
+            "SET date_returned = CURRENT_DATE\n" +
+            "WHERE rental_agreement_id = (?)::UUID";
+
+    static final String LOCK_RENTAL_FOR_UPDATE_SQL = "SELECT ra.rental_agreement_id, ra.rental_instrument_id, ra.date_rented, ra.date_returned,\n" +
+            "COALESCE((SELECT f.fee FROM instrument_fee f WHERE f.rental_instrument_id = ra.rental_instrument_id\n" +
+            "          ORDER BY f.starting_from <= ra.date_rented DESC, f.starting_from DESC LIMIT 1), 0) AS fee\n" +
+            "FROM rental_agreement ra WHERE ra.rental_agreement_id = (?)::UUID FOR UPDATE;\n";
+
+    static final String FIND_FIRST_RENTAL_DATE_SQL = "SELECT min(date_rented) AS first_date FROM rental_agreement";
+
+    static final String FIND_INSTRUMENTS_WITH_CURRENT_FEE_SQL = "SELECT ri.rental_instrument_id, ri.instrument, COALESCE(f.fee, 0) AS fee FROM rental_instrument ri\n" +
+            "LEFT JOIN LATERAL (SELECT fee FROM instrument_fee f WHERE f.rental_instrument_id = ri.rental_instrument_id\n" +
+            "                   ORDER BY f.starting_from <= CURRENT_DATE DESC, f.starting_from DESC LIMIT 1) f ON TRUE";
+
+    static final String FIND_RENTAL_ROLLUP_SQL = "SELECT ri.instrument, COALESCE(f.fee, 0) AS fee, ra.date_rented, ra.date_returned, count(*) AS nof_rentals\n" +
+            "FROM rental_agreement ra\n" +
+            "JOIN rental_instrument ri ON ri.rental_instrument_id = ra.rental_instrument_id\n" +
+            "LEFT JOIN LATERAL (SELECT fee FROM instrument_fee f WHERE f.rental_instrument_id = ra.rental_instrument_id\n" +
+            "                   ORDER BY f.starting_from <= ra.date_rented DESC, f.starting_from DESC LIMIT 1) f ON TRUE\n" +
+            "GROUP BY ri.instrument, f.fee, ra.date_rented, ra.date_returned";
+
+    private static final String FIND_STUDENT_IDS_BY_PERSONAL_NUMBERS_SQL = "SELECT student_id, personal_number FROM student WHERE personal_number = ANY(?)";
+
+    private static final String RESERVE_GROUP_LESSON_SEATS_SQL = "UPDATE group_lesson\n" +
+            "SET no_of_booked_students = no_of_booked_students + ?\n" +
+            "WHERE group_lesson_id = (?)::UUID AND no_of_booked_students + ? <= max_no_of_students";
+
+    private static final String RELEASE_GROUP_LESSON_SEATS_SQL = "UPDATE group_lesson\n" +
+            "SET no_of_booked_students = no_of_booked_students - ?\n" +
+            "WHERE group_lesson_id = (?)::UUID";
+
+    private static final String CREATE_GROUP_LESSON_BOOKING_SQL = "INSERT INTO student_group_lesson"
+            + "(group_lesson_id, student_id) VALUES ((?)::UUID, (?)::UUID) ON CONFLICT DO NOTHING";
+
+    private static final String RESERVE_ENSEMBLE_SEATS_SQL = "UPDATE ensemble\n" +
+            "SET no_of_booked_students = no_of_booked_students + ?\n" +
+            "WHERE ensemble_id = (?)::UUID AND no_of_booked_students + ? <= max_no_of_students";
+
+    private static final String RELEASE_ENSEMBLE_SEATS_SQL = "UPDATE ensemble\n" +
+            "SET no_of_booked_students = no_of_booked_students - ?\n" +
+            "WHERE ensemble_id = (?)::UUID";
+
+    private static final String CREATE_ENSEMBLE_BOOKING_SQL = "INSERT INTO student_ensemble"
+            + "(ensemble_id, student_id) VALUES ((?)::UUID, (?)::UUID) ON CONFLICT DO NOTHING";
+
+    static final String FIND_LESSONS_WITH_OPEN_SEATS_SQL = "SELECT gl.group_lesson_id AS lesson_id, 'group lesson' AS type, i.instrument, l.level, gl.date, gl.time,\n" +
+            "gl.max_no_of_students - gl.no_of_booked_students AS open_seats FROM group_lesson gl\n" +
+            "JOIN instrument i ON i.instrument_id = gl.instrument_id\n" +
+            "JOIN level l ON l.level_id = gl.level_id\n" +
+            "WHERE gl.no_of_booked_students < gl.max_no_of_students AND i.instrument = ? AND l.level = ? AND gl.date >= (?)::DATE\n" +
+            "UNION ALL\n" +
+            "SELECT e.ensemble_id, 'ensemble', i.instrument, NULL, e.date, e.time,\n" +
+            "e.max_no_of_students - e.no_of_booked_students FROM ensemble e\n" +
+            "JOIN ensemble_instrument ei ON ei.ensemble_id = e.ensemble_id\n" +
+            "JOIN instrument i ON i.instrument_id = ei.instrument_id\n" +
+            "WHERE e.no_of_booked_students < e.max_no_of_students AND i.instrument = ? AND e.date >= (?)::DATE\n" +
+            "ORDER BY date, time";
+
+    static final String REFRESH_INSTRUMENT_FEES_SQL = "UPDATE instrument_availability SET fee = current_instrument_fee(rental_instrument_id)\n" +
+            "WHERE fee IS DISTINCT FROM current_instrument_fee(rental_instrument_id)";
+
+    private static final String FIND_AVAILABILITY_MISMATCHES_SQL = "SELECT ri.rental_instrument_id FROM rental_instrument ri\n" +
+            "LEFT JOIN instrument_availability ia ON ia.rental_instrument_id = ri.rental_instrument_id\n" +
+            "WHERE ia.rental_instrument_id IS NULL\n" +
+            "OR (ia.instrument, ia.brand, ia.category, ia.fee, ia.available) IS DISTINCT FROM\n" +
+            "   (ri.instrument, ri.brand, ri.category, current_instrument_fee(ri.rental_instrument_id),\n" +
+            "    NOT EXISTS (SELECT 1 FROM rental_agreement ra WHERE ra.rental_instrument_id = ri.rental_instrument_id AND ra.date_returned IS NULL))";
+
+    private static final String REFRESH_INSTRUMENT_AVAILABILITY_SQL = "SELECT refresh_instrument_availability(id) FROM unnest((?)::UUID[]) AS id";
+
+    static final String CREATE_SCHEDULED_JOB_SQL = "INSERT INTO scheduled_job (job, scanned_until) VALUES (?, NULL) ON CONFLICT DO NOTHING";
+
+    static final String LOCK_SCHEDULED_JOB_SQL = "SELECT scanned_until FROM scheduled_job WHERE job = ? FOR UPDATE";
+
+    static final String UPDATE_SCHEDULED_JOB_SQL = "UPDATE scheduled_job SET scanned_until = ? WHERE job = ?";
+
+    static final String CREATE_OVERDUE_REMINDERS_SQL = "INSERT INTO rental_reminder (rental_agreement_id, overdue_since, date_created)\n" +
+            "SELECT ra.rental_agreement_id, (ra.date_rented + make_interval(months => ?))::DATE, CURRENT_DATE FROM rental_agreement ra\n" +
+            "WHERE ra.date_returned IS NULL AND ra.date_rented > COALESCE(?, '-infinity'::DATE) AND ra.date_rented <= ?\n" +
+            "ON CONFLICT DO NOTHING";
+
+    static final String FIND_REMINDERS_CREATED_ON_SQL = "SELECT rr.rental_agreement_id, s.name, s.personal_number, ri.instrument, ri.brand, ra.date_rented, rr.overdue_since\n" +
+            "FROM rental_reminder rr\n" +
+            "JOIN rental_agreement ra ON ra.rental_agreement_id = rr.rental_agreement_id\n" +
+            "JOIN student s ON s.student_id = ra.student_id\n" +
+            "JOIN rental_instrument ri ON ri.rental_instrument_id = ra.rental_instrument_id\n" +
+            "WHERE rr.date_created = ? AND ra.date_returned IS NULL\n" +
+            "ORDER BY rr.overdue_since, s.name";
+
+    private static final String JOIN_WAITLIST_SQL = "INSERT INTO instrument_waitlist (student_id, instrument, priority)\n" +
+            "SELECT s.student_id, ?, CASE WHEN EXISTS (SELECT 1 FROM sibling_relationship sr\n" +
+            "                                          WHERE s.student_id IN (sr.first_student_id, sr.second_student_id))\n" +
+            "                             THEN 1 ELSE 0 END\n" +
+            "FROM student s WHERE s.student_id = (?)::UUID AND EXISTS (SELECT 1 FROM rental_instrument ri WHERE ri.instrument = ?)\n" +
+            "ON CONFLICT (student_id, instrument) DO NOTHING";
+
+    private static final String LEAVE_WAITLIST_SQL = "DELETE FROM instrument_waitlist WHERE student_id = (?)::UUID AND instrument = ?";
+
+    private static final String FIND_WAITLIST_ENTRY_SQL = "SELECT me.waitlist_no, me.student_id, s.personal_number, s.name, me.instrument, me.priority, me.date_queued,\n" +
+            "(SELECT count(*) FROM instrument_waitlist w WHERE w.instrument = me.instrument\n" +
+            " AND (w.priority > me.priority OR (w.priority = me.priority AND w.waitlist_no < me.waitlist_no))) + 1 AS position\n" +
+            "FROM instrument_waitlist me JOIN student s ON s.student_id = me.student_id\n" +
+            "WHERE me.student_id = (?)::UUID AND me.instrument = ?";
+
+    private static final String FIND_WAITLIST_SQL = "SELECT w.waitlist_no, w.student_id, s.personal_number, s.name, w.instrument, w.priority, w.date_queued,\n" +
+            "row_number() OVER (ORDER BY w.priority DESC, w.waitlist_no) AS position\n" +
+            "FROM instrument_waitlist w JOIN student s ON s.student_id = w.student_id\n" +
+            "WHERE w.instrument = ?\n" +
+            "ORDER BY w.priority DESC, w.waitlist_no LIMIT ?";
+
+    private static final String LOCK_ELIGIBLE_WAITLIST_ENTRIES_SQL = "SELECT w.waitlist_no, w.student_id, s.personal_number, s.name, w.instrument, w.priority, w.date_queued\n" +
+            "FROM instrument_waitlist w JOIN student s ON s.student_id = w.student_id\n" +
+            "WHERE w.instrument = ?\n" +
+            "AND (SELECT count(*) FROM rental_agreement ra WHERE ra.student_id = w.student_id AND ra.date_returned IS NULL) < ?\n" +
+            "ORDER BY w.priority DESC, w.waitlist_no LIMIT ?\n" +
+            "FOR UPDATE OF w SKIP LOCKED";
+
+    private static final String LOCK_AVAILABLE_INSTRUMENTS_SQL = "SELECT rental_instrument_id FROM instrument_availability\n" +
+            "WHERE available AND instrument COLLATE \"C\" = ?\n" +
+            "ORDER BY instrument COLLATE \"C\", fee LIMIT ?\n" +
+            "FOR UPDATE SKIP LOCKED";
+
+    private static final String FIND_WAITLISTED_AVAILABLE_TYPES_SQL = "SELECT DISTINCT ia.instrument FROM instrument_availability ia\n" +
+            "WHERE ia.available AND EXISTS (SELECT 1 FROM instrument_waitlist w WHERE w.instrument = ia.instrument)";
+
+    private static final String DELETE_WAITLIST_ENTRIES_SQL = "DELETE FROM instrument_waitlist WHERE waitlist_no = ANY(?)";
+
+    static final String FIND_INSTRUMENT_TYPE_SQL = "SELECT instrument FROM rental_instrument WHERE rental_instrument_id = (?)::UUID";
+
+    static final String CREATE_REQUEST_KEY_SQL = "INSERT INTO request_key (operation, request_key) VALUES (?, ?) ON CONFLICT DO NOTHING";
+
+    static final String LOCK_REQUEST_KEY_SQL = "SELECT outcome FROM request_key WHERE operation = ? AND request_key = ? FOR UPDATE";
+
+    static final String UPDATE_REQUEST_KEY_SQL = "UPDATE request_key SET outcome = ? WHERE operation = ? AND request_key = ?";
+
+    static final String DELETE_EXPIRED_REQUEST_KEYS_SQL = "DELETE FROM request_key WHERE date_created < now() - make_interval(mins => ?)";
+
+    static final String FIND_SERVER_STATUS_SQL = "SELECT CASE WHEN pg_is_in_recovery() THEN 'standby' ELSE 'primary' END\n" +
+            "|| COALESCE(' at ' || host(inet_server_addr()) || ':' || inet_server_port(), ' on local socket') AS status";
+
+    private static final String FIND_SNAPSHOT_XMIN_SQL = "SELECT txid_snapshot_xmin(txid_current_snapshot()) AS xmin";
+
+    private static final String FIND_CHANGED_SCHEDULE_ROWS_SQL = "SELECT DISTINCT row_id FROM schedule_change WHERE txid >= ? AND table_name = ANY(?)";
+
+    private static final String DELETE_OLD_SCHEDULE_CHANGES_SQL = "DELETE FROM schedule_change WHERE date_changed < now() - make_interval(days => ?)";
+
+    private static final String FIND_LESSON_SLOTS_SQL = "SELECT individual_lesson_id AS lesson_id, 'individual lesson' AS type, instructor_id, date, time FROM individual_lesson\n" +
+            "UNION ALL\n" +
+            "SELECT group_lesson_id, 'group lesson', instructor_id, date, time FROM group_lesson\n" +
+            "UNION ALL\n" +
+            "SELECT ensemble_id, 'ensemble', instructor_id, date, time FROM ensemble";
+
+    private static final String FIND_LESSON_SLOTS_BY_ID_SQL = "SELECT individual_lesson_id AS lesson_id, 'individual lesson' AS type, instructor_id, date, time FROM individual_lesson\n" +
+            "WHERE individual_lesson_id = ANY(?)\n" +
+            "UNION ALL\n" +
+            "SELECT group_lesson_id, 'group lesson', instructor_id, date, time FROM group_lesson WHERE group_lesson_id = ANY(?)\n" +
+            "UNION ALL\n" +
+            "SELECT ensemble_id, 'ensemble', instructor_id, date, time FROM ensemble WHERE ensemble_id = ANY(?)";
+
+    private static final String FIND_INSTRUCTORS_SQL = "SELECT ins.instructor_id, ins.personal_number, ins.name,\n" +
+            "array_remove(array_agg(i.instrument), NULL) AS instruments FROM instructor ins\n" +
+            "LEFT JOIN instructor_instrument ii ON ii.instructor_id = ins.instructor_id\n" +
+            "LEFT JOIN instrument i ON i.instrument_id = ii.instrument_id\n" +
+            "GROUP BY ins.instructor_id";
+
+    private static final String FIND_INSTRUCTORS_BY_ID_SQL = "SELECT ins.instructor_id, ins.personal_number, ins.name,\n" +
+            "array_remove(array_agg(i.instrument), NULL) AS instruments FROM instructor ins\n" +
+            "LEFT JOIN instructor_instrument ii ON ii.instructor_id = ins.instructor_id\n" +
+            "LEFT JOIN instrument i ON i.instrument_id = ii.instrument_id\n" +
+            "WHERE ins.instructor_id = ANY(?)\n" +
+            "GROUP BY ins.instructor_id";
+
+    static final String BEGIN_SNAPSHOT_SQL = "SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY";
+
+    private static final String IMPORT_SNAPSHOT_SQL = "SET TRANSACTION SNAPSHOT ";
+
+    private static final String EXPORT_SNAPSHOT_SQL = "SELECT pg_export_snapshot() AS snapshot_id";
+
+    static final String FIND_AGREEMENTS_ACTIVE_ON_SQL = "SELECT ra.rental_agreement_id, s.name, s.personal_number, ri.instrument, ri.brand, f.fee, ra.date_rented\n" +
+            "FROM rental_agreement ra\n" +
+            "LEFT JOIN student s ON ra.student_id = s.student_id\n" +
+            "LEFT JOIN rental_instrument ri ON ri.rental_instrument_id = ra.rental_instrument_id\n" +
+            "LEFT JOIN LATERAL (SELECT fee FROM instrument_fee f WHERE f.rental_instrument_id = ra.rental_instrument_id\n" +
+            "                   ORDER BY f.starting_from <= ra.date_rented DESC, f.starting_from DESC LIMIT 1) f ON TRUE\n" +
+            "WHERE ra.date_rented <= ? AND (ra.date_returned IS NULL OR ra.date_returned > ?)\n" +
+            "AND get_byte(uuid_send(ra.rental_agreement_id), 15) % ? = ?\n" +
+            "ORDER BY ri.instrument COLLATE \"C\", f.fee";
+
+    private static final String FIND_STUDENTS_BY_ID_SQL = "SELECT student_id, personal_number, name, phone, email FROM student\n" +
+            "WHERE student_id = ANY(?)";
+
+    private static final String FIND_ACTIVE_RENTALS_BY_STUDENT_SQL = "SELECT ra.student_id, ra.rental_agreement_id, s.name, s.personal_number, ri.instrument, ri.brand, f.fee, ra.date_rented\n" +
+            "FROM rental_agreement ra\n" +
+            "JOIN student s ON s.student_id = ra.student_id\n" +
+            "JOIN rental_instrument ri ON ri.rental_instrument_id = ra.rental_instrument_id\n" +
+            "LEFT JOIN LATERAL (SELECT fee FROM instrument_fee f WHERE f.rental_instrument_id = ra.rental_instrument_id\n" +
+            "                   ORDER BY f.starting_from <= ra.date_rented DESC, f.starting_from DESC LIMIT 1) f ON TRUE\n" +
+            "WHERE ra.student_id = ANY(?) AND ra.date_returned IS NULL\n" +
+            "ORDER BY ra.date_rented";
+
+    private static final String FIND_CONTACT_PERSONS_BY_STUDENT_SQL = "SELECT student_id, name, phone, email FROM additional_contact_person\n" +
+            "WHERE student_id = ANY(?)\n" +
+            "ORDER BY name";
+
+    private static final String FIND_SIBLINGS_BY_STUDENT_SQL = "SELECT sr.first_student_id AS of_student_id, s.student_id, s.personal_number, s.name, s.phone, s.email\n" +
+            "FROM sibling_relationship sr JOIN student s ON s.student_id = sr.second_student_id\n" +
+            "WHERE sr.first_student_id = ANY(?)\n" +
+            "UNION\n" +
+            "SELECT sr.second_student_id, s.student_id, s.personal_number, s.name, s.phone, s.email\n" +
+            "FROM sibling_relationship sr JOIN student s ON s.student_id = sr.first_student_id\n" +
+            "WHERE sr.second_student_id = ANY(?)\n" +
+            "ORDER BY name";
+
+    private static final String FIND_UPCOMING_LESSONS_BY_STUDENT_SQL = "SELECT il.student_id, il.individual_lesson_id AS lesson_id, 'individual lesson' AS type, i.instrument,\n" +
+            "ins.name AS instructor_name, il.date, il.time FROM individual_lesson il\n" +
+            "JOIN instructor ins ON ins.instructor_id = il.instructor_id\n" +
+            "LEFT JOIN instrument i ON i.instrument_id = il.instrument_id\n" +
+            "WHERE il.student_id = ANY(?) AND il.date >= ?\n" +
+            "UNION ALL\n" +
+            "SELECT sgl.student_id, gl.group_lesson_id, 'group lesson', i.instrument, ins.name, gl.date, gl.time FROM student_group_lesson sgl\n" +
+            "JOIN group_lesson gl ON gl.group_lesson_id = sgl.group_lesson_id\n" +
+            "JOIN instructor ins ON ins.instructor_id = gl.instructor_id\n" +
+            "JOIN instrument i ON i.instrument_id = gl.instrument_id\n" +
+            "WHERE sgl.student_id = ANY(?) AND gl.date >= ?\n" +
+            "UNION ALL\n" +
+            "SELECT se.student_id, e.ensemble_id, 'ensemble', NULL, ins.name, e.date, e.time FROM student_ensemble se\n" +
+            "JOIN ensemble e ON e.ensemble_id = se.ensemble_id\n" +
+            "JOIN instructor ins ON ins.instructor_id = e.instructor_id\n" +
+            "WHERE se.student_id = ANY(?) AND e.date >= ?\n" +
+            "ORDER BY date, time";
+
+    private static final String FIND_LESSON_STUDENTS_SQL = "SELECT student_id FROM student_group_lesson WHERE group_lesson_id = (?)::UUID\n" +
+            "UNION\n" +
+            "SELECT student_id FROM student_ensemble WHERE ensemble_id = (?)::UUID\n" +
+            "UNION\n" +
+            "SELECT student_id FROM individual_lesson WHERE individual_lesson_id = (?)::UUID AND student_id IS NOT NULL";
+
+
+    /**
+     * The order of the instruments returned by <code>readAllInstruments</code> and
+     * <code>readInstrumentsByType</code>, used to merge instruments read from several databases.
+     * Instrument types are compared by code point, as with the "C" collation.
+     */
+    public static final Comparator<Instrument> INSTRUMENT_ORDER = Comparator
+            .comparing(Instrument::getInstrument, Comparator.nullsLast(Comparator.<String>naturalOrder()))
+            .thenComparing(instrument -> parseFee(instrument.getFee()), Comparator.nullsLast(Comparator.<Integer>naturalOrder()));
+
+    /**
+     * The order of the agreements returned by <code>readAllActiveAgreements</code>, used to merge
+     * agreements read from several databases.
+     */
+    public static final Comparator<RentalAgreement> AGREEMENT_ORDER = Comparator
+            .comparing(RentalAgreement::getInstrument, Comparator.nullsLast(Comparator.<String>naturalOrder()))
+            .thenComparing(agreement -> parseFee(agreement.getFee()), Comparator.nullsLast(Comparator.<Integer>naturalOrder()));
+
+    static final String DEFAULT_URL = "jdbc:postgresql://localhost:5432/sgms";
+
+    private static final QueryWatchdog WATCHDOG = new QueryWatchdog();
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final String QUERY_CANCELED_SQL_STATE = "57014";
+    private static final long VALIDATE_AFTER_IDLE_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("sgms.db.validateAfterIdleMillis", 10_000));
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final Pattern SNAPSHOT_ID = Pattern.compile("[0-9A-Fa-f-]+");
+
+    private volatile CompletableFuture<Connection> pendingConnection;
+    private final Map<String, PreparedStatement> preparedStatements = new ConcurrentHashMap<>();
+    private IsolationLevel currentIsolation;
+    private long deadlineNanos = NO_DEADLINE;
+    private long lastUsedNanos = System.nanoTime();
+    private final String url;
+    private final SqlDialect dialect;
+
+    /**
+     * Creates a new instance connected to the default database,
+     * <code>jdbc:postgresql://localhost:5432/sgms</code>.
+     */
+    public SchoolDAO() {
+        this(DEFAULT_URL);
+    }
+
+    /**
+     * Creates a new instance. The connection is opened asynchronously, this constructor does not
+     * wait for the database. Statements are prepared the first time they are used. The user
+     * and password are given by the system properties <code>sgms.db.user</code> and
+     * <code>sgms.db.password</code>, both default <code>postgres</code>. Both PostgreSQL and
+     * MySQL urls are accepted, the other connection properties depend on the server, see
+     * <code>PostgresDialect</code> and <code>MySqlDialect</code>.
+     *
+     * @param url The JDBC url of the database.
+     */
+    public SchoolDAO(String url) {
+        this.url = url;
+        this.dialect = SqlDialect.forUrl(url);
+        pendingConnection = CompletableFuture.supplyAsync(this::connectToSgmsDB);
+    }
+
+    /**
+     * Waits until the connection is open.
+     *
+     * @throws SchoolDBException If the database could not be reached.
+     */
+    public void awaitConnection() throws SchoolDBException {
         try {
-            connectToSgmsDB();
-            prepareStatements();
-        } catch (ClassNotFoundException | SQLException exception) {
-            throw new SchoolDBException("Could not connect to datasource.", exception);
+            connection();
+        } catch (SQLException sqle) {
+            throw new SchoolDBException("Could not connect to datasource.", sqle);
         }
     }
+
+    /**
+     * Runs the specified action once the connection that is being opened when this instance is
+     * created is open. The action is not run if that connection could not be opened.
+     */
+    public void whenConnected(Runnable action) {
+        pendingConnection.thenRun(action);
+    }
+
     public void commit() throws SchoolDBException {
         try {
-            connection.commit();
+            connection().commit();
         } catch (SQLException e) {
             handleException("Failed to commit", e);
         }
     }
 
-    private void connectToSgmsDB() throws ClassNotFoundException, SQLException {
-        connection = DriverManager.getConnection("jdbc:postgresql://localhost:5432/sgms",
-                                                 "postgres", "postgres");
-        connection.setAutoCommit(false);
+    /**
+     * Sets the deadline of all statements executed from now on. A statement that is still
+     * executing when the deadline passes is cancelled, and a statement is not started at all if
+     * the deadline has passed.
+     *
+     * @param deadlineNanos The deadline, as a <code>System.nanoTime()</code> value.
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Removes the deadline set by <code>setDeadline</code>.
+     */
+    public void clearDeadline() {
+        deadlineNanos = NO_DEADLINE;
+    }
+
+    /**
+     * Sets the isolation level of the next transaction. Must not be called while a transaction is
+     * ongoing.
+     */
+    public void beginTransaction(IsolationLevel isolation) throws SchoolDBException {
+        validateIfIdle();
+        if (isolation == currentIsolation) {
+            return;
+        }
+        try {
+            connection().setTransactionIsolation(isolation.getJdbcLevel());
+            currentIsolation = isolation;
+        } catch (SQLException sqle) {
+            handleException("Could not set isolation level " + isolation, sqle);
+        }
+    }
+
+    /**
+     * Rolls back the ongoing transaction, if there is one. Failure to roll back is ignored, since
+     * it means the connection is broken and the transaction is gone anyway.
+     */
+    public void rollbackQuietly() {
+        try {
+            connection().rollback();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * Closes the current connection, without waiting for it to respond, and opens a new one. All
+     * statements are prepared again on the new connection when they are next used.
+     *
+     * @throws SchoolDBException If the new connection could not be opened.
+     */
+    public synchronized void reconnect() throws SchoolDBException {
+        try {
+            connection().close();
+        } catch (SQLException ignored) {
+        }
+        preparedStatements.clear();
+        currentIsolation = null;
+        try {
+            pendingConnection = CompletableFuture.completedFuture(connectToSgmsDB());
+        } catch (CompletionException ce) {
+            pendingConnection = CompletableFuture.failedFuture(ce.getCause());
+            throw new SchoolDBException("Could not reconnect to datasource.", ce.getCause());
+        }
+    }
+
+    /**
+     * @return The JDBC url of the database.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Closes the connection. Rolls back the ongoing transaction, if there is one.
+     */
+    public void close() {
+        try {
+            connection().close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private Connection connectToSgmsDB() {
+        try {
+            Properties properties = dialect.connectionProperties();
+            properties.setProperty("user", System.getProperty("sgms.db.user", "postgres"));
+            properties.setProperty("password", System.getProperty("sgms.db.password", "postgres"));
+            Connection connection = DriverManager.getConnection(url, properties);
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(dialect.lockTimeoutSql(Long.getLong("sgms.db.lockTimeoutMillis", 2000)));
+            }
+            connection.commit();
+            return connection;
+        } catch (SQLException sqle) {
+            throw new CompletionException(sqle);
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        try {
+            return pendingConnection.join();
+        } catch (CompletionException | CancellationException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Could not connect to datasource.", e.getCause());
+        }
+    }
+
+    /**
+     * Checks that a connection that has not been used for a while is still alive, and opens a
+     * new connection if it is not. This finds a connection broken by a database restart before
+     * a transaction is started on it.
+     */
+    private void validateIfIdle() throws SchoolDBException {
+        long now = System.nanoTime();
+        if (now - lastUsedNanos > VALIDATE_AFTER_IDLE_NANOS) {
+            boolean valid = false;
+            try {
+                valid = connection().isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException sqle) {
+                // Not valid, a new connection is opened below.
+            }
+            if (!valid) {
+                reconnect();
+            }
+        }
+        lastUsedNanos = now;
+    }
+
+    private PreparedStatement prepared(String sql) throws SQLException {
+        PreparedStatement stmt = preparedStatements.get(sql);
+        if (stmt == null) {
+            PreparedStatement newStmt = connection().prepareStatement(dialect.translate(sql));
+            stmt = preparedStatements.putIfAbsent(sql, newStmt);
+            if (stmt == null) {
+                stmt = newStmt;
+            } else {
+                newStmt.close();
+            }
+        }
+        return stmt;
+    }
+
+    private ResultSet executeQuery(PreparedStatement stmt) throws SQLException {
+        ScheduledFuture<?> cancellation = watchDeadline(stmt);
+        try {
+            return stmt.executeQuery();
+        } finally {
+            unwatch(cancellation);
+        }
+    }
+
+    private int executeUpdate(PreparedStatement stmt) throws SQLException {
+        ScheduledFuture<?> cancellation = watchDeadline(stmt);
+        try {
+            return stmt.executeUpdate();
+        } finally {
+            unwatch(cancellation);
+        }
+    }
+
+    private int[] executeBatch(PreparedStatement stmt) throws SQLException {
+        ScheduledFuture<?> cancellation = watchDeadline(stmt);
+        try {
+            return stmt.executeBatch();
+        } finally {
+            unwatch(cancellation);
+        }
+    }
+
+    private ScheduledFuture<?> watchDeadline(PreparedStatement stmt) throws SQLException {
+        if (deadlineNanos == NO_DEADLINE) {
+            return null;
+        }
+        if (deadlineNanos - System.nanoTime() <= 0) {
+            stmt.clearBatch();
+            throw new SQLTimeoutException("Deadline passed before the statement was executed.", QUERY_CANCELED_SQL_STATE);
+        }
+        return WATCHDOG.cancelAtDeadline(stmt, deadlineNanos);
+    }
+
+    private void unwatch(ScheduledFuture<?> cancellation) {
+        if (cancellation != null) {
+            cancellation.cancel(false);
+        }
+    }
+
+    private static Integer parseFee(String fee) {
+        return fee == null ? null : Integer.valueOf(fee);
     }
 
     public List<Instrument> readInstrumentsByType(String instrument) throws SchoolDBException {
@@ -81,12 +629,12 @@ public class SchoolDAO {
         ResultSet result = null;
         List<Instrument> instruments = new ArrayList<>();
         try {
+            PreparedStatement findInstrumentsByTypeStmt = prepared(FIND_INSTRUMENTS_BY_TYPE_SQL);
             findInstrumentsByTypeStmt.setString(1, instrument);
-            result = findInstrumentsByTypeStmt.executeQuery();
+            result = executeQuery(findInstrumentsByTypeStmt);
             while (result.next()) {
                 instruments.add( new Instrument(result.getString(INSTRUMENT_PK_COLUMN_NAME),result.getString(INSTRUMENT_INSTRUMENT_COLUMN_NAME), result.getString(INSTRUMENT_BRAND_COLUMN_NAME), result.getString(INSTRUMENT_CATEGORY_COLUMN_NAME), result.getString(INSTRUMENT_FEE_COLUMN_NAME)));
             }
-            connection.commit();
         } catch (SQLException sqle) {
             handleException(failureMsg, sqle);
         } finally {
@@ -98,11 +646,10 @@ public class SchoolDAO {
     public List<Instrument> readAllInstruments() throws SchoolDBException {
         String failureMsg = "Could not list all instruments.";
         List<Instrument> instruments = new ArrayList<>();
-        try (ResultSet result = findAllInstrumentsStmt.executeQuery()) {
+        try (ResultSet result = executeQuery(prepared(FIND_ALL_INSTRUMENTS_SQL))) {
             while (result.next()) {
                 instruments.add( new Instrument(result.getString(INSTRUMENT_PK_COLUMN_NAME),result.getString(INSTRUMENT_INSTRUMENT_COLUMN_NAME), result.getString(INSTRUMENT_BRAND_COLUMN_NAME), result.getString(INSTRUMENT_CATEGORY_COLUMN_NAME), result.getString(INSTRUMENT_FEE_COLUMN_NAME)));
             }
-            connection.commit();
         } catch (SQLException sqle) {
             handleException(failureMsg, sqle);
         }
@@ -113,8 +660,9 @@ public class SchoolDAO {
         String failureMsg = "Could not find student by personal number " + studentPersonalNumber;
         ResultSet result = null;
         try {
+            PreparedStatement findStudentIdByPersonalNumberStmt = prepared(FIND_STUDENT_ID_BY_PERSONAL_NUMBER_SQL);
             findStudentIdByPersonalNumberStmt.setString(1, studentPersonalNumber);
-            result = findStudentIdByPersonalNumberStmt.executeQuery();
+            result = executeQuery(findStudentIdByPersonalNumberStmt);
             if (result.next()) {
                 return result.getString("student_id");
             }
@@ -131,8 +679,9 @@ public class SchoolDAO {
         String failureMsg = "Could not find active rentals for student " + studentId;
         ResultSet result = null;
         try {
+            PreparedStatement findNofActiveRentalsForStudentStmt = prepared(FIND_NOF_ACTIVE_RENTALS_FOR_STUDENT_SQL);
             findNofActiveRentalsForStudentStmt.setString(1, studentId);
-            result = findNofActiveRentalsForStudentStmt.executeQuery();
+            result = executeQuery(findNofActiveRentalsForStudentStmt);
             if (result.next()) {
                 return result.getInt("nof_active_rentals");
             }
@@ -150,11 +699,12 @@ public class SchoolDAO {
         String failureMsg = "Could not create rental agreement for student " + studentId + " and instrument " + rentalInstrumentId;
         int updatedRows = 0;
         try {
+            PreparedStatement createRentalAgreementStmt = prepared(CREATE_RENTAL_AGREEMENT_SQL);
             createRentalAgreementStmt.setString(1, String.valueOf(java.time.LocalDate.now()));
             createRentalAgreementStmt.setString(2, studentId);
             createRentalAgreementStmt.setString(3, rentalInstrumentId);
 
-            updatedRows = createRentalAgreementStmt.executeUpdate();
+            updatedRows = executeUpdate(createRentalAgreementStmt);
             if (updatedRows != 1) {
                 handleException(failureMsg, null);
             }
@@ -167,11 +717,10 @@ public class SchoolDAO {
     public List<RentalAgreement> readAllActiveAgreements() throws SchoolDBException {
         String failureMsg = "Could not find all agreements.";
         List<RentalAgreement> rentals = new ArrayList<>();
-        try (ResultSet result = findAllActiveAgreementsStmt.executeQuery()) {
+        try (ResultSet result = executeQuery(prepared(FIND_ALL_ACTIVE_AGREEMENTS_SQL))) {
             while (result.next()) {
                 rentals.add(new RentalAgreement(result.getString("rental_agreement_id"), result.getString("name"), result.getString("personal_number"), result.getString("instrument"), result.getString("brand"), result.getString("fee"), result.getString("date_rented")));
             }
-            connection.commit();
         } catch (SQLException sqle) {
             handleException(failureMsg, sqle);
         }
@@ -182,8 +731,9 @@ public class SchoolDAO {
         String failureMsg = "Could not terminate rental agreement: " + rentalId;
         int updatedRows = 0;
         try {
+            PreparedStatement terminateRentalStmt = prepared(TERMINATE_RENTAL_SQL);
             terminateRentalStmt.setString(1, rentalId);
-            updatedRows = terminateRentalStmt.executeUpdate();
+            updatedRows = executeUpdate(terminateRentalStmt);
             if (updatedRows != 1) {
                 handleException(failureMsg, null);
             }
@@ -193,69 +743,1076 @@ public class SchoolDAO {
     }
 
     public boolean lockRentalForUpdate(String rentalId) throws SchoolDBException {
+        RentalPeriod rental = readRentalPeriodForUpdate(rentalId);
+        return rental != null;
+    }
+
+    /**
+     * Locks the specified rental agreement until the ongoing transaction ends, and reads which
+     * instrument it is for, the fee when it was rented and when it was rented and returned.
+     *
+     * @return The rental, or <code>null</code> if there is no such rental agreement.
+     */
+    public RentalPeriod readRentalPeriodForUpdate(String rentalId) throws SchoolDBException {
         String failureMsg = "Could not lock rental agreement: " + rentalId;
         ResultSet result = null;
         try {
+            PreparedStatement lockRentalForUpdateStmt = prepared(LOCK_RENTAL_FOR_UPDATE_SQL);
             lockRentalForUpdateStmt.setString(1, rentalId);
-            result = lockRentalForUpdateStmt.executeQuery();
-            return result.next() && Objects.equals(result.getString("rental_agreement_id"), rentalId);
+            result = executeQuery(lockRentalForUpdateStmt);
+            if (result.next() && Objects.equals(result.getString("rental_agreement_id"), rentalId)) {
+                Date dateReturned = result.getDate("date_returned");
+                return new RentalPeriod(result.getString("rental_instrument_id"), result.getInt("fee"),
+                                        result.getDate("date_rented").toLocalDate(),
+                                        dateReturned == null ? null : dateReturned.toLocalDate());
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        } finally {
+            if (result != null)
+                closeResultSet(failureMsg, result);
+        }
+        return null;
+    }
+
+    /**
+     * Builds rollups of the complete rental history. The rentals are grouped by instrument type,
+     * fee and dates in the database, which scans the rental agreements in parallel if the
+     * database finds that worthwhile, and only the groups are sent to this application. The groups
+     * are read in one round trip, since fetching them in chunks through a cursor would prevent
+     * the parallel scan. Should
+     * be called in a repeatable read transaction, to make the rollups consistent.
+     */
+    public RentalStatistics readRentalStatistics() throws SchoolDBException {
+        String failureMsg = "Could not read rental history.";
+        RentalStatistics statistics = null;
+        try {
+            try (ResultSet result = executeQuery(prepared(FIND_FIRST_RENTAL_DATE_SQL))) {
+                result.next();
+                Date firstDate = result.getDate("first_date");
+                statistics = new RentalStatistics(firstDate == null ? LocalDate.now() : firstDate.toLocalDate());
+            }
+            try (ResultSet result = executeQuery(prepared(FIND_INSTRUMENTS_WITH_CURRENT_FEE_SQL))) {
+                while (result.next()) {
+                    statistics.addInstrument(result.getString("rental_instrument_id"), result.getString("instrument"), result.getInt("fee"));
+                }
+            }
+            try (ResultSet result = executeQuery(prepared(FIND_RENTAL_ROLLUP_SQL))) {
+                while (result.next()) {
+                    Date dateReturned = result.getDate("date_returned");
+                    statistics.addRentals(result.getString("instrument"), result.getInt("fee"),
+                                          result.getDate("date_rented").toLocalDate(),
+                                          dateReturned == null ? null : dateReturned.toLocalDate(),
+                                          result.getInt("nof_rentals"));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return statistics;
+    }
+
+    /**
+     * Looks up the ids of all students with the specified personal numbers using a single query.
+     *
+     * @param personalNumbers The personal numbers to search for.
+     * @return A map from personal number to student id. Personal numbers without a student are not
+     *         included.
+     */
+    public Map<String, String> readStudentIdsByPersonalNumbers(List<String> personalNumbers) throws SchoolDBException {
+        String failureMsg = "Could not find students by personal numbers " + personalNumbers;
+        Map<String, String> studentIds = new HashMap<>();
+        ResultSet result = null;
+        try {
+            Array numbers = connection().createArrayOf("varchar", personalNumbers.toArray());
+            PreparedStatement findStudentIdsByPersonalNumbersStmt = prepared(FIND_STUDENT_IDS_BY_PERSONAL_NUMBERS_SQL);
+            findStudentIdsByPersonalNumbersStmt.setArray(1, numbers);
+            result = executeQuery(findStudentIdsByPersonalNumbersStmt);
+            while (result.next()) {
+                studentIds.put(result.getString("personal_number"), result.getString("student_id"));
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        } finally {
+            if (result != null)
+                closeResultSet(failureMsg, result);
+        }
+        return studentIds;
+    }
+
+    /**
+     * Takes the specified number of seats from the seat counter of a group lesson. The counter is
+     * only decremented if there are enough seats left, which makes the check and the update one
+     * atomic operation. The lesson row stays locked until the ongoing transaction ends.
+     *
+     * @return <code>true</code> if the seats were reserved, <code>false</code> if the lesson does
+     *         not exist or does not have enough open seats.
+     */
+    public boolean reserveGroupLessonSeats(String groupLessonId, int seats) throws SchoolDBException {
+        return reserveSeats(RESERVE_GROUP_LESSON_SEATS_SQL, groupLessonId, seats,
+                            "Could not reserve seats on group lesson " + groupLessonId);
+    }
+
+    /**
+     * Gives seats that were reserved but not booked back to a group lesson.
+     */
+    public void releaseGroupLessonSeats(String groupLessonId, int seats) throws SchoolDBException {
+        releaseSeats(RELEASE_GROUP_LESSON_SEATS_SQL, groupLessonId, seats,
+                     "Could not release seats on group lesson " + groupLessonId);
+    }
+
+    /**
+     * Books all specified students on a group lesson in one batch. Students that are already
+     * booked on the lesson are skipped.
+     *
+     * @return The number of students that were booked.
+     */
+    public int createGroupLessonBookings(String groupLessonId, List<String> studentIds) throws SchoolDBException {
+        return createBookings(CREATE_GROUP_LESSON_BOOKING_SQL, groupLessonId, studentIds,
+                              "Could not book students on group lesson " + groupLessonId);
+    }
+
+    /**
+     * Same as <code>reserveGroupLessonSeats</code>, but for an ensemble.
+     */
+    public boolean reserveEnsembleSeats(String ensembleId, int seats) throws SchoolDBException {
+        return reserveSeats(RESERVE_ENSEMBLE_SEATS_SQL, ensembleId, seats,
+                            "Could not reserve seats on ensemble " + ensembleId);
+    }
+
+    /**
+     * Same as <code>releaseGroupLessonSeats</code>, but for an ensemble.
+     */
+    public void releaseEnsembleSeats(String ensembleId, int seats) throws SchoolDBException {
+        releaseSeats(RELEASE_ENSEMBLE_SEATS_SQL, ensembleId, seats,
+                     "Could not release seats on ensemble " + ensembleId);
+    }
+
+    /**
+     * Same as <code>createGroupLessonBookings</code>, but for an ensemble.
+     */
+    public int createEnsembleBookings(String ensembleId, List<String> studentIds) throws SchoolDBException {
+        return createBookings(CREATE_ENSEMBLE_BOOKING_SQL, ensembleId, studentIds,
+                              "Could not book students on ensemble " + ensembleId);
+    }
+
+    /**
+     * Lists group lessons and ensembles with open seats for the specified instrument, taking place
+     * on or after the specified date. Only lessons that are not full are searched, using the
+     * partial open seats indexes.
+     */
+    public List<Lesson> readLessonsWithOpenSeats(String instrument, String level, String fromDate) throws SchoolDBException {
+        String failureMsg = "Could not search for lessons with open seats.";
+        List<Lesson> lessons = new ArrayList<>();
+        ResultSet result = null;
+        try {
+            PreparedStatement findLessonsWithOpenSeatsStmt = prepared(FIND_LESSONS_WITH_OPEN_SEATS_SQL);
+            findLessonsWithOpenSeatsStmt.setString(1, instrument);
+            findLessonsWithOpenSeatsStmt.setString(2, level);
+            findLessonsWithOpenSeatsStmt.setString(3, fromDate);
+            findLessonsWithOpenSeatsStmt.setString(4, instrument);
+            findLessonsWithOpenSeatsStmt.setString(5, fromDate);
+            result = executeQuery(findLessonsWithOpenSeatsStmt);
+            while (result.next()) {
+                lessons.add(new Lesson(result.getString("lesson_id"), result.getString("type"), result.getString("instrument"), result.getString("level"), result.getString("date"), result.getString("time"), result.getInt("open_seats")));
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        } finally {
+            if (result != null)
+                closeResultSet(failureMsg, result);
+        }
+        return lessons;
+    }
+
+    /**
+     * Updates the fee of the instruments whose current fee has changed because a new fee has
+     * started. Fee changes made in the database are applied immediately by triggers, this is only
+     * needed when a fee that was entered in advance starts.
+     *
+     * @return The number of instruments whose fee was updated.
+     */
+    public int refreshInstrumentFees() throws SchoolDBException {
+        String failureMsg = "Could not refresh instrument fees.";
+        try {
+            return executeUpdate(prepared(REFRESH_INSTRUMENT_FEES_SQL));
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return 0;
+    }
+
+    /**
+     * Compares the availability of all instruments, as maintained by triggers, with the
+     * availability computed from the rental agreements and fees.
+     *
+     * @return The ids of the instruments whose availability is missing or wrong.
+     */
+    public List<String> readAvailabilityMismatches() throws SchoolDBException {
+        String failureMsg = "Could not check instrument availability.";
+        List<String> mismatches = new ArrayList<>();
+        try (ResultSet result = executeQuery(prepared(FIND_AVAILABILITY_MISMATCHES_SQL))) {
+            while (result.next()) {
+                mismatches.add(result.getString(INSTRUMENT_PK_COLUMN_NAME));
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return mismatches;
+    }
+
+    /**
+     * Computes the availability of the specified instruments again, from the rental agreements
+     * and fees, in one round trip.
+     *
+     * @return The number of instruments refreshed.
+     */
+    public int refreshInstrumentAvailability(List<String> rentalInstrumentIds) throws SchoolDBException {
+        String failureMsg = "Could not refresh instrument availability.";
+        int nofRefreshed = 0;
+        try {
+            PreparedStatement refreshStmt = prepared(REFRESH_INSTRUMENT_AVAILABILITY_SQL);
+            refreshStmt.setArray(1, connection().createArrayOf("uuid", rentalInstrumentIds.toArray()));
+            try (ResultSet result = executeQuery(refreshStmt)) {
+                while (result.next()) {
+                    nofRefreshed++;
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return nofRefreshed;
+    }
+
+    /**
+     * Locks the progress of the specified scheduled job until the ongoing transaction ends, so
+     * that the job is not run by two clients at the same time.
+     *
+     * @return The date the job has scanned until, or <code>null</code> if it has never run.
+     */
+    public LocalDate lockScheduledJob(String job) throws SchoolDBException {
+        String failureMsg = "Could not lock scheduled job " + job;
+        try {
+            PreparedStatement createScheduledJobStmt = prepared(CREATE_SCHEDULED_JOB_SQL);
+            createScheduledJobStmt.setString(1, job);
+            executeUpdate(createScheduledJobStmt);
+            PreparedStatement lockScheduledJobStmt = prepared(LOCK_SCHEDULED_JOB_SQL);
+            lockScheduledJobStmt.setString(1, job);
+            try (ResultSet result = executeQuery(lockScheduledJobStmt)) {
+                if (result.next()) {
+                    Date scannedUntil = result.getDate("scanned_until");
+                    return scannedUntil == null ? null : scannedUntil.toLocalDate();
+                }
+            }
+            handleException(failureMsg, null);
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return null;
+    }
+
+    public void updateScheduledJob(String job, LocalDate scannedUntil) throws SchoolDBException {
+        String failureMsg = "Could not update scheduled job " + job;
+        try {
+            PreparedStatement updateScheduledJobStmt = prepared(UPDATE_SCHEDULED_JOB_SQL);
+            updateScheduledJobStmt.setDate(1, Date.valueOf(scannedUntil));
+            updateScheduledJobStmt.setString(2, job);
+            if (executeUpdate(updateScheduledJobStmt) != 1) {
+                handleException(failureMsg, null);
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+    }
+
+    /**
+     * Creates reminders about all active rentals rented after <code>rentedAfter</code> and at the
+     * latest on <code>rentedUntil</code>. Only that range of the active rentals index is read.
+     *
+     * @param termMonths  The rental term, a rental is overdue this many months after it was rented.
+     * @param rentedAfter Rentals rented on this date or earlier are not read, <code>null</code>
+     *                    means all rentals until <code>rentedUntil</code> are read.
+     * @param rentedUntil The last rental date to read.
+     * @return The number of created reminders. A reminder is never created twice.
+     */
+    public int createOverdueReminders(int termMonths, LocalDate rentedAfter, LocalDate rentedUntil) throws SchoolDBException {
+        String failureMsg = "Could not create reminders about overdue rentals.";
+        try {
+            PreparedStatement createOverdueRemindersStmt = prepared(CREATE_OVERDUE_REMINDERS_SQL);
+            createOverdueRemindersStmt.setInt(1, termMonths);
+            if (rentedAfter == null) {
+                createOverdueRemindersStmt.setNull(2, Types.DATE);
+            } else {
+                createOverdueRemindersStmt.setDate(2, Date.valueOf(rentedAfter));
+            }
+            createOverdueRemindersStmt.setDate(3, Date.valueOf(rentedUntil));
+            return executeUpdate(createOverdueRemindersStmt);
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the reminders created on the specified date, about rentals that are still active.
+     */
+    public List<OverdueRental> readRemindersCreatedOn(LocalDate dateCreated) throws SchoolDBException {
+        String failureMsg = "Could not list reminders about overdue rentals.";
+        List<OverdueRental> reminders = new ArrayList<>();
+        try {
+            PreparedStatement findRemindersStmt = prepared(FIND_REMINDERS_CREATED_ON_SQL);
+            findRemindersStmt.setDate(1, Date.valueOf(dateCreated));
+            try (ResultSet result = executeQuery(findRemindersStmt)) {
+                while (result.next()) {
+                    reminders.add(new OverdueRental(result.getString("rental_agreement_id"), result.getString("name"),
+                                                    result.getString("personal_number"), result.getString("instrument"),
+                                                    result.getString("brand"), result.getString("date_rented"),
+                                                    result.getString("overdue_since")));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return reminders;
+    }
+
+    /**
+     * Puts a student in the waitlist for an instrument type. Students with siblings are given a
+     * higher priority than students without. A student that is already in the waitlist keeps
+     * the current place.
+     *
+     * @return <code>false</code> if the student or instrument type does not exist, or if the
+     *         student was already in the waitlist.
+     */
+    public boolean createWaitlistEntry(String studentId, String instrument) throws SchoolDBException {
+        String failureMsg = "Could not put student " + studentId + " in the waitlist for " + instrument;
+        try {
+            PreparedStatement joinWaitlistStmt = prepared(JOIN_WAITLIST_SQL);
+            joinWaitlistStmt.setString(1, instrument);
+            joinWaitlistStmt.setString(2, studentId);
+            joinWaitlistStmt.setString(3, instrument);
+            return executeUpdate(joinWaitlistStmt) == 1;
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the student was removed from the waitlist, <code>false</code>
+     *         if the student was not in the waitlist.
+     */
+    public boolean deleteWaitlistEntry(String studentId, String instrument) throws SchoolDBException {
+        String failureMsg = "Could not remove student " + studentId + " from the waitlist for " + instrument;
+        try {
+            PreparedStatement leaveWaitlistStmt = prepared(LEAVE_WAITLIST_SQL);
+            leaveWaitlistStmt.setString(1, studentId);
+            leaveWaitlistStmt.setString(2, instrument);
+            return executeUpdate(leaveWaitlistStmt) == 1;
         } catch (SQLException sqle) {
             handleException(failureMsg, sqle);
         }
         return false;
     }
 
-    private void prepareStatements() throws SQLException {
-        findAllInstrumentsStmt = connection.prepareStatement("SELECT ri.rental_instrument_id , ri.instrument, ri.brand, ri.category, if2.fee FROM rental_instrument ri\n" +
-                "FULL JOIN rental_agreement ra\n" +
-                "ON ra.rental_instrument_id = ri.rental_instrument_id \n" +
-                "FULL JOIN instrument_fee if2 \n" +
-                "ON ri.rental_instrument_id = if2.rental_instrument_id\n" +
-                "WHERE ra.date_returned IS NOT NULL OR ra.rental_instrument_id IS NULL\n" +
-                "ORDER BY instrument, fee");
-
-        findInstrumentsByTypeStmt = connection.prepareStatement("SELECT ri.rental_instrument_id , ri.instrument, ri.brand, ri.category, if2.fee FROM rental_instrument ri\n" +
-                "FULL JOIN rental_agreement ra\n" +
-                "ON ra.rental_instrument_id = ri.rental_instrument_id \n" +
-                "FULL JOIN instrument_fee if2 \n" +
-                "ON ri.rental_instrument_id = if2.rental_instrument_id\n" +
-                "WHERE (ra.date_returned IS NOT NULL OR ra.rental_instrument_id IS NULL) AND instrument = ?\n" +
-                "ORDER BY fee");
-
-        findStudentIdByPersonalNumberStmt = connection.prepareStatement("SELECT * FROM student WHERE personal_number = ?");
-
-        findNofActiveRentalsForStudentStmt = connection.prepareStatement("SELECT s2.student_id, s2.name, COALESCE(nof_active_rentals,0) AS nof_active_rentals\n" +
-                "FROM student s2 \n" +
-                "LEFT JOIN (SELECT s.student_id, s.name, count(s.student_id) AS nof_active_rentals FROM rental_agreement ra \n" +
-                "LEFT JOIN student s \n" +
-                "ON ra.student_id = s.student_id \n" +
-                "WHERE ra.date_returned IS NULL \n" +
-                "GROUP BY s.student_id) AS students_with_rental_agreements \n" +
-                "ON students_with_rental_agreements.student_id = s2.student_id \n" +
-                "WHERE s2.student_id = (?)::UUID");
-
-        createRentalAgreementStmt = connection.prepareStatement("INSERT INTO rental_agreement"
-                + "(date_rented, student_id, rental_instrument_id) VALUES ((?)::DATE, (?)::UUID, (?)::UUID)");
-
-        findAllActiveAgreementsStmt = connection.prepareStatement("SELECT ra.rental_agreement_id, s.name, s.personal_number, ri.instrument, ri.brand , rif.fee, ra.date_rented FROM rental_agreement ra \n" +
-                "LEFT JOIN student s \n" +
-                "ON ra.student_id = s.student_id\n" +
-                "LEFT JOIN rental_instrument ri \n" +
-                "ON ri.rental_instrument_id = ra.rental_instrument_id \n" +
-                "LEFT JOIN instrument_fee rif \n" +
-                "ON rif.rental_instrument_id = ra.rental_instrument_id \n" +
-                "WHERE date_returned IS NULL;");
-
-        terminateRentalStmt = connection.prepareStatement("UPDATE rental_agreement\n" +
-                "SET date_returned = CURRENT_DATE\n" +
-                "WHERE rental_agreement_id = (?)::UUID");
-
-        lockRentalForUpdateStmt = connection.prepareStatement("SELECT rental_agreement_id FROM rental_agreement WHERE rental_agreement_id = (?)::UUID FOR UPDATE;\n");
+    /**
+     * Reads a student's place in the waitlist for an instrument type. The place is counted from
+     * the waitlist index, it takes longer the further back the student is.
+     *
+     * @return The entry, or <code>null</code> if the student is not in the waitlist.
+     */
+    public WaitlistEntry readWaitlistEntry(String studentId, String instrument) throws SchoolDBException {
+        String failureMsg = "Could not find student " + studentId + " in the waitlist for " + instrument;
+        try {
+            PreparedStatement findWaitlistEntryStmt = prepared(FIND_WAITLIST_ENTRY_SQL);
+            findWaitlistEntryStmt.setString(1, studentId);
+            findWaitlistEntryStmt.setString(2, instrument);
+            try (ResultSet result = executeQuery(findWaitlistEntryStmt)) {
+                if (result.next()) {
+                    return waitlistEntry(result, result.getLong("position"));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the first students in the waitlist for an instrument type, in the order they will be
+     * given instruments, ignoring whether they can rent more instruments.
+     *
+     * @param maxEntries The maximum number of students to read.
+     */
+    public List<WaitlistEntry> readWaitlist(String instrument, int maxEntries) throws SchoolDBException {
+        String failureMsg = "Could not list the waitlist for " + instrument;
+        List<WaitlistEntry> entries = new ArrayList<>();
+        try {
+            PreparedStatement findWaitlistStmt = prepared(FIND_WAITLIST_SQL);
+            findWaitlistStmt.setString(1, instrument);
+            findWaitlistStmt.setInt(2, maxEntries);
+            try (ResultSet result = executeQuery(findWaitlistStmt)) {
+                while (result.next()) {
+                    entries.add(waitlistEntry(result, result.getLong("position")));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return entries;
+    }
+
+    /**
+     * Locks the first students in the waitlist for an instrument type that have fewer than
+     * <code>maxActiveRentals</code> active rentals, until the ongoing transaction ends. Students
+     * that can not rent more instruments keep their place. The waitlist is read in index order,
+     * only up to the last returned student. Entries locked by another transaction are skipped.
+     *
+     * @param maxEntries The maximum number of students to lock.
+     * @return The locked entries, in the order they shall be given instruments.
+     */
+    public List<WaitlistEntry> lockEligibleWaitlistEntries(String instrument, int maxActiveRentals, int maxEntries) throws SchoolDBException {
+        String failureMsg = "Could not lock the waitlist for " + instrument;
+        List<WaitlistEntry> entries = new ArrayList<>();
+        try {
+            PreparedStatement lockEntriesStmt = prepared(LOCK_ELIGIBLE_WAITLIST_ENTRIES_SQL);
+            lockEntriesStmt.setString(1, instrument);
+            lockEntriesStmt.setInt(2, maxActiveRentals);
+            lockEntriesStmt.setInt(3, maxEntries);
+            try (ResultSet result = executeQuery(lockEntriesStmt)) {
+                while (result.next()) {
+                    entries.add(waitlistEntry(result, entries.size() + 1));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return entries;
+    }
+
+    /**
+     * Locks available instruments of the specified type until the ongoing transaction ends, the
+     * cheapest first. Instruments locked by another transaction are skipped.
+     *
+     * @param maxInstruments The maximum number of instruments to lock.
+     * @return The ids of the locked instruments.
+     */
+    public List<String> lockAvailableInstruments(String instrument, int maxInstruments) throws SchoolDBException {
+        String failureMsg = "Could not lock available instruments of type " + instrument;
+        List<String> rentalInstrumentIds = new ArrayList<>();
+        try {
+            PreparedStatement lockInstrumentsStmt = prepared(LOCK_AVAILABLE_INSTRUMENTS_SQL);
+            lockInstrumentsStmt.setString(1, instrument);
+            lockInstrumentsStmt.setInt(2, maxInstruments);
+            try (ResultSet result = executeQuery(lockInstrumentsStmt)) {
+                while (result.next()) {
+                    rentalInstrumentIds.add(result.getString(INSTRUMENT_PK_COLUMN_NAME));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return rentalInstrumentIds;
+    }
+
+    /**
+     * @return The instrument types that have both available instruments and students in the
+     *         waitlist.
+     */
+    public List<String> readWaitlistedAvailableTypes() throws SchoolDBException {
+        String failureMsg = "Could not find waitlisted instrument types.";
+        List<String> instruments = new ArrayList<>();
+        try (ResultSet result = executeQuery(prepared(FIND_WAITLISTED_AVAILABLE_TYPES_SQL))) {
+            while (result.next()) {
+                instruments.add(result.getString(INSTRUMENT_INSTRUMENT_COLUMN_NAME));
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return instruments;
+    }
+
+    /**
+     * Removes the specified entries from the waitlists, in one statement.
+     */
+    public void deleteWaitlistEntries(List<WaitlistEntry> entries) throws SchoolDBException {
+        String failureMsg = "Could not remove students from the waitlist.";
+        try {
+            Long[] waitlistNos = new Long[entries.size()];
+            for (int i = 0; i < waitlistNos.length; i++) {
+                waitlistNos[i] = entries.get(i).getWaitlistNo();
+            }
+            PreparedStatement deleteEntriesStmt = prepared(DELETE_WAITLIST_ENTRIES_SQL);
+            deleteEntriesStmt.setArray(1, connection().createArrayOf("bigint", waitlistNos));
+            if (executeUpdate(deleteEntriesStmt) != waitlistNos.length) {
+                handleException(failureMsg, null);
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+    }
+
+    /**
+     * @return The type of the specified instrument, or <code>null</code> if there is no such
+     *         instrument.
+     */
+    public String readInstrumentType(String rentalInstrumentId) throws SchoolDBException {
+        String failureMsg = "Could not find instrument " + rentalInstrumentId;
+        try {
+            PreparedStatement findInstrumentTypeStmt = prepared(FIND_INSTRUMENT_TYPE_SQL);
+            findInstrumentTypeStmt.setString(1, rentalInstrumentId);
+            try (ResultSet result = executeQuery(findInstrumentTypeStmt)) {
+                if (result.next()) {
+                    return result.getString(INSTRUMENT_INSTRUMENT_COLUMN_NAME);
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return null;
+    }
+
+    /**
+     * Claims a client request key for the ongoing transaction. If another transaction has
+     * claimed the key but not yet ended, this method waits until it ends. The key stays locked
+     * until the ongoing transaction ends.
+     *
+     * @param operation The operation the key was given for, keys of different operations are
+     *                  independent.
+     * @return The outcome of the request that claimed the key before, or <code>null</code> if
+     *         this transaction claimed the key, or if the request that claimed it did not finish.
+     */
+    public String claimRequestKey(String operation, String requestKey) throws SchoolDBException {
+        String failureMsg = "Could not claim request key " + requestKey;
+        try {
+            PreparedStatement createRequestKeyStmt = prepared(CREATE_REQUEST_KEY_SQL);
+            createRequestKeyStmt.setString(1, operation);
+            createRequestKeyStmt.setString(2, requestKey);
+            if (executeUpdate(createRequestKeyStmt) == 1) {
+                return null;
+            }
+            PreparedStatement lockRequestKeyStmt = prepared(LOCK_REQUEST_KEY_SQL);
+            lockRequestKeyStmt.setString(1, operation);
+            lockRequestKeyStmt.setString(2, requestKey);
+            try (ResultSet result = executeQuery(lockRequestKeyStmt)) {
+                if (result.next()) {
+                    return result.getString("outcome");
+                }
+            }
+            handleException(failureMsg, null);
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return null;
+    }
+
+    /**
+     * Stores the outcome of the request that claimed the specified key.
+     */
+    public void updateRequestOutcome(String operation, String requestKey, String outcome) throws SchoolDBException {
+        String failureMsg = "Could not store the outcome of request " + requestKey;
+        try {
+            PreparedStatement updateRequestKeyStmt = prepared(UPDATE_REQUEST_KEY_SQL);
+            updateRequestKeyStmt.setString(1, outcome);
+            updateRequestKeyStmt.setString(2, operation);
+            updateRequestKeyStmt.setString(3, requestKey);
+            if (executeUpdate(updateRequestKeyStmt) != 1) {
+                handleException(failureMsg, null);
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+    }
+
+    /**
+     * Removes all request keys claimed more than <code>ttlMinutes</code> minutes ago.
+     *
+     * @return The number of removed keys.
+     */
+    public int deleteExpiredRequestKeys(int ttlMinutes) throws SchoolDBException {
+        String failureMsg = "Could not remove expired request keys.";
+        try {
+            PreparedStatement deleteExpiredStmt = prepared(DELETE_EXPIRED_REQUEST_KEYS_SQL);
+            deleteExpiredStmt.setInt(1, ttlMinutes);
+            return executeUpdate(deleteExpiredStmt);
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return 0;
+    }
+
+    /**
+     * @return Whether the server is the primary or a standby, and its address.
+     */
+    public String readServerStatus() throws SchoolDBException {
+        String failureMsg = "Could not read server status.";
+        try (ResultSet result = executeQuery(prepared(FIND_SERVER_STATUS_SQL))) {
+            if (result.next()) {
+                return result.getString("status");
+            }
+            handleException(failureMsg, null);
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the oldest transaction that was not finished when the snapshot of the ongoing
+     * transaction was taken. Must be the first statement of a <code>REPEATABLE_READ</code>
+     * transaction, so that the snapshot is taken by this statement and used by all statements
+     * after it.
+     *
+     * @return The xmin of the snapshot. All transactions with lower ids are finished, and their
+     *         changes are seen by the snapshot.
+     */
+    public long readSnapshotXmin() throws SchoolDBException {
+        String failureMsg = "Could not read transaction snapshot.";
+        try (ResultSet result = executeQuery(prepared(FIND_SNAPSHOT_XMIN_SQL))) {
+            if (result.next()) {
+                return result.getLong("xmin");
+            }
+            handleException(failureMsg, null);
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the ids of all rows in the specified tables that were changed by a transaction with
+     * an id equal to or higher than <code>fromTxid</code>, according to the
+     * <code>schedule_change</code> table.
+     *
+     * @param fromTxid The xmin of the snapshot the rows were last read with.
+     * @param tables   The tables to read changes of.
+     * @return The ids of the changed rows.
+     */
+    public List<String> readChangedScheduleRows(long fromTxid, String... tables) throws SchoolDBException {
+        String failureMsg = "Could not read schedule changes.";
+        List<String> rowIds = new ArrayList<>();
+        try {
+            PreparedStatement findChangedRowsStmt = prepared(FIND_CHANGED_SCHEDULE_ROWS_SQL);
+            findChangedRowsStmt.setLong(1, fromTxid);
+            findChangedRowsStmt.setArray(2, connection().createArrayOf("varchar", tables));
+            try (ResultSet result = executeQuery(findChangedRowsStmt)) {
+                while (result.next()) {
+                    rowIds.add(result.getString("row_id"));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return rowIds;
     }
+
+    /**
+     * Deletes schedule changes older than the specified number of days. A client whose schedule
+     * was read before that must read the whole schedule again.
+     *
+     * @return The number of deleted changes.
+     */
+    public int deleteOldScheduleChanges(int retentionDays) throws SchoolDBException {
+        String failureMsg = "Could not remove old schedule changes.";
+        try {
+            PreparedStatement deleteOldChangesStmt = prepared(DELETE_OLD_SCHEDULE_CHANGES_SQL);
+            deleteOldChangesStmt.setInt(1, retentionDays);
+            return executeUpdate(deleteOldChangesStmt);
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return 0;
+    }
+
+    /**
+     * @return All individual lessons, group lessons and ensembles.
+     */
+    public List<LessonSlot> readLessonSlots() throws SchoolDBException {
+        String failureMsg = "Could not read the schedule.";
+        List<LessonSlot> lessons = new ArrayList<>();
+        try (ResultSet result = executeQuery(prepared(FIND_LESSON_SLOTS_SQL))) {
+            while (result.next()) {
+                lessons.add(lessonSlot(result));
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return lessons;
+    }
+
+    /**
+     * @param lessonIds Ids of individual lessons, group lessons and ensembles.
+     * @return The specified lessons that exist.
+     */
+    public List<LessonSlot> readLessonSlots(Collection<String> lessonIds) throws SchoolDBException {
+        String failureMsg = "Could not read changed lessons.";
+        List<LessonSlot> lessons = new ArrayList<>();
+        try {
+            Array ids = connection().createArrayOf("uuid", lessonIds.toArray());
+            PreparedStatement findLessonsStmt = prepared(FIND_LESSON_SLOTS_BY_ID_SQL);
+            findLessonsStmt.setArray(1, ids);
+            findLessonsStmt.setArray(2, ids);
+            findLessonsStmt.setArray(3, ids);
+            try (ResultSet result = executeQuery(findLessonsStmt)) {
+                while (result.next()) {
+                    lessons.add(lessonSlot(result));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return lessons;
+    }
+
+    /**
+     * @return All instructors, with the instrument types they teach.
+     */
+    public List<Instructor> readInstructors() throws SchoolDBException {
+        String failureMsg = "Could not read instructors.";
+        List<Instructor> instructors = new ArrayList<>();
+        try (ResultSet result = executeQuery(prepared(FIND_INSTRUCTORS_SQL))) {
+            while (result.next()) {
+                instructors.add(instructor(result));
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return instructors;
+    }
+
+    /**
+     * @return The specified instructors that exist, with the instrument types they teach.
+     */
+    public List<Instructor> readInstructors(Collection<String> instructorIds) throws SchoolDBException {
+        String failureMsg = "Could not read changed instructors.";
+        List<Instructor> instructors = new ArrayList<>();
+        try {
+            PreparedStatement findInstructorsStmt = prepared(FIND_INSTRUCTORS_BY_ID_SQL);
+            findInstructorsStmt.setArray(1, connection().createArrayOf("uuid", instructorIds.toArray()));
+            try (ResultSet result = executeQuery(findInstructorsStmt)) {
+                while (result.next()) {
+                    instructors.add(instructor(result));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return instructors;
+    }
+
+    /**
+     * Makes the ongoing transaction a read-only <code>REPEATABLE_READ</code> transaction, which
+     * reads one snapshot of the database without taking any locks, so that it neither waits for
+     * nor blocks rentals and terminations. Must be called before any other statement of the
+     * transaction.
+     *
+     * @param snapshotId A snapshot exported by another transaction with
+     *                   <code>exportSnapshot</code>, which this transaction shall read instead of
+     *                   taking its own, or <code>null</code> to take a new snapshot. The exporting
+     *                   transaction must still be ongoing.
+     */
+    public void beginSnapshot(String snapshotId) throws SchoolDBException {
+        String failureMsg = "Could not begin snapshot transaction.";
+        if (snapshotId != null && !SNAPSHOT_ID.matcher(snapshotId).matches()) {
+            throw new SchoolDBException("Invalid snapshot id " + snapshotId);
+        }
+        try (Statement stmt = connection().createStatement()) {
+            stmt.execute(dialect.translate(BEGIN_SNAPSHOT_SQL));
+            if (snapshotId != null) {
+                stmt.execute(IMPORT_SNAPSHOT_SQL + "'" + snapshotId + "'");
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+    }
+
+    /**
+     * Exports the snapshot of the ongoing snapshot transaction, see <code>beginSnapshot</code>,
+     * so that other transactions can read the same snapshot. The snapshot can be imported until
+     * this transaction ends.
+     *
+     * @return The id of the snapshot.
+     */
+    public String exportSnapshot() throws SchoolDBException {
+        String failureMsg = "Could not export snapshot.";
+        try (ResultSet result = executeQuery(prepared(EXPORT_SNAPSHOT_SQL))) {
+            if (result.next()) {
+                return result.getString("snapshot_id");
+            }
+            handleException(failureMsg, null);
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return null;
+    }
+
+    /**
+     * @return <code>true</code> if instruments can be given to waitlisted students. Waitlists
+     *         are not supported on MySQL.
+     */
+    public boolean supportsWaitlists() {
+        return dialect.canTranslate(FIND_WAITLISTED_AVAILABLE_TYPES_SQL) && dialect.canTranslate(FIND_INSTRUMENT_TYPE_SQL)
+               && dialect.canTranslate(LOCK_AVAILABLE_INSTRUMENTS_SQL) && dialect.canTranslate(LOCK_ELIGIBLE_WAITLIST_ENTRIES_SQL);
+    }
+
+    /**
+     * @return <code>true</code> if changes of the instructor schedule are recorded, and can be
+     *         read and removed. Not supported on MySQL.
+     */
+    public boolean supportsScheduleChanges() {
+        return dialect.canTranslate(FIND_CHANGED_SCHEDULE_ROWS_SQL) && dialect.canTranslate(DELETE_OLD_SCHEDULE_CHANGES_SQL);
+    }
+
+    /**
+     * @return <code>true</code> if snapshots can be exported to other transactions. Only
+     *         PostgreSQL can share snapshots.
+     */
+    public boolean canShareSnapshots() {
+        return dialect.canShareSnapshots();
+    }
+
+    /**
+     * Reads one partition of the agreements that were active at the end of the specified day,
+     * that is rented on or before that day and not returned until after it. The fee is the fee
+     * of the instrument when it was rented. Agreements are divided in partitions by their id, so
+     * that parallel transactions reading the same snapshot can each read one partition.
+     *
+     * @param date       The day.
+     * @param partition  The partition to read, from zero to <code>partitions - 1</code>.
+     * @param partitions The number of partitions, at most 256.
+     * @return The agreements, ordered by <code>AGREEMENT_ORDER</code>.
+     */
+    public List<RentalAgreement> readAgreementsActiveOn(LocalDate date, int partition, int partitions) throws SchoolDBException {
+        String failureMsg = "Could not find agreements active on " + date;
+        List<RentalAgreement> rentals = new ArrayList<>();
+        try {
+            PreparedStatement findAgreementsStmt = prepared(FIND_AGREEMENTS_ACTIVE_ON_SQL);
+            findAgreementsStmt.setDate(1, Date.valueOf(date));
+            findAgreementsStmt.setDate(2, Date.valueOf(date));
+            findAgreementsStmt.setInt(3, partitions);
+            findAgreementsStmt.setInt(4, partition);
+            try (ResultSet result = executeQuery(findAgreementsStmt)) {
+                while (result.next()) {
+                    rentals.add(new RentalAgreement(result.getString("rental_agreement_id"), result.getString("name"), result.getString("personal_number"), result.getString("instrument"), result.getString("brand"), result.getString("fee"), result.getString("date_rented")));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return rentals;
+    }
+
+    /**
+     * @return The specified students that exist.
+     */
+    public List<Student> readStudents(Collection<String> studentIds) throws SchoolDBException {
+        String failureMsg = "Could not read students.";
+        List<Student> students = new ArrayList<>();
+        try {
+            PreparedStatement findStudentsStmt = prepared(FIND_STUDENTS_BY_ID_SQL);
+            findStudentsStmt.setArray(1, connection().createArrayOf("uuid", studentIds.toArray()));
+            try (ResultSet result = executeQuery(findStudentsStmt)) {
+                while (result.next()) {
+                    students.add(student(result));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return students;
+    }
+
+    /**
+     * @return The active rentals of each of the specified students, ordered by the date they were
+     *         rented. Students without active rentals are not included.
+     */
+    public Map<String, List<RentalAgreement>> readActiveRentals(Collection<String> studentIds) throws SchoolDBException {
+        String failureMsg = "Could not read active rentals of students.";
+        Map<String, List<RentalAgreement>> rentals = new HashMap<>();
+        try {
+            PreparedStatement findRentalsStmt = prepared(FIND_ACTIVE_RENTALS_BY_STUDENT_SQL);
+            findRentalsStmt.setArray(1, connection().createArrayOf("uuid", studentIds.toArray()));
+            try (ResultSet result = executeQuery(findRentalsStmt)) {
+                while (result.next()) {
+                    rentals.computeIfAbsent(result.getString("student_id"), id -> new ArrayList<>())
+                           .add(new RentalAgreement(result.getString("rental_agreement_id"), result.getString("name"), result.getString("personal_number"), result.getString("instrument"), result.getString("brand"), result.getString("fee"), result.getString("date_rented")));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return rentals;
+    }
+
+    /**
+     * @return The additional contact persons of each of the specified students. Students without
+     *         contact persons are not included.
+     */
+    public Map<String, List<ContactPerson>> readContactPersons(Collection<String> studentIds) throws SchoolDBException {
+        String failureMsg = "Could not read contact persons of students.";
+        Map<String, List<ContactPerson>> contactPersons = new HashMap<>();
+        try {
+            PreparedStatement findContactPersonsStmt = prepared(FIND_CONTACT_PERSONS_BY_STUDENT_SQL);
+            findContactPersonsStmt.setArray(1, connection().createArrayOf("uuid", studentIds.toArray()));
+            try (ResultSet result = executeQuery(findContactPersonsStmt)) {
+                while (result.next()) {
+                    contactPersons.computeIfAbsent(result.getString("student_id"), id -> new ArrayList<>())
+                                  .add(new ContactPerson(result.getString("name"), result.getString("phone"), result.getString("email")));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return contactPersons;
+    }
+
+    /**
+     * @return The siblings of each of the specified students, ordered by name. A sibling
+     *         relationship counts in both directions. Students without siblings are not included.
+     */
+    public Map<String, List<Student>> readSiblings(Collection<String> studentIds) throws SchoolDBException {
+        String failureMsg = "Could not read siblings of students.";
+        Map<String, List<Student>> siblings = new HashMap<>();
+        try {
+            Array ids = connection().createArrayOf("uuid", studentIds.toArray());
+            PreparedStatement findSiblingsStmt = prepared(FIND_SIBLINGS_BY_STUDENT_SQL);
+            findSiblingsStmt.setArray(1, ids);
+            findSiblingsStmt.setArray(2, ids);
+            try (ResultSet result = executeQuery(findSiblingsStmt)) {
+                while (result.next()) {
+                    siblings.computeIfAbsent(result.getString("of_student_id"), id -> new ArrayList<>()).add(student(result));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return siblings;
+    }
+
+    /**
+     * @param from The first day to read lessons from.
+     * @return The individual lessons, group lessons and ensembles each of the specified students
+     *         is booked on, from the specified day, ordered by start. Students without such
+     *         lessons are not included.
+     */
+    public Map<String, List<UpcomingLesson>> readUpcomingLessons(Collection<String> studentIds, LocalDate from) throws SchoolDBException {
+        String failureMsg = "Could not read upcoming lessons of students.";
+        Map<String, List<UpcomingLesson>> lessons = new HashMap<>();
+        try {
+            Array ids = connection().createArrayOf("uuid", studentIds.toArray());
+            PreparedStatement findLessonsStmt = prepared(FIND_UPCOMING_LESSONS_BY_STUDENT_SQL);
+            for (int lessonTable = 0; lessonTable < 3; lessonTable++) {
+                findLessonsStmt.setArray(2 * lessonTable + 1, ids);
+                findLessonsStmt.setDate(2 * lessonTable + 2, Date.valueOf(from));
+            }
+            try (ResultSet result = executeQuery(findLessonsStmt)) {
+                while (result.next()) {
+                    lessons.computeIfAbsent(result.getString("student_id"), id -> new ArrayList<>())
+                           .add(new UpcomingLesson(result.getString("lesson_id"), result.getString("type"), result.getString("instrument"),
+                                                   result.getString("instructor_name"), result.getString("date"), result.getString("time")));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return lessons;
+    }
+
+    /**
+     * @param lessonId The id of an individual lesson, a group lesson or an ensemble.
+     * @return The ids of the students booked on the specified lesson.
+     */
+    public List<String> readLessonStudentIds(String lessonId) throws SchoolDBException {
+        String failureMsg = "Could not read the students of lesson " + lessonId;
+        List<String> studentIds = new ArrayList<>();
+        try {
+            PreparedStatement findLessonStudentsStmt = prepared(FIND_LESSON_STUDENTS_SQL);
+            findLessonStudentsStmt.setString(1, lessonId);
+            findLessonStudentsStmt.setString(2, lessonId);
+            findLessonStudentsStmt.setString(3, lessonId);
+            try (ResultSet result = executeQuery(findLessonStudentsStmt)) {
+                while (result.next()) {
+                    studentIds.add(result.getString("student_id"));
+                }
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return studentIds;
+    }
+
+    private Student student(ResultSet result) throws SQLException {
+        return new Student(result.getString("student_id"), result.getString("personal_number"), result.getString("name"),
+                           result.getString("phone"), result.getString("email"));
+    }
+
+    private LessonSlot lessonSlot(ResultSet result) throws SQLException {
+        LocalDateTime start = LocalDateTime.of(result.getDate("date").toLocalDate(), result.getTime("time").toLocalTime());
+        return new LessonSlot(result.getString("lesson_id"), result.getString("type"), result.getString("instructor_id"), start);
+    }
+
+    private Instructor instructor(ResultSet result) throws SQLException {
+        Array instruments = result.getArray("instruments");
+        return new Instructor(result.getString("instructor_id"), result.getString("personal_number"), result.getString("name"),
+                              new HashSet<>(Arrays.asList((String[]) instruments.getArray())));
+    }
+
+    private WaitlistEntry waitlistEntry(ResultSet result, long position) throws SQLException {
+        return new WaitlistEntry(result.getLong("waitlist_no"), position, result.getString("student_id"),
+                                 result.getString("personal_number"), result.getString("name"),
+                                 result.getString("instrument"), result.getInt("priority") > 0,
+                                 result.getString("date_queued"));
+    }
+
+    private boolean reserveSeats(String reserveSql, String lessonId, int seats, String failureMsg) throws SchoolDBException {
+        try {
+            PreparedStatement reserveStmt = prepared(reserveSql);
+            reserveStmt.setInt(1, seats);
+            reserveStmt.setString(2, lessonId);
+            reserveStmt.setInt(3, seats);
+            return executeUpdate(reserveStmt) == 1;
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return false;
+    }
+
+    private void releaseSeats(String releaseSql, String lessonId, int seats, String failureMsg) throws SchoolDBException {
+        try {
+            PreparedStatement releaseStmt = prepared(releaseSql);
+            releaseStmt.setInt(1, seats);
+            releaseStmt.setString(2, lessonId);
+            if (executeUpdate(releaseStmt) != 1) {
+                handleException(failureMsg, null);
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+    }
+
+    private int createBookings(String bookingSql, String lessonId, List<String> studentIds, String failureMsg) throws SchoolDBException {
+        int bookedStudents = 0;
+        try {
+            PreparedStatement bookingStmt = prepared(bookingSql);
+            for (String studentId : studentIds) {
+                bookingStmt.setString(1, lessonId);
+                bookingStmt.setString(2, studentId);
+                bookingStmt.addBatch();
+            }
+            for (int updatedRows : executeBatch(bookingStmt)) {
+                if (updatedRows > 0 || updatedRows == Statement.SUCCESS_NO_INFO)
+                    bookedStudents++;
+            }
+        } catch (SQLException sqle) {
+            handleException(failureMsg, sqle);
+        }
+        return bookedStudents;
+    }
+
     private void handleException(String failureMsg, Exception cause) throws SchoolDBException {
         String completeFailureMsg = failureMsg;
         try {
-            connection.rollback();
+            connection().rollback();
         } catch (SQLException rollbackExc) {
             completeFailureMsg = completeFailureMsg + 
             ". Also failed to rollback transaction because of: " + rollbackExc.getMessage();
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tells which database holds the data of each school branch. Every branch has its own students,
+ * instruments and rental agreements, in its own database. The map is given by the system property
+ * <code>sgms.shards</code>, a comma separated list of <code>branch=jdbc url</code>, for example
+ * <code>north=jdbc:postgresql://db1:5432/sgms,south=jdbc:postgresql://db2:5432/sgms</code>. The
+ * branch of this client is given by <code>sgms.branch</code>, default the first branch. Without
+ * <code>sgms.shards</code> there is one branch, <code>main</code>, in the default database.
+ */
+public class ShardMap {
+    private static final String DEFAULT_BRANCH = "main";
+
+    private final Map<String, String> urlsByBranch = new LinkedHashMap<>();
+    private final String homeBranch;
+
+    /**
+     * Creates a map from the system properties <code>sgms.shards</code> and <code>sgms.branch</code>.
+     *
+     * @throws IllegalArgumentException If the properties are malformed, or the home branch is
+     *                                  not in the map.
+     */
+    public ShardMap() {
+        this(System.getProperty("sgms.shards", DEFAULT_BRANCH + "=" + SchoolDAO.DEFAULT_URL),
+             System.getProperty("sgms.branch"));
+    }
+
+    /**
+     * @param specification Comma separated <code>branch=jdbc url</code> pairs.
+     * @param homeBranch    The branch of this client, or <code>null</code> for the first branch.
+     */
+    public ShardMap(String specification, String homeBranch) {
+        for (String shard : specification.split(",")) {
+            String[] branchAndUrl = shard.trim().split("=", 2);
+            if (branchAndUrl.length != 2 || branchAndUrl[0].isBlank() || branchAndUrl[1].isBlank()) {
+                throw new IllegalArgumentException("Expected branch=url, got " + shard);
+            }
+            if (urlsByBranch.put(branchAndUrl[0].trim(), branchAndUrl[1].trim()) != null) {
+                throw new IllegalArgumentException("Branch " + branchAndUrl[0] + " is specified twice.");
+            }
+        }
+        this.homeBranch = homeBranch == null ? urlsByBranch.keySet().iterator().next() : homeBranch;
+        if (!urlsByBranch.containsKey(this.homeBranch)) {
+            throw new IllegalArgumentException("Branch " + this.homeBranch + " is not in the shard map.");
+        }
+    }
+
+    /**
+     * @return The branch of this client.
+     */
+    public String getHomeBranch() {
+        return homeBranch;
+    }
+
+    /**
+     * @return All branches, in the order they were specified.
+     */
+    public List<String> getBranches() {
+        return Collections.unmodifiableList(new ArrayList<>(urlsByBranch.keySet()));
+    }
+
+    /**
+     * @return The JDBC url of the database of the specified branch.
+     */
+    public String getUrl(String branch) {
+        String url = urlsByBranch.get(branch);
+        if (url == null) {
+            throw new IllegalArgumentException("Unknown branch " + branch);
+        }
+        return url;
+    }
+
+    /**
+     * @return <code>true</code> if there is more than one branch.
+     */
+    public boolean isSharded() {
+        return urlsByBranch.size() > 1;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The connections to one shard. Connections are opened when they are first needed, up to the
+ * maximum size of the pool, and are then reused.
+ */
+class ShardPool {
+    private final String url;
+    private final int maxSize;
+    private final Metrics metrics;
+    private final BlockingQueue<PooledConnection> idle = new LinkedBlockingQueue<>();
+    private final List<PooledConnection> all = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * One connection of the pool, with the transaction template used to execute work on it.
+     */
+    static class PooledConnection {
+        private final SchoolDAO dao;
+        private final TransactionTemplate transactions;
+
+        private PooledConnection(SchoolDAO dao, TransactionTemplate transactions) {
+            this.dao = dao;
+            this.transactions = transactions;
+        }
+
+        <T> T execute(IsolationLevel isolation, long deadlineMillis, ShardWork<T> work) throws SchoolDBException {
+            return transactions.execute(isolation, deadlineMillis, () -> work.execute(dao));
+        }
+    }
+
+    ShardPool(String url, int maxSize, Metrics metrics) {
+        this.url = url;
+        this.maxSize = maxSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Takes a connection from the pool, opens a new one if there is no idle connection and the
+     * pool is not full, or else waits for a connection to be returned.
+     *
+     * @param maxWaitMillis The longest time to wait for a connection.
+     * @throws SchoolDBException If no connection became available in time, or if the pool is
+     *                           closed.
+     */
+    PooledConnection borrow(long maxWaitMillis) throws SchoolDBException {
+        PooledConnection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        synchronized (all) {
+            if (closed) {
+                throw new SchoolDBException("The connections to " + url + " are closed.");
+            }
+            if (all.size() < maxSize) {
+                SchoolDAO dao = new SchoolDAO(url);
+                connection = new PooledConnection(dao, new TransactionTemplate(dao, metrics));
+                all.add(connection);
+                return connection;
+            }
+        }
+        try {
+            connection = idle.poll(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        if (connection == null) {
+            metrics.increment("shards.poolExhausted");
+            throw new SchoolDBException("No connection to " + url + " became available.");
+        }
+        return connection;
+    }
+
+    /**
+     * Returns a connection taken with <code>borrow</code> to the pool.
+     */
+    void release(PooledConnection connection) {
+        synchronized (all) {
+            if (closed) {
+                return;
+            }
+        }
+        idle.add(connection);
+    }
+
+    /**
+     * @param deadline The deadline, in the time of <code>System.nanoTime</code>.
+     * @return The milliseconds left until the deadline.
+     * @throws SchoolDBException If the deadline has passed.
+     */
+    static long remainingMillis(long deadline) throws SchoolDBException {
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMillis <= 0) {
+            throw new SchoolDBException("The deadline passed while waiting for a connection.");
+        }
+        return remainingMillis;
+    }
+
+    /**
+     * @return The number of open connections, borrowed or idle.
+     */
+    int size() {
+        synchronized (all) {
+            return all.size();
+        }
+    }
+
+    /**
+     * Closes all connections of the pool, no connection can be borrowed after that.
+     */
+    void close() {
+        synchronized (all) {
+            closed = true;
+            for (PooledConnection connection : all) {
+                connection.dao.close();
+            }
+            all.clear();
+        }
+        idle.clear();
+    }
+}
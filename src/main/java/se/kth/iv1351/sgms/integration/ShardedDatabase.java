@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes work on the databases of all school branches, see <code>ShardMap</code>. Each shard has
+ * its own pool of connections, of the size given by the system property
+ * <code>sgms.shards.poolSize</code> (default 4). Reads that span all branches are sent to all
+ * shards at the same time, and the sorted results are merged into one sorted result.
+ */
+public class ShardedDatabase {
+    private final ShardMap shardMap;
+    private final Map<String, ShardPool> pools = new LinkedHashMap<>();
+    private final Metrics metrics;
+    private final ExecutorService scatterThreads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sgms-shard-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param shardMap Tells which database holds which branch.
+     * @param metrics  Transactions on the shards are counted here.
+     */
+    public ShardedDatabase(ShardMap shardMap, Metrics metrics) {
+        this.shardMap = shardMap;
+        this.metrics = metrics;
+        int poolSize = Integer.getInteger("sgms.shards.poolSize", 4);
+        for (String branch : shardMap.getBranches()) {
+            pools.put(branch, new ShardPool(shardMap.getUrl(branch), poolSize, metrics));
+        }
+    }
+
+    /**
+     * @return Tells which database holds which branch.
+     */
+    public ShardMap getShardMap() {
+        return shardMap;
+    }
+
+    /**
+     * Executes the specified work in one transaction, on the database of the specified branch.
+     *
+     * @param branch         The branch whose database is used.
+     * @param isolation      The isolation level of the transaction.
+     * @param deadlineMillis The time the work, including retries and waiting for a connection, may take.
+     * @return The result of the work.
+     */
+    public <T> T executeOn(String branch, IsolationLevel isolation, long deadlineMillis, ShardWork<T> work) throws SchoolDBException {
+        ShardPool pool = pools.get(branch);
+        if (pool == null) {
+            throw new SchoolDBException("Unknown branch " + branch);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        ShardPool.PooledConnection connection = pool.borrow(deadlineMillis);
+        try {
+            return connection.execute(isolation, ShardPool.remainingMillis(deadline), work);
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    /**
+     * Executes the specified read on all shards in parallel, and merges the results. The result
+     * of each shard must be sorted in the specified order, the merged result is then sorted in
+     * the same order.
+     *
+     * @param isolation      The isolation level of the transaction on each shard.
+     * @param deadlineMillis The time the read may take on each shard.
+     * @param read           Reads sorted rows from one shard.
+     * @param order          The order of the rows returned by <code>read</code>.
+     * @return The rows of all shards.
+     * @throws SchoolDBException If the read failed on any shard.
+     */
+    public <T> List<T> readAll(IsolationLevel isolation, long deadlineMillis, ShardWork<List<T>> read,
+                               Comparator<? super T> order) throws SchoolDBException {
+        metrics.increment("shards.scatterGather");
+        List<CompletableFuture<List<T>>> shardResults = new ArrayList<>();
+        for (String branch : pools.keySet()) {
+            shardResults.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return executeOn(branch, isolation, deadlineMillis, read);
+                } catch (SchoolDBException sdbe) {
+                    throw new CompletionException(sdbe);
+                }
+            }, scatterThreads));
+        }
+        List<List<T>> sortedRuns = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<T>> shardResult : shardResults) {
+                sortedRuns.add(shardResult.join());
+            }
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof SchoolDBException) {
+                throw (SchoolDBException) ce.getCause();
+            }
+            throw new SchoolDBException("Could not read from all branches.", ce.getCause());
+        }
+        return merge(sortedRuns, order);
+    }
+
+    /**
+     * @return The number of open connections to the database of the specified branch.
+     */
+    public int getOpenConnections(String branch) {
+        ShardPool pool = pools.get(branch);
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * Closes all connections to all shards.
+     */
+    public void close() {
+        scatterThreads.shutdownNow();
+        for (ShardPool pool : pools.values()) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Merges sorted lists into one sorted list, by repeatedly taking the smallest head of the
+     * lists from a priority queue. Rows that are equal keep the order of the lists.
+     */
+    static <T> List<T> merge(List<List<T>> sortedRuns, Comparator<? super T> order) {
+        int size = 0;
+        for (List<T> run : sortedRuns) {
+            size += run.size();
+        }
+        List<T> merged = new ArrayList<>(size);
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            int byRow = order.compare(sortedRuns.get(a[0]).get(a[1]), sortedRuns.get(b[0]).get(b[1]));
+            return byRow != 0 ? byRow : Integer.compare(a[0], b[0]);
+        });
+        for (int run = 0; run < sortedRuns.size(); run++) {
+            if (!sortedRuns.get(run).isEmpty()) {
+                heads.add(new int[]{run, 0});
+            }
+        }
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<T> run = sortedRuns.get(head[0]);
+            merged.add(run.get(head[1]));
+            if (++head[1] < run.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads reports from one snapshot of a database, on connections of their own, so that a long
+ * report neither waits for nor blocks rentals and terminations, and does not occupy the
+ * connection of a session. Reports are read in read-only <code>REPEATABLE_READ</code>
+ * transactions, see <code>SchoolDAO.beginSnapshot</code>. A report is divided in partitions, one
+ * for each worker. The first partition is read by a transaction that exports its snapshot, the
+ * other partitions are read in parallel by transactions that import it, so all partitions see the
+ * database as it was at the same moment. The partitions are sorted, and are merged into one
+ * sorted result. If the database can not share snapshots, the whole report is read as one
+ * partition. A report takes the connections of all its partitions before it starts reading, one
+ * report at a time, so that concurrent reports do not each hold some connections while waiting
+ * for the others.
+ */
+public class SnapshotReader {
+    private final ShardPool pool;
+    private final int workers;
+    private final Metrics metrics;
+    private final ExecutorService workerThreads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sgms-report-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param url     The JDBC url of the database.
+     * @param workers The number of partitions a report is divided in, which is also the number
+     *                of connections opened for reports, and the number of connections each
+     *                report takes.
+     * @param metrics Reports and their transactions are counted here.
+     */
+    public SnapshotReader(String url, int workers, Metrics metrics) {
+        this.workers = Math.max(1, Math.min(workers, 256));
+        this.pool = new ShardPool(url, this.workers, metrics);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reads a report from one snapshot of the database. The result of each partition must be
+     * sorted in the specified order, the merged result is then sorted in the same order.
+     *
+     * @param deadlineMillis The time the report, including waiting for connections, may take.
+     * @param read           Reads the sorted rows of one partition.
+     * @param order          The order of the rows returned by <code>read</code>.
+     * @return The rows of all partitions.
+     * @throws SchoolDBException If any partition could not be read.
+     */
+    public <T> List<T> read(long deadlineMillis, PartitionWork<List<T>> read, Comparator<? super T> order) throws SchoolDBException {
+        metrics.increment("reports.snapshots");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        List<ShardPool.PooledConnection> connections = borrowAll(deadline);
+        try {
+            ShardPool.PooledConnection exporter = connections.get(0);
+            return exporter.execute(IsolationLevel.REPEATABLE_READ, ShardPool.remainingMillis(deadline), db -> {
+                db.beginSnapshot(null);
+                if (workers == 1 || !db.canShareSnapshots()) {
+                    return read.execute(db, 0, 1);
+                }
+                String snapshotId = db.exportSnapshot();
+                List<CompletableFuture<List<T>>> importers = new ArrayList<>();
+                for (int partition = 1; partition < workers; partition++) {
+                    int importedPartition = partition;
+                    ShardPool.PooledConnection importer = connections.get(partition);
+                    importers.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return readImported(importer, snapshotId, importedPartition, deadline, read);
+                        } catch (SchoolDBException sdbe) {
+                            throw new CompletionException(sdbe);
+                        }
+                    }, workerThreads));
+                }
+                List<List<T>> sortedRuns = new ArrayList<>();
+                sortedRuns.add(read.execute(db, 0, workers));
+                try {
+                    for (CompletableFuture<List<T>> importer : importers) {
+                        sortedRuns.add(importer.join());
+                    }
+                } catch (CompletionException ce) {
+                    if (ce.getCause() instanceof SchoolDBException) {
+                        throw (SchoolDBException) ce.getCause();
+                    }
+                    throw new SchoolDBException("Could not read all partitions of the report.", ce.getCause());
+                }
+                return ShardedDatabase.merge(sortedRuns, order);
+            });
+        } finally {
+            for (ShardPool.PooledConnection connection : connections) {
+                pool.release(connection);
+            }
+        }
+    }
+
+    /**
+     * Closes all connections used for reports.
+     */
+    public void close() {
+        workerThreads.shutdownNow();
+        pool.close();
+    }
+
+    /**
+     * Takes one connection for each partition. Only one report at a time takes connections, and
+     * a report that can not get all of them before the deadline returns those it got.
+     *
+     * @param deadline The deadline of the report, in the time of <code>System.nanoTime</code>.
+     */
+    private List<ShardPool.PooledConnection> borrowAll(long deadline) throws SchoolDBException {
+        List<ShardPool.PooledConnection> connections = new ArrayList<>();
+        synchronized (pool) {
+            try {
+                while (connections.size() < workers) {
+                    connections.add(pool.borrow(ShardPool.remainingMillis(deadline)));
+                }
+            } catch (SchoolDBException sdbe) {
+                for (ShardPool.PooledConnection connection : connections) {
+                    pool.release(connection);
+                }
+                throw sdbe;
+            }
+        }
+        return connections;
+    }
+
+    /**
+     * Reads one partition in a transaction that imports the specified snapshot. The exporting
+     * transaction waits for this read, so the snapshot can be imported also when this
+     * transaction is retried.
+     */
+    private <T> T readImported(ShardPool.PooledConnection importer, String snapshotId, int partition, long deadline,
+                               PartitionWork<T> read) throws SchoolDBException {
+        return importer.execute(IsolationLevel.REPEATABLE_READ, ShardPool.remainingMillis(deadline), db -> {
+            db.beginSnapshot(snapshotId);
+            return read.execute(db, partition, workers);
+        });
+    }
+}
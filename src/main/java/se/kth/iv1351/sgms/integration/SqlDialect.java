@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * The parts of <code>SchoolDAO</code> that depend on which database server is used. The DAO is
+ * written for PostgreSQL, other servers translate its statements. The dialect is chosen by the
+ * JDBC url, <code>jdbc:mysql:</code> urls use <code>MySqlDialect</code>, all others
+ * <code>PostgresDialect</code>.
+ */
+interface SqlDialect {
+    /**
+     * @param url The JDBC url of the database.
+     * @return The dialect of the specified database.
+     */
+    static SqlDialect forUrl(String url) {
+        if (url.startsWith(MySqlDialect.URL_PREFIX)) {
+            return new MySqlDialect();
+        }
+        return new PostgresDialect();
+    }
+
+    /**
+     * @return The driver properties of a new connection, in addition to user and password.
+     */
+    Properties connectionProperties();
+
+    /**
+     * @param lockTimeoutMillis The longest time a statement waits for a lock.
+     * @return The statement executed on each new connection to set the lock timeout.
+     */
+    String lockTimeoutSql(long lockTimeoutMillis);
+
+    /**
+     * @param sql A statement of <code>SchoolDAO</code>, written for PostgreSQL.
+     * @return The same statement in this dialect.
+     * @throws SQLException If the statement uses a feature this dialect does not support.
+     */
+    String translate(String sql) throws SQLException;
+
+    /**
+     * @param sql A statement of <code>SchoolDAO</code>, written for PostgreSQL.
+     * @return <code>true</code> if <code>translate</code> can translate the statement.
+     */
+    boolean canTranslate(String sql);
+
+    /**
+     * @return <code>true</code> if a transaction can export its snapshot, so that other
+     *         transactions can read the same snapshot.
+     */
+    boolean canShareSnapshots();
+}
@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes units of work in transactions on a <code>SchoolDAO</code>. A unit of work that fails
+ * because of a serialization failure, a deadlock or a broken connection is rolled back and
+ * executed again, after a randomized exponential backoff, until it succeeds, the maximum number
+ * of attempts is reached or the deadline passes. A broken connection is opened again before the
+ * next attempt. The deadline also applies to every statement executed by the work, a statement
+ * still running when it passes is cancelled. While the <code>CircuitBreaker</code> of the
+ * database is open, work is rejected at once without using the connection.
+ */
+public class TransactionTemplate {
+    private static final String METRIC_PREFIX = "tx.";
+
+    private final SchoolDAO schoolDb;
+    private final Metrics metrics;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long deadlineMillis;
+    private final CircuitBreaker breaker;
+
+    /**
+     * Creates a new instance with the retry settings given by the system properties
+     * <code>sgms.tx.maxAttempts</code> (default 5), <code>sgms.tx.initialBackoffMillis</code>
+     * (default 10), <code>sgms.tx.maxBackoffMillis</code> (default 500) and
+     * <code>sgms.tx.deadlineMillis</code> (default 5000, the default deadline of an operation).
+     *
+     * @param schoolDb The DAO whose connection is used for all transactions.
+     * @param metrics  Commits, retries and aborts are counted here.
+     */
+    public TransactionTemplate(SchoolDAO schoolDb, Metrics metrics) {
+        this(schoolDb, metrics,
+             Integer.getInteger("sgms.tx.maxAttempts", 5),
+             Long.getLong("sgms.tx.initialBackoffMillis", 10),
+             Long.getLong("sgms.tx.maxBackoffMillis", 500),
+             Long.getLong("sgms.tx.deadlineMillis", 5000));
+    }
+
+    /**
+     * Creates a new instance with the specified retry settings.
+     *
+     * @param schoolDb             The DAO whose connection is used for all transactions.
+     * @param metrics              Commits, retries and aborts are counted here.
+     * @param maxAttempts          The maximum number of times a unit of work is executed.
+     * @param initialBackoffMillis The upper bound of the wait before the first retry. The bound
+     *                             is doubled for each following retry.
+     * @param maxBackoffMillis     The upper bound of the wait before any retry.
+     * @param deadlineMillis       The default time an operation, including all retries, may take.
+     */
+    public TransactionTemplate(SchoolDAO schoolDb, Metrics metrics, int maxAttempts,
+                               long initialBackoffMillis, long maxBackoffMillis, long deadlineMillis) {
+        this.schoolDb = schoolDb;
+        this.metrics = metrics;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.deadlineMillis = deadlineMillis;
+        this.breaker = CircuitBreaker.forDatabase(schoolDb.getUrl());
+    }
+
+    /**
+     * Executes the specified work in a transaction with the specified isolation level, and
+     * commits the transaction if the work succeeds. The default deadline is used.
+     *
+     * @param isolation The isolation level of the transaction.
+     * @param work      The work to execute.
+     * @return The result of the work.
+     * @throws SchoolDBException If the work failed permanently, or failed transiently too many
+     *                           times or for too long.
+     */
+    public <T> T execute(IsolationLevel isolation, TransactionalWork<T> work) throws SchoolDBException {
+        return execute(isolation, deadlineMillis, work);
+    }
+
+    /**
+     * Executes the specified work in a transaction with the specified isolation level, and
+     * commits the transaction if the work succeeds.
+     *
+     * @param isolation      The isolation level of the transaction.
+     * @param deadlineMillis The time the work, including all retries, may take.
+     * @param work           The work to execute.
+     * @return The result of the work.
+     * @throws SchoolDBException If the work failed permanently, or failed transiently too many
+     *                           times or for too long, or if the database is unavailable.
+     */
+    public <T> T execute(IsolationLevel isolation, long deadlineMillis, TransactionalWork<T> work) throws SchoolDBException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        schoolDb.setDeadline(deadline);
+        try {
+            return executeWithRetries(isolation, deadline, work);
+        } finally {
+            schoolDb.clearDeadline();
+        }
+    }
+
+    private <T> T executeWithRetries(IsolationLevel isolation, long deadline, TransactionalWork<T> work) throws SchoolDBException {
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.allowRequest()) {
+                metrics.increment("breaker.rejected");
+                throw new SchoolDBException("The database is unavailable, please try again later.");
+            }
+            try {
+                schoolDb.beginTransaction(isolation);
+                T result = work.execute();
+                schoolDb.commit();
+                breaker.recordSuccess();
+                metrics.increment(METRIC_PREFIX + "commits");
+                return result;
+            } catch (SchoolDBException sdbe) {
+                schoolDb.rollbackQuietly();
+                FailureKind failure = FailureKind.of(sdbe);
+                recordResult(failure);
+                metrics.increment(METRIC_PREFIX + "aborts." + failure.name().toLowerCase());
+                long backoffNanos = TimeUnit.MILLISECONDS.toNanos(backoffMillis(attempt));
+                if (!failure.isTransient() || attempt >= maxAttempts
+                    || System.nanoTime() + backoffNanos > deadline) {
+                    metrics.increment(METRIC_PREFIX + "failures");
+                    throw sdbe;
+                }
+                metrics.increment(METRIC_PREFIX + "retries");
+                backOff(backoffNanos);
+                if (failure == FailureKind.CONNECTION_FAILURE) {
+                    reconnect();
+                }
+            } catch (RuntimeException re) {
+                // A bug in the work, not a database failure, so it is not retried.
+                schoolDb.rollbackQuietly();
+                metrics.increment(METRIC_PREFIX + "failures");
+                throw re;
+            }
+        }
+    }
+
+    private void recordResult(FailureKind failure) {
+        if (failure != FailureKind.CONNECTION_FAILURE) {
+            breaker.recordSuccess();
+        } else if (breaker.recordFailure()) {
+            metrics.increment("breaker.opened");
+        }
+    }
+
+    private long backoffMillis(int attempt) {
+        long bound = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    private void backOff(long backoffNanos) throws SchoolDBException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(backoffNanos);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SchoolDBException("Interrupted while waiting to retry transaction.", ie);
+        }
+    }
+
+    private void reconnect() {
+        try {
+            schoolDb.reconnect();
+            metrics.increment(METRIC_PREFIX + "reconnects");
+        } catch (SchoolDBException sdbe) {
+            // The next attempt fails with a connection failure and is retried, if time allows.
+            metrics.increment(METRIC_PREFIX + "reconnect_failures");
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+import se.kth.iv1351.sgms.controller.Controller;
+import se.kth.iv1351.sgms.model.InstrumentDTO;
+
+/**
+ * Simulates many desks using the program at the same time, and reports the response times. Usage:
+ * <pre>
+ * LoadGenerator [--clients &lt;n&gt;] [--rate &lt;operations per second&gt;] [--mix &lt;operation=weight,...&gt;]
+ *               [--warmup &lt;seconds&gt;] [--duration &lt;seconds&gt;] [--students &lt;n&gt;] [--seed &lt;n&gt;]
+ * </pre>
+ * Each client has its own database session, and the clients together are scheduled to start
+ * operations at the specified rate. A client executes one operation at a time, so no more
+ * operations than there are clients execute concurrently. Operations that can not start on
+ * schedule start late, and their response times include the delay. The database should contain
+ * the synthetic students and instruments created by <code>loadtest_data.sql</code>.
+ */
+public class LoadGenerator {
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    public static void main(String[] args) throws Exception {
+        int nofClients = 16;
+        double operationsPerSecond = 100;
+        OperationMix mix = new OperationMix("list=70,rent=20,terminate=10");
+        int warmUpSeconds = 10;
+        int durationSeconds = 60;
+        int nofStudents = 10000;
+        long seed = System.nanoTime();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + option);
+                return;
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--clients":
+                    nofClients = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    operationsPerSecond = Double.parseDouble(value);
+                    break;
+                case "--mix":
+                    mix = new OperationMix(value);
+                    break;
+                case "--warmup":
+                    warmUpSeconds = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    durationSeconds = Integer.parseInt(value);
+                    break;
+                case "--students":
+                    nofStudents = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    usage("Unknown option " + option);
+                    return;
+            }
+        }
+
+        Controller ctrl = new Controller();
+        ctrl.awaitStartup();
+        List<String> rentalInstrumentIds = new ArrayList<>();
+        for (InstrumentDTO instrument : ctrl.getAllInstruments()) {
+            if (instrument.getRentalInstrumentId() != null) {
+                rentalInstrumentIds.add(instrument.getRentalInstrumentId());
+            }
+        }
+        if (rentalInstrumentIds.isEmpty()) {
+            System.out.println("There are no instruments to rent, run loadtest_data.sql first.");
+            ctrl.close();
+            return;
+        }
+        Workload workload = new Workload(nofStudents, rentalInstrumentIds);
+
+        System.out.println(nofClients + " clients, " + operationsPerSecond + " operations/s, mix " + mix +
+                           ", " + warmUpSeconds + " s warm-up, " + durationSeconds + " s measured.");
+        long clientIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) * nofClients / operationsPerSecond);
+        long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureFromNanos = startNanos + TimeUnit.SECONDS.toNanos(warmUpSeconds);
+        long endNanos = measureFromNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<VirtualClient> clients = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < nofClients; i++) {
+            VirtualClient client = new VirtualClient(ctrl.openSession(), workload, mix, seed + i,
+                                                     startNanos + clientIntervalNanos * i / nofClients,
+                                                     clientIntervalNanos, measureFromNanos, endNanos);
+            Thread thread = new Thread(client, "client-" + i);
+            clients.add(client);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (VirtualClient client : clients) {
+            client.getSession().close();
+        }
+        report(clients);
+        ctrl.close();
+    }
+
+    /**
+     * Prints the results of all clients. Throughput is the number of completed operations divided
+     * by the time from the first measured scheduled start to the last measured completion, so it
+     * falls below the offered rate when the system can not keep up.
+     */
+    private static void report(List<VirtualClient> clients) {
+        long firstStartNanos = Long.MAX_VALUE;
+        long lastEndNanos = Long.MIN_VALUE;
+        for (VirtualClient client : clients) {
+            firstStartNanos = Math.min(firstStartNanos, client.getFirstMeasuredStartNanos());
+            lastEndNanos = Math.max(lastEndNanos, client.getLastMeasuredEndNanos());
+        }
+        double measuredSeconds = (double) (lastEndNanos - firstStartNanos) / TimeUnit.SECONDS.toNanos(1);
+        Histogram all = new Histogram(TimeUnit.HOURS.toMicros(1), 3);
+        long allFailed = 0;
+        long allRejected = 0;
+        System.out.println(String.format("%-10s %8s %8s %7s %7s %9s %9s %9s %9s %9s",
+                                         "operation", "count", "ops/s", "failed", "reject", "p50 ms", "p90 ms",
+                                         "p99 ms", "p99.9 ms", "max ms"));
+        for (LoadOperation operation : LoadOperation.values()) {
+            Histogram responseTimes = new Histogram(TimeUnit.HOURS.toMicros(1), 3);
+            long nofFailed = 0;
+            long nofRejected = 0;
+            for (VirtualClient client : clients) {
+                responseTimes.add(client.getResponseTimes(operation));
+                nofFailed += client.getNofFailed(operation);
+                nofRejected += client.getNofRejected(operation);
+            }
+            if (responseTimes.getTotalCount() == 0) {
+                continue;
+            }
+            printRow(operation.toString().toLowerCase(), responseTimes, nofFailed, nofRejected, measuredSeconds);
+            all.add(responseTimes);
+            allFailed += nofFailed;
+            allRejected += nofRejected;
+        }
+        if (all.getTotalCount() == 0) {
+            System.out.println("No operation was measured.");
+            return;
+        }
+        printRow("all", all, allFailed, allRejected, measuredSeconds);
+        System.out.println(String.format("Error rate %.2f%%, rejection rate %.2f%%.",
+                                         100.0 * allFailed / all.getTotalCount(), 100.0 * allRejected / all.getTotalCount()));
+        System.out.println();
+        System.out.println("Response time distribution of all operations, in milliseconds:");
+        all.outputPercentileDistribution(System.out, MICROS_PER_MILLI);
+    }
+
+    private static void printRow(String name, Histogram responseTimes, long nofFailed, long nofRejected, double measuredSeconds) {
+        System.out.println(String.format("%-10s %8d %8.1f %7d %7d %9.2f %9.2f %9.2f %9.2f %9.2f",
+                                         name, responseTimes.getTotalCount(),
+                                         responseTimes.getTotalCount() / measuredSeconds, nofFailed, nofRejected,
+                                         responseTimes.getValueAtPercentile(50) / MICROS_PER_MILLI,
+                                         responseTimes.getValueAtPercentile(90) / MICROS_PER_MILLI,
+                                         responseTimes.getValueAtPercentile(99) / MICROS_PER_MILLI,
+                                         responseTimes.getValueAtPercentile(99.9) / MICROS_PER_MILLI,
+                                         responseTimes.getMaxValue() / MICROS_PER_MILLI));
+    }
+
+    private static void usage(String problem) {
+        System.out.println(problem);
+        System.out.println("Usage: LoadGenerator [--clients <n>] [--rate <operations per second>] [--mix <operation=weight,...>]"
+                           + " [--warmup <seconds>] [--duration <seconds>] [--students <n>] [--seed <n>]");
+    }
+}
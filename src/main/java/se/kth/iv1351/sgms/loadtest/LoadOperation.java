@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.loadtest;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import se.kth.iv1351.sgms.controller.Controller;
+
+/**
+ * The operations a virtual client can perform, each one corresponds to a command of the
+ * interactive program.
+ */
+enum LoadOperation {
+    LIST {
+        @Override
+        void execute(Controller ctrl, Workload workload, Random random) throws Exception {
+            ctrl.getAllInstruments();
+        }
+    },
+    AGREEMENTS {
+        @Override
+        void execute(Controller ctrl, Workload workload, Random random) throws Exception {
+            ctrl.listActiveAgreements();
+        }
+    },
+    RENT {
+        @Override
+        void execute(Controller ctrl, Workload workload, Random random) throws Exception {
+            ctrl.rent(workload.randomStudent(random), workload.randomInstrument(random));
+        }
+    },
+    TERMINATE {
+        @Override
+        void execute(Controller ctrl, Workload workload, Random random) throws Exception {
+            String rentalAgreementId = workload.nextAgreementToTerminate(ctrl);
+            if (rentalAgreementId != null) {
+                ctrl.terminate(rentalAgreementId);
+            }
+        }
+    },
+    STATS {
+        @Override
+        void execute(Controller ctrl, Workload workload, Random random) throws Exception {
+            LocalDate today = LocalDate.now();
+            ctrl.getRentalStatistics(today.minusYears(1).plusDays(1), today);
+        }
+    };
+
+    /**
+     * Performs this operation once.
+     *
+     * @param ctrl     The session of the virtual client performing the operation.
+     * @param workload Provides students, instruments and rental agreements.
+     * @param random   The random numbers of the virtual client, used to pick students and
+     *                 instruments.
+     */
+    abstract void execute(Controller ctrl, Workload workload, Random random) throws Exception;
+}
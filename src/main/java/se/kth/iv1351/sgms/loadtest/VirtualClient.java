@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.loadtest;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+
+import se.kth.iv1351.sgms.controller.Controller;
+import se.kth.iv1351.sgms.model.RejectedException;
+
+/**
+ * One simulated desk. Operations are scheduled to start at a fixed interval, and are executed one
+ * at a time. If an operation takes longer than the interval, the following operations start
+ * late, and the response time is measured from when the operation should have started. That way,
+ * a slow system is not measured with fewer and more favourable samples, which would happen if
+ * each operation was started when the previous one finished.
+ */
+class VirtualClient implements Runnable {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Controller session;
+    private final Workload workload;
+    private final OperationMix mix;
+    private final Random random;
+    private final long firstStartNanos;
+    private final long intervalNanos;
+    private final long measureFromNanos;
+    private final long endNanos;
+    private final Histogram[] responseTimes = new Histogram[LoadOperation.values().length];
+    private final long[] nofRejected = new long[LoadOperation.values().length];
+    private final long[] nofFailed = new long[LoadOperation.values().length];
+    private long firstMeasuredStartNanos = Long.MAX_VALUE;
+    private long lastMeasuredEndNanos = Long.MIN_VALUE;
+
+    /**
+     * @param session          The session used for all operations of this client.
+     * @param firstStartNanos  When the first operation shall start, as a <code>System.nanoTime()</code> value.
+     * @param intervalNanos    The time between the intended starts of two consecutive operations.
+     * @param measureFromNanos Operations that should start before this time are warm-up, and not measured.
+     * @param endNanos         No operation is started after this time.
+     */
+    VirtualClient(Controller session, Workload workload, OperationMix mix, long seed,
+                  long firstStartNanos, long intervalNanos, long measureFromNanos, long endNanos) {
+        this.session = session;
+        this.workload = workload;
+        this.mix = mix;
+        this.random = new Random(seed);
+        this.firstStartNanos = firstStartNanos;
+        this.intervalNanos = intervalNanos;
+        this.measureFromNanos = measureFromNanos;
+        this.endNanos = endNanos;
+        for (int i = 0; i < responseTimes.length; i++) {
+            responseTimes[i] = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+        }
+    }
+
+    @Override
+    public void run() {
+        for (long intendedStart = firstStartNanos; intendedStart < endNanos; intendedStart += intervalNanos) {
+            waitUntil(intendedStart);
+            LoadOperation operation = mix.next(random);
+            boolean rejected = false;
+            boolean failed = false;
+            try {
+                operation.execute(session, workload, random);
+            } catch (RejectedException re) {
+                rejected = true;
+            } catch (Exception e) {
+                failed = true;
+            }
+            long completedNanos = System.nanoTime();
+            long responseMicros = TimeUnit.NANOSECONDS.toMicros(completedNanos - intendedStart);
+            if (intendedStart < measureFromNanos) {
+                continue;
+            }
+            firstMeasuredStartNanos = Math.min(firstMeasuredStartNanos, intendedStart);
+            lastMeasuredEndNanos = completedNanos;
+            responseTimes[operation.ordinal()].recordValue(Math.min(responseMicros, HIGHEST_TRACKABLE_MICROS));
+            if (rejected) {
+                nofRejected[operation.ordinal()]++;
+            }
+            if (failed) {
+                nofFailed[operation.ordinal()]++;
+            }
+        }
+    }
+
+    /**
+     * @return The response times of the specified operation, in microseconds. Must not be called
+     *         before this client has finished.
+     */
+    Histogram getResponseTimes(LoadOperation operation) {
+        return responseTimes[operation.ordinal()];
+    }
+
+    long getNofRejected(LoadOperation operation) {
+        return nofRejected[operation.ordinal()];
+    }
+
+    long getNofFailed(LoadOperation operation) {
+        return nofFailed[operation.ordinal()];
+    }
+
+    /**
+     * @return The intended start of the first measured operation, <code>Long.MAX_VALUE</code>
+     *         if no operation was measured.
+     */
+    long getFirstMeasuredStartNanos() {
+        return firstMeasuredStartNanos;
+    }
+
+    /**
+     * @return When the last measured operation completed, <code>Long.MIN_VALUE</code> if no
+     *         operation was measured.
+     */
+    long getLastMeasuredEndNanos() {
+        return lastMeasuredEndNanos;
+    }
+
+    Controller getSession() {
+        return session;
+    }
+
+    private void waitUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.loadtest;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import se.kth.iv1351.sgms.controller.Controller;
+import se.kth.iv1351.sgms.model.RentalAgreementDTO;
+
+/**
+ * The data the virtual clients operate on. Students are the synthetic students created by
+ * <code>loadtest_data.sql</code>, which have the personal numbers
+ * <code>FIRST_PERSONAL_NUMBER</code> and up. Students and instruments are picked with the random
+ * numbers of the calling client, so that a run with the same seed rents the same instruments to
+ * the same students.
+ */
+class Workload {
+    static final long FIRST_PERSONAL_NUMBER = 900000000000L;
+
+    private final int nofStudents;
+    private final List<String> rentalInstrumentIds;
+    private final Queue<String> agreementsToTerminate = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param nofStudents         The number of synthetic students.
+     * @param rentalInstrumentIds The instruments that are rented.
+     */
+    Workload(int nofStudents, List<String> rentalInstrumentIds) {
+        this.nofStudents = nofStudents;
+        this.rentalInstrumentIds = rentalInstrumentIds;
+    }
+
+    String randomStudent(Random random) {
+        return String.valueOf(FIRST_PERSONAL_NUMBER + random.nextInt(nofStudents));
+    }
+
+    String randomInstrument(Random random) {
+        return rentalInstrumentIds.get(random.nextInt(rentalInstrumentIds.size()));
+    }
+
+    /**
+     * Returns an active rental agreement that no other virtual client will terminate. When all
+     * known agreements are taken, the active agreements are listed again.
+     *
+     * @param ctrl Used to list the active agreements.
+     * @return The id of the agreement, or <code>null</code> if there are no active agreements.
+     */
+    String nextAgreementToTerminate(Controller ctrl) throws Exception {
+        String rentalAgreementId = agreementsToTerminate.poll();
+        if (rentalAgreementId != null) {
+            return rentalAgreementId;
+        }
+        synchronized (agreementsToTerminate) {
+            if (agreementsToTerminate.isEmpty()) {
+                for (RentalAgreementDTO agreement : ctrl.listActiveAgreements()) {
+                    agreementsToTerminate.add(agreement.getRentalAgreementId());
+                }
+            }
+        }
+        return agreementsToTerminate.poll();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+/**
+ * The health of the database of one branch, as seen by this client.
+ */
+public class DatabaseHealth implements DatabaseHealthDTO {
+    private String branch;
+    private String breakerState;
+    private int connections;
+    private boolean reachable;
+    private String status;
+    private long latencyMillis;
+
+    /**
+     * @param branch        The branch whose database was checked.
+     * @param breakerState  The state of the circuit breaker of the database.
+     * @param connections   The number of connections this client has open to the database.
+     * @param reachable     <code>true</code> if the check reached the database.
+     * @param status        Whether the server is the primary or a standby and its address, or why
+     *                      the database could not be reached.
+     * @param latencyMillis The time the check took.
+     */
+    public DatabaseHealth(String branch, String breakerState, int connections, boolean reachable, String status,
+                          long latencyMillis) {
+        this.branch = branch;
+        this.breakerState = breakerState;
+        this.connections = connections;
+        this.reachable = reachable;
+        this.status = status;
+        this.latencyMillis = latencyMillis;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    public String getBreakerState() {
+        return breakerState;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "[branch: " + branch +
+                ", breaker: " + breakerState +
+                ", connections: " + connections +
+                ", reachable: " + reachable +
+                ", status: " + status +
+                ", latency: " + latencyMillis +
+                ']';
+    }
+}
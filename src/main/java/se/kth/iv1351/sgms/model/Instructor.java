@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An instructor, as needed to find the instructor's lessons and the instructors teaching an
+ * instrument.
+ */
+public class Instructor implements InstructorDTO {
+    private String instructorId;
+    private String personalNumber;
+    private String name;
+    private Set<String> instruments;
+
+    /**
+     * @param instruments The instrument types the instructor teaches.
+     */
+    public Instructor(String instructorId, String personalNumber, String name, Set<String> instruments) {
+        this.instructorId = instructorId;
+        this.personalNumber = personalNumber;
+        this.name = name;
+        this.instruments = new TreeSet<>(instruments);
+    }
+
+    public String getInstructorId() {
+        return instructorId;
+    }
+
+    public String getPersonalNumber() {
+        return personalNumber;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The instrument types the instructor teaches, separated by comma.
+     */
+    public String getInstruments() {
+        return String.join(", ", instruments);
+    }
+
+    Set<String> getInstrumentSet() {
+        return instruments;
+    }
+
+    @Override
+    public String toString() {
+        return "[instructor: " + name +
+                ", pn: " + personalNumber +
+                ", instruments: " + instruments +
+                ']';
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bitmaps over instructors, used to find the instructors that teach an instrument and are free
+ * during a period. Each instructor is given an ordinal, the position of the instructor's bit in
+ * all bitmaps. There is one bitmap for each instrument type, with the bits of the instructors
+ * teaching it, and one bitmap for each time slot in which any instructor gives a lesson, with the
+ * bits of the busy instructors. Time is divided in slots of equal length, a lesson makes its
+ * instructor busy in every slot it overlaps. A search takes the bitmap of the instrument and
+ * removes the bitmaps of the slots overlapping the period, so the time it takes depends on the
+ * length of the period and the number of instructors, not on the number of lessons.
+ * <p>
+ * Ordinals of removed instructors are reused. All methods are thread safe.
+ */
+class InstructorMatchIndex {
+    private static final long SECONDS_PER_MINUTE = 60;
+
+    private final long slotMinutes;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<Instructor> instructorsByOrdinal = new ArrayList<>();
+    private final BitSet unusedOrdinals = new BitSet();
+    private final Map<String, BitSet> instructorsByInstrument = new HashMap<>();
+    private final Map<Long, BitSet> busyInstructorsBySlot = new HashMap<>();
+    private final Map<String, long[]> busySlotsByInstructor = new HashMap<>();
+
+    /**
+     * @param slotMinutes The length of a time slot.
+     */
+    InstructorMatchIndex(long slotMinutes) {
+        this.slotMinutes = slotMinutes;
+    }
+
+    /**
+     * Adds an instructor, or replaces the instruments of an instructor that is already indexed.
+     */
+    synchronized void putInstructor(Instructor instructor) {
+        int ordinal = ordinal(instructor.getInstructorId());
+        Instructor previous = instructorsByOrdinal.set(ordinal, instructor);
+        if (previous != null) {
+            for (String instrument : previous.getInstrumentSet()) {
+                clearBit(instructorsByInstrument, instrument, ordinal);
+            }
+        }
+        for (String instrument : instructor.getInstrumentSet()) {
+            instructorsByInstrument.computeIfAbsent(instrument, key -> new BitSet()).set(ordinal);
+        }
+    }
+
+    /**
+     * Removes an instructor and all the instructor's lessons.
+     */
+    synchronized void removeInstructor(String instructorId) {
+        Integer ordinal = ordinals.remove(instructorId);
+        if (ordinal == null) {
+            return;
+        }
+        Instructor removed = instructorsByOrdinal.set(ordinal, null);
+        if (removed != null) {
+            for (String instrument : removed.getInstrumentSet()) {
+                clearBit(instructorsByInstrument, instrument, ordinal);
+            }
+        }
+        clearBusySlots(instructorId, ordinal);
+        unusedOrdinals.set(ordinal);
+    }
+
+    /**
+     * Replaces all lessons of an instructor. The lessons of an instructor that has not been added
+     * with <code>putInstructor</code> are ignored, so that no ordinal is taken by an instructor
+     * that can never be found.
+     *
+     * @param lessons The lessons the instructor gives, sorted by start. May be empty.
+     */
+    synchronized void setLessons(String instructorId, LessonSlot[] lessons, long lessonMinutes) {
+        Integer ordinal = ordinals.get(instructorId);
+        if (ordinal == null) {
+            return;
+        }
+        clearBusySlots(instructorId, ordinal);
+        List<Long> busySlots = new ArrayList<>();
+        long lastBusySlot = Long.MIN_VALUE;
+        for (LessonSlot lesson : lessons) {
+            long start = epochMinute(lesson.getStart());
+            long firstSlot = Math.max(Math.floorDiv(start, slotMinutes), lastBusySlot + 1);
+            lastBusySlot = Math.max(lastBusySlot, Math.floorDiv(start + lessonMinutes - 1, slotMinutes));
+            for (long slot = firstSlot; slot <= lastBusySlot; slot++) {
+                busySlots.add(slot);
+                busyInstructorsBySlot.computeIfAbsent(slot, key -> new BitSet()).set(ordinal);
+            }
+        }
+        if (!busySlots.isEmpty()) {
+            busySlotsByInstructor.put(instructorId, busySlots.stream().mapToLong(Long::longValue).toArray());
+        }
+    }
+
+    /**
+     * Finds the instructors that teach the specified instrument type and give no lesson during
+     * the specified period. The period is widened to whole slots, an instructor with a lesson in
+     * a slot the period starts or ends in is not free.
+     *
+     * @param instrument The instrument type.
+     * @param from       The start of the period.
+     * @param to         The end of the period, exclusive.
+     * @return The free instructors, in no particular order.
+     */
+    synchronized List<Instructor> findFree(String instrument, LocalDateTime from, LocalDateTime to) {
+        List<Instructor> free = new ArrayList<>();
+        BitSet teaching = instructorsByInstrument.get(instrument);
+        if (teaching == null) {
+            return free;
+        }
+        BitSet candidates = (BitSet) teaching.clone();
+        long firstSlot = Math.floorDiv(epochMinute(from), slotMinutes);
+        long lastSlot = Math.floorDiv(epochMinute(to) - 1, slotMinutes);
+        for (long slot = firstSlot; slot <= lastSlot && !candidates.isEmpty(); slot++) {
+            BitSet busy = busyInstructorsBySlot.get(slot);
+            if (busy != null) {
+                candidates.andNot(busy);
+            }
+        }
+        for (int ordinal = candidates.nextSetBit(0); ordinal >= 0; ordinal = candidates.nextSetBit(ordinal + 1)) {
+            free.add(instructorsByOrdinal.get(ordinal));
+        }
+        return free;
+    }
+
+    private int ordinal(String instructorId) {
+        Integer ordinal = ordinals.get(instructorId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        int newOrdinal = unusedOrdinals.nextSetBit(0);
+        if (newOrdinal < 0) {
+            newOrdinal = instructorsByOrdinal.size();
+            instructorsByOrdinal.add(null);
+        } else {
+            unusedOrdinals.clear(newOrdinal);
+        }
+        ordinals.put(instructorId, newOrdinal);
+        return newOrdinal;
+    }
+
+    private void clearBusySlots(String instructorId, int ordinal) {
+        long[] busySlots = busySlotsByInstructor.remove(instructorId);
+        if (busySlots == null) {
+            return;
+        }
+        for (long slot : busySlots) {
+            clearBit(busyInstructorsBySlot, slot, ordinal);
+        }
+    }
+
+    private static <K> void clearBit(Map<K, BitSet> bitmaps, K key, int ordinal) {
+        BitSet bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            bitmap.clear(ordinal);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    private static long epochMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / SECONDS_PER_MINUTE;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The lessons of all instructors, indexed to find out in microseconds whether an instructor is
+ * free at a certain time and which lessons overlap. Every lesson is assumed to take the same time.
+ * The lessons of each instructor are kept in primitive arrays sorted by start, together with the
+ * latest end of all lessons up to each position. A lesson overlapping a period is then found by a
+ * binary search for the last lesson starting before the end of the period, followed by a scan
+ * backwards that stops as soon as no earlier lesson ends after the start of the period.
+ * <p>
+ * The schedule is filled from the database when it is created, and is then kept up to date with
+ * <code>apply</code>, which replaces changed lessons and instructors. The arrays of an instructor
+ * are rebuilt when one of the instructor's lessons changes, and are never modified after they are
+ * built, so queries do not wait for updates. Instructors teaching an instrument that are free
+ * during a period are found with bitmaps, see <code>InstructorMatchIndex</code>, which are
+ * updated by <code>apply</code> together with the arrays. All methods are thread safe.
+ */
+public class InstructorSchedule {
+    private static final long SECONDS_PER_MINUTE = 60;
+
+    private final long lessonMinutes;
+    private final InstructorMatchIndex matchIndex;
+    private final Map<String, Instructor> instructorsById = new ConcurrentHashMap<>();
+    private final Map<String, String> instructorIdsByPersonalNumber = new ConcurrentHashMap<>();
+    private final Map<String, LessonSlot> lessonsById = new HashMap<>();
+    private final Map<String, Set<String>> lessonIdsByInstructor = new HashMap<>();
+    private final Map<String, InstructorSlots> slotsByInstructor = new ConcurrentHashMap<>();
+    private volatile long snapshotXmin;
+    private volatile long refreshedAtNanos;
+
+    /**
+     * The lessons of one instructor, sorted by start.
+     */
+    private static class InstructorSlots {
+        private final LessonSlot[] lessons;
+        private final long[] starts;
+        private final long[] latestEnds;
+
+        private InstructorSlots(LessonSlot[] lessons, long lessonMinutes) {
+            this.lessons = lessons;
+            starts = new long[lessons.length];
+            latestEnds = new long[lessons.length];
+            long latestEnd = Long.MIN_VALUE;
+            for (int i = 0; i < lessons.length; i++) {
+                starts[i] = epochMinute(lessons[i].getStart());
+                latestEnd = Math.max(latestEnd, starts[i] + lessonMinutes);
+                latestEnds[i] = latestEnd;
+            }
+        }
+
+        /**
+         * @return The position after the last lesson starting before the specified minute.
+         */
+        private int startingBefore(long minute) {
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (starts[middle] < minute) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Creates a schedule with the specified instructors and lessons.
+     *
+     * @param instructors  All instructors.
+     * @param lessons      All lessons.
+     * @param snapshotXmin The oldest transaction that was not finished when the instructors and
+     *                     lessons were read, see <code>getSnapshotXmin</code>.
+     * @param lessonLength The time a lesson takes.
+     * @param slotLength   The length of the time slots used to find free instructors.
+     */
+    public InstructorSchedule(List<Instructor> instructors, List<LessonSlot> lessons, long snapshotXmin,
+                              Duration lessonLength, Duration slotLength) {
+        this.lessonMinutes = lessonLength.toMinutes();
+        this.matchIndex = new InstructorMatchIndex(slotLength.toMinutes());
+        apply(instructors, List.of(), lessons, List.of(), snapshotXmin);
+    }
+
+    /**
+     * @return The oldest transaction that was not finished when the schedule was last read from
+     *         the database. All changes made by earlier transactions are included in the schedule.
+     */
+    public long getSnapshotXmin() {
+        return snapshotXmin;
+    }
+
+    /**
+     * @return <code>true</code> if the schedule was read from the database more than the
+     *         specified time ago.
+     */
+    public boolean isOlderThan(Duration age) {
+        return System.nanoTime() - refreshedAtNanos > age.toNanos();
+    }
+
+    /**
+     * Replaces changed instructors and lessons. Applying the same change twice has no effect.
+     *
+     * @param instructors          The current state of the changed instructors.
+     * @param changedInstructorIds The ids of all changed instructors. Instructors that are not in
+     *                             <code>instructors</code> are removed.
+     * @param lessons              The current state of the changed lessons.
+     * @param changedLessonIds     The ids of all changed lessons. Lessons that are not in
+     *                             <code>lessons</code> are removed.
+     * @param snapshotXmin         The oldest transaction that was not finished when the changes
+     *                             were read.
+     */
+    public synchronized void apply(List<Instructor> instructors, Collection<String> changedInstructorIds,
+                                   List<LessonSlot> lessons, Collection<String> changedLessonIds, long snapshotXmin) {
+        Set<String> changedInstructors = new HashSet<>();
+        Set<String> removedInstructors = new HashSet<>(changedInstructorIds);
+        for (String instructorId : changedInstructorIds) {
+            Instructor removed = instructorsById.remove(instructorId);
+            if (removed != null) {
+                instructorIdsByPersonalNumber.remove(removed.getPersonalNumber());
+            }
+        }
+        for (Instructor instructor : instructors) {
+            instructorsById.put(instructor.getInstructorId(), instructor);
+            instructorIdsByPersonalNumber.put(instructor.getPersonalNumber(), instructor.getInstructorId());
+            matchIndex.putInstructor(instructor);
+            removedInstructors.remove(instructor.getInstructorId());
+            // The lessons of an instructor read after them are indexed now.
+            changedInstructors.add(instructor.getInstructorId());
+        }
+        for (String instructorId : removedInstructors) {
+            matchIndex.removeInstructor(instructorId);
+        }
+
+        for (String lessonId : changedLessonIds) {
+            LessonSlot removed = lessonsById.remove(lessonId);
+            if (removed != null) {
+                lessonIdsByInstructor.get(removed.getInstructorId()).remove(lessonId);
+                changedInstructors.add(removed.getInstructorId());
+            }
+        }
+        for (LessonSlot lesson : lessons) {
+            LessonSlot replaced = lessonsById.put(lesson.getLessonId(), lesson);
+            if (replaced != null) {
+                lessonIdsByInstructor.get(replaced.getInstructorId()).remove(lesson.getLessonId());
+                changedInstructors.add(replaced.getInstructorId());
+            }
+            lessonIdsByInstructor.computeIfAbsent(lesson.getInstructorId(), id -> new HashSet<>()).add(lesson.getLessonId());
+            changedInstructors.add(lesson.getInstructorId());
+        }
+        for (String instructorId : changedInstructors) {
+            rebuildSlots(instructorId);
+        }
+        this.snapshotXmin = snapshotXmin;
+        refreshedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the schedule as read from the database, without any changes.
+     *
+     * @param snapshotXmin The oldest transaction that was not finished when the database was read.
+     */
+    public synchronized void refreshed(long snapshotXmin) {
+        this.snapshotXmin = snapshotXmin;
+        refreshedAtNanos = System.nanoTime();
+    }
+
+    /**
+     * @return The instructor with the specified personal number, or <code>null</code> if there
+     *         is no such instructor.
+     */
+    public Instructor findInstructorByPersonalNumber(String personalNumber) {
+        String instructorId = instructorIdsByPersonalNumber.get(personalNumber);
+        return instructorId == null ? null : instructorsById.get(instructorId);
+    }
+
+    /**
+     * Finds a lesson the specified instructor gives during a lesson starting at the specified time.
+     *
+     * @return A lesson overlapping a lesson starting at <code>start</code>, or <code>null</code>
+     *         if the instructor is free.
+     */
+    public LessonSlot findLessonDuring(String instructorId, LocalDateTime start) {
+        InstructorSlots slots = slotsByInstructor.get(instructorId);
+        if (slots == null) {
+            return null;
+        }
+        long from = epochMinute(start);
+        long to = from + lessonMinutes;
+        for (int i = slots.startingBefore(to) - 1; i >= 0 && slots.latestEnds[i] > from; i--) {
+            if (slots.starts[i] + lessonMinutes > from) {
+                return slots.lessons[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds all pairs of overlapping lessons given by the same instructor, where the later lesson
+     * starts in the specified period.
+     *
+     * @param from The start of the period.
+     * @param to   The end of the period, exclusive.
+     * @return The conflicts, ordered by instructor name and start of the later lesson.
+     */
+    public List<ScheduleConflict> findConflicts(LocalDateTime from, LocalDateTime to) {
+        long fromMinute = epochMinute(from);
+        long toMinute = epochMinute(to);
+        List<ScheduleConflict> conflicts = new ArrayList<>();
+        List<Instructor> instructors = new ArrayList<>(instructorsById.values());
+        instructors.sort(Comparator.comparing(Instructor::getName).thenComparing(Instructor::getPersonalNumber));
+        for (Instructor instructor : instructors) {
+            InstructorSlots slots = slotsByInstructor.get(instructor.getInstructorId());
+            if (slots == null) {
+                continue;
+            }
+            int end = slots.startingBefore(toMinute);
+            for (int later = slots.startingBefore(fromMinute); later < end; later++) {
+                long laterStart = slots.starts[later];
+                for (int earlier = later - 1; earlier >= 0 && slots.latestEnds[earlier] > laterStart; earlier--) {
+                    if (slots.starts[earlier] + lessonMinutes > laterStart) {
+                        conflicts.add(new ScheduleConflict(instructor, slots.lessons[earlier], slots.lessons[later]));
+                    }
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * Finds the instructors that teach the specified instrument type and give no lesson during
+     * the specified period, see <code>InstructorMatchIndex.findFree</code>.
+     *
+     * @param from The start of the period.
+     * @param to   The end of the period, exclusive.
+     * @return The free instructors, ordered by name.
+     */
+    public List<Instructor> findFreeInstructors(String instrument, LocalDateTime from, LocalDateTime to) {
+        List<Instructor> free = matchIndex.findFree(instrument, from, to);
+        free.sort(Comparator.comparing(Instructor::getName).thenComparing(Instructor::getPersonalNumber));
+        return free;
+    }
+
+    private void rebuildSlots(String instructorId) {
+        Set<String> lessonIds = lessonIdsByInstructor.get(instructorId);
+        if (lessonIds == null || lessonIds.isEmpty()) {
+            lessonIdsByInstructor.remove(instructorId);
+            slotsByInstructor.remove(instructorId);
+            matchIndex.setLessons(instructorId, new LessonSlot[0], lessonMinutes);
+            return;
+        }
+        LessonSlot[] lessons = new LessonSlot[lessonIds.size()];
+        int i = 0;
+        for (String lessonId : lessonIds) {
+            lessons[i++] = lessonsById.get(lessonId);
+        }
+        Arrays.sort(lessons, Comparator.comparing(LessonSlot::getStart).thenComparing(LessonSlot::getLessonId));
+        slotsByInstructor.put(instructorId, new InstructorSlots(lessons, lessonMinutes));
+        matchIndex.setLessons(instructorId, lessons, lessonMinutes);
+    }
+
+    private static long epochMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / SECONDS_PER_MINUTE;
+    }
+}
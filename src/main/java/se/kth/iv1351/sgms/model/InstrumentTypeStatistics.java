@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+/**
+ * The rental statistics of one instrument type during a period.
+ */
+public class InstrumentTypeStatistics implements InstrumentTypeStatisticsDTO {
+    private final String instrument;
+    private final int nofInstruments;
+    private final long nofRentals;
+    private final double utilization;
+    private final long revenue;
+    private final double averageRentalDays;
+
+    /**
+     * @param instrument        The instrument type.
+     * @param nofInstruments    The number of rental instruments of the type.
+     * @param nofRentals        The number of rentals that started during the period.
+     * @param utilization       The share of all instrument days during the period that an
+     *                          instrument was rented, between 0 and 1.
+     * @param revenue           The sum of monthly fees for all months of the period an instrument
+     *                          was rented.
+     * @param averageRentalDays The average length of rentals that ended during the period.
+     */
+    public InstrumentTypeStatistics(String instrument, int nofInstruments, long nofRentals, double utilization, long revenue, double averageRentalDays) {
+        this.instrument = instrument;
+        this.nofInstruments = nofInstruments;
+        this.nofRentals = nofRentals;
+        this.utilization = utilization;
+        this.revenue = revenue;
+        this.averageRentalDays = averageRentalDays;
+    }
+
+    public String getInstrument() {
+        return instrument;
+    }
+
+    public int getNofInstruments() {
+        return nofInstruments;
+    }
+
+    public long getNofRentals() {
+        return nofRentals;
+    }
+
+    public double getUtilization() {
+        return utilization;
+    }
+
+    public long getRevenue() {
+        return revenue;
+    }
+
+    public double getAverageRentalDays() {
+        return averageRentalDays;
+    }
+
+    @Override
+    public String toString() {
+        return "[instrument: " + instrument +
+                ", instruments: " + nofInstruments +
+                ", rentals: " + nofRentals +
+                ", utilization: " + String.format("%.1f%%", utilization * 100) +
+                ", revenue: " + revenue +
+                ", average days: " + String.format("%.1f", averageRentalDays) +
+                ']';
+    }
+}
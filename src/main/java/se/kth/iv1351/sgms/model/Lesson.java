@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+/**
+ * A group lesson or an ensemble which still has seats left to book.
+ */
+public class Lesson implements LessonDTO {
+    private String lessonId;
+    private String type;
+    private String instrument;
+    private String level;
+    private String date;
+    private String time;
+    private int openSeats;
+
+    public Lesson(String lessonId, String type, String instrument, String level, String date, String time, int openSeats) {
+        this.lessonId = lessonId;
+        this.type = type;
+        this.instrument = instrument;
+        this.level = level;
+        this.date = date;
+        this.time = time;
+        this.openSeats = openSeats;
+    }
+
+    public String getLessonId() {
+        return lessonId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getInstrument() {
+        return instrument;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    public int getOpenSeats() {
+        return openSeats;
+    }
+
+    @Override
+    public String toString() {
+        return "[lesson_id: " + lessonId +
+                ", type: " + type +
+                ", instrument: " + instrument +
+                ", level: " + level +
+                ", when: " + date + " " + time +
+                ", open seats: " + openSeats +
+                ']';
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * The time of an individual lesson, a group lesson or an ensemble, and the instructor who gives it.
+ */
+public class LessonSlot {
+    private String lessonId;
+    private String type;
+    private String instructorId;
+    private LocalDateTime start;
+
+    /**
+     * @param type <code>individual lesson</code>, <code>group lesson</code> or <code>ensemble</code>.
+     */
+    public LessonSlot(String lessonId, String type, String instructorId, LocalDateTime start) {
+        this.lessonId = lessonId;
+        this.type = type;
+        this.instructorId = instructorId;
+        this.start = start;
+    }
+
+    public String getLessonId() {
+        return lessonId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getInstructorId() {
+        return instructorId;
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + type + ": " + lessonId +
+                ", start: " + start +
+                ']';
+    }
+}
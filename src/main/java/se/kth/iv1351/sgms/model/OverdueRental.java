@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+/**
+ * A reminder about a rental that is kept longer than the rental term.
+ */
+public class OverdueRental implements OverdueRentalDTO {
+    private String rentalAgreementId;
+    private String name;
+    private String personalNumber;
+    private String instrument;
+    private String brand;
+    private String dateRented;
+    private String overdueSince;
+
+    public OverdueRental(String rentalAgreementId, String name, String personalNumber, String instrument, String brand,
+                         String dateRented, String overdueSince) {
+        this.rentalAgreementId = rentalAgreementId;
+        this.name = name;
+        this.personalNumber = personalNumber;
+        this.instrument = instrument;
+        this.brand = brand;
+        this.dateRented = dateRented;
+        this.overdueSince = overdueSince;
+    }
+
+    public String getRentalAgreementId() {
+        return rentalAgreementId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPersonalNumber() {
+        return personalNumber;
+    }
+
+    public String getInstrument() {
+        return instrument;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public String getDateRented() {
+        return dateRented;
+    }
+
+    public String getOverdueSince() {
+        return overdueSince;
+    }
+
+    @Override
+    public String toString() {
+        return "[rental_id: " + rentalAgreementId +
+                ", student: " + name +
+                ", pn: " + personalNumber +
+                ", instrument: " + instrument +
+                " " + brand +
+                ", since: " + dateRented +
+                ", overdue since: " + overdueSince +
+                ']';
+    }
+}
@@ -24,7 +24,8 @@
 package se.kth.iv1351.sgms.model;
 
 /**
- * Thrown when deposit or withdrawal fails.
+ * Thrown when an operation is refused without being attempted, for example because too many
+ * operations are already executing.
  */
 public class RejectedException extends Exception {
 
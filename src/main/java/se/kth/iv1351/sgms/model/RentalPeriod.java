@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import java.time.LocalDate;
+
+/**
+ * Which instrument a rental agreement is for, its fee, and when it was rented and returned.
+ */
+public class RentalPeriod {
+    private final String rentalInstrumentId;
+    private final int fee;
+    private final LocalDate dateRented;
+    private final LocalDate dateReturned;
+
+    /**
+     * @param fee          The monthly fee of the instrument when it was rented.
+     * @param dateReturned <code>null</code> if the instrument is not returned.
+     */
+    public RentalPeriod(String rentalInstrumentId, int fee, LocalDate dateRented, LocalDate dateReturned) {
+        this.rentalInstrumentId = rentalInstrumentId;
+        this.fee = fee;
+        this.dateRented = dateRented;
+        this.dateReturned = dateReturned;
+    }
+
+    public String getRentalInstrumentId() {
+        return rentalInstrumentId;
+    }
+
+    public int getFee() {
+        return fee;
+    }
+
+    public LocalDate getDateRented() {
+        return dateRented;
+    }
+
+    /**
+     * @return The return date, or <code>null</code> if the instrument is not returned.
+     */
+    public LocalDate getDateReturned() {
+        return dateReturned;
+    }
+
+    /**
+     * @return <code>true</code> if the instrument is not returned.
+     */
+    public boolean isActive() {
+        return dateReturned == null;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rollups of the complete rental history, per instrument type and day or month. Each rollup is a
+ * difference array of primitives, for example the number of rentals starting and ending each
+ * day, so adding a rental or a return only updates a few array elements, and answering a
+ * question about a period only sums the days or months before its end. Ten years of history take
+ * a few thousand elements per instrument type, regardless of the number of rentals.
+ * <p>
+ * The rollups are filled once from the database with <code>addInstrument</code> and
+ * <code>addRentals</code>, and then kept up to date with <code>recordRental</code> and
+ * <code>recordReturn</code>. All methods are thread safe.
+ */
+public class RentalStatistics {
+    private static final int INITIAL_TYPES = 16;
+    private static final int DAYS_AHEAD = 366;
+
+    private final Map<String, Integer> typeOrdinals = new HashMap<>();
+    private final List<String> typeNames = new ArrayList<>();
+    private final Map<String, Integer> typeOfInstrument = new HashMap<>();
+    private final Map<String, Integer> feeOfInstrument = new HashMap<>();
+    private final long firstEpochDay;
+    private final long firstEpochMonth;
+    private int[] nofInstruments = new int[INITIAL_TYPES];
+    private int[][] rentalsStartedByDay = new int[INITIAL_TYPES][];
+    private int[][] rentalsEndedByDay = new int[INITIAL_TYPES][];
+    private long[][] rentedDaysEndedByDay = new long[INITIAL_TYPES][];
+    private long[][] feesStartedByMonth = new long[INITIAL_TYPES][];
+    private long[][] feesEndedByMonth = new long[INITIAL_TYPES][];
+    private int nofDays;
+    private int nofMonths;
+    private boolean stale;
+
+    /**
+     * Creates empty rollups.
+     *
+     * @param firstDate The first date that can be recorded, normally the first rental date.
+     */
+    public RentalStatistics(LocalDate firstDate) {
+        firstEpochDay = firstDate.toEpochDay();
+        firstEpochMonth = epochMonth(firstDate);
+        nofDays = (int) (LocalDate.now().toEpochDay() - firstEpochDay) + DAYS_AHEAD;
+        nofMonths = (int) (epochMonth(LocalDate.now()) - firstEpochMonth) + DAYS_AHEAD / 28;
+    }
+
+    /**
+     * Adds a rental instrument.
+     *
+     * @param rentalInstrumentId The id of the instrument.
+     * @param instrument         The instrument type.
+     * @param fee                The current monthly fee of the instrument.
+     */
+    public synchronized void addInstrument(String rentalInstrumentId, String instrument, int fee) {
+        int type = typeOrdinal(instrument);
+        nofInstruments[type]++;
+        typeOfInstrument.put(rentalInstrumentId, type);
+        feeOfInstrument.put(rentalInstrumentId, fee);
+    }
+
+    /**
+     * Adds rentals which all have the same instrument type, fee and dates.
+     *
+     * @param instrument   The instrument type.
+     * @param fee          The monthly fee.
+     * @param dateRented   The date the instruments were rented.
+     * @param dateReturned The date the instruments were returned, or <code>null</code> if they are
+     *                     not returned.
+     * @param nofRentals   The number of rentals.
+     */
+    public synchronized void addRentals(String instrument, int fee, LocalDate dateRented, LocalDate dateReturned, int nofRentals) {
+        addRentals(typeOrdinal(instrument), fee, dateRented, dateReturned, nofRentals);
+    }
+
+    /**
+     * Records a new rental, at the current fee of the instrument.
+     *
+     * @param rentalInstrumentId The rented instrument.
+     * @param dateRented         The date of the rental.
+     */
+    public synchronized void recordRental(String rentalInstrumentId, LocalDate dateRented) {
+        Integer type = typeOfInstrument.get(rentalInstrumentId);
+        if (type == null) {
+            stale = true;
+            return;
+        }
+        addRentals(type, feeOfInstrument.get(rentalInstrumentId), dateRented, null, 1);
+    }
+
+    /**
+     * Records that a rented instrument was returned.
+     *
+     * @param rental       The rental, as it was before the instrument was returned.
+     * @param dateReturned The date the instrument was returned.
+     */
+    public synchronized void recordReturn(RentalPeriod rental, LocalDate dateReturned) {
+        Integer type = typeOfInstrument.get(rental.getRentalInstrumentId());
+        if (type == null || dayIndex(rental.getDateRented()) < 0) {
+            stale = true;
+            return;
+        }
+        endRentals(type, rental.getFee(), rental.getDateRented(), dateReturned, 1);
+    }
+
+    /**
+     * Marks the rollups as stale, because a rental or return might be missing from them or be
+     * counted twice.
+     */
+    public synchronized void markStale() {
+        stale = true;
+    }
+
+    /**
+     * @return <code>true</code> if a rental or return could not be recorded, for example because
+     *         the instrument was added after the rollups were built, or <code>markStale</code>
+     *         was called. The rollups should then be built again.
+     */
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Summarizes all instrument types during the specified period.
+     *
+     * @param from The first day of the period.
+     * @param to   The last day of the period.
+     * @return Statistics for each instrument type, sorted by instrument type.
+     */
+    public synchronized List<InstrumentTypeStatistics> summarize(LocalDate from, LocalDate to) {
+        int fromDay = Math.max(0, dayIndex(from));
+        int toDay = Math.min(nofDays - 1, dayIndex(to));
+        int fromMonth = Math.max(0, monthIndex(from));
+        int toMonth = Math.min(nofMonths - 1, monthIndex(to));
+        long daysInPeriod = ChronoUnit.DAYS.between(from, to) + 1;
+        List<InstrumentTypeStatistics> summary = new ArrayList<>();
+        for (int type = 0; type < typeNames.size(); type++) {
+            long started = 0;
+            long ended = 0;
+            long endedDays = 0;
+            long rentedDays = 0;
+            long active = 0;
+            for (int day = 0; day <= toDay; day++) {
+                active += rentalsStartedByDay[type][day] - rentalsEndedByDay[type][day];
+                if (day >= fromDay) {
+                    started += rentalsStartedByDay[type][day];
+                    ended += rentalsEndedByDay[type][day];
+                    endedDays += rentedDaysEndedByDay[type][day];
+                    rentedDays += active;
+                }
+            }
+            long revenue = 0;
+            long activeFees = 0;
+            for (int month = 0; month <= toMonth; month++) {
+                activeFees += feesStartedByMonth[type][month] - feesEndedByMonth[type][month];
+                if (month >= fromMonth) {
+                    revenue += activeFees;
+                }
+            }
+            long instrumentDays = nofInstruments[type] * daysInPeriod;
+            summary.add(new InstrumentTypeStatistics(typeNames.get(type), nofInstruments[type], started,
+                                                     instrumentDays == 0 ? 0 : (double) rentedDays / instrumentDays,
+                                                     revenue, ended == 0 ? 0 : (double) endedDays / ended));
+        }
+        summary.sort((first, second) -> first.getInstrument().compareTo(second.getInstrument()));
+        return summary;
+    }
+
+    /**
+     * Calculates the revenue of an instrument type for each month of a year.
+     *
+     * @param instrument The instrument type.
+     * @param year       The year.
+     * @return The revenue of each month, January first. All zero if the type is unknown.
+     */
+    public synchronized long[] monthlyRevenue(String instrument, int year) {
+        long[] revenue = new long[12];
+        Integer type = typeOrdinals.get(instrument);
+        if (type == null) {
+            return revenue;
+        }
+        int january = monthIndex(LocalDate.of(year, 1, 1));
+        long activeFees = 0;
+        for (int month = 0; month < Math.min(nofMonths, january + 12); month++) {
+            activeFees += feesStartedByMonth[type][month] - feesEndedByMonth[type][month];
+            if (month >= january) {
+                revenue[month - january] = activeFees;
+            }
+        }
+        return revenue;
+    }
+
+    private void addRentals(int type, int fee, LocalDate dateRented, LocalDate dateReturned, int nofRentals) {
+        int startDay = dayIndex(dateRented);
+        if (startDay < 0) {
+            stale = true;
+            return;
+        }
+        ensureCapacity(startDay, monthIndex(dateRented));
+        rentalsStartedByDay[type][startDay] += nofRentals;
+        feesStartedByMonth[type][monthIndex(dateRented)] += (long) fee * nofRentals;
+        if (dateReturned != null) {
+            endRentals(type, fee, dateRented, dateReturned, nofRentals);
+        }
+    }
+
+    private void endRentals(int type, int fee, LocalDate dateRented, LocalDate dateReturned, int nofRentals) {
+        int endDay = dayIndex(dateReturned);
+        int monthAfterEnd = monthIndex(dateReturned) + 1;
+        ensureCapacity(endDay, monthAfterEnd);
+        rentalsEndedByDay[type][endDay] += nofRentals;
+        rentedDaysEndedByDay[type][endDay] += ChronoUnit.DAYS.between(dateRented, dateReturned) * nofRentals;
+        feesEndedByMonth[type][monthAfterEnd] += (long) fee * nofRentals;
+    }
+
+    private int typeOrdinal(String instrument) {
+        Integer type = typeOrdinals.get(instrument);
+        if (type != null) {
+            return type;
+        }
+        type = typeNames.size();
+        typeOrdinals.put(instrument, type);
+        typeNames.add(instrument);
+        if (type == nofInstruments.length) {
+            int newLength = type * 2;
+            nofInstruments = Arrays.copyOf(nofInstruments, newLength);
+            rentalsStartedByDay = Arrays.copyOf(rentalsStartedByDay, newLength);
+            rentalsEndedByDay = Arrays.copyOf(rentalsEndedByDay, newLength);
+            rentedDaysEndedByDay = Arrays.copyOf(rentedDaysEndedByDay, newLength);
+            feesStartedByMonth = Arrays.copyOf(feesStartedByMonth, newLength);
+            feesEndedByMonth = Arrays.copyOf(feesEndedByMonth, newLength);
+        }
+        rentalsStartedByDay[type] = new int[nofDays];
+        rentalsEndedByDay[type] = new int[nofDays];
+        rentedDaysEndedByDay[type] = new long[nofDays];
+        feesStartedByMonth[type] = new long[nofMonths];
+        feesEndedByMonth[type] = new long[nofMonths];
+        return type;
+    }
+
+    private void ensureCapacity(int day, int month) {
+        if (day >= nofDays) {
+            nofDays = Math.max(day + 1, nofDays * 2);
+            for (int type = 0; type < typeNames.size(); type++) {
+                rentalsStartedByDay[type] = Arrays.copyOf(rentalsStartedByDay[type], nofDays);
+                rentalsEndedByDay[type] = Arrays.copyOf(rentalsEndedByDay[type], nofDays);
+                rentedDaysEndedByDay[type] = Arrays.copyOf(rentedDaysEndedByDay[type], nofDays);
+            }
+        }
+        if (month >= nofMonths) {
+            nofMonths = Math.max(month + 1, nofMonths * 2);
+            for (int type = 0; type < typeNames.size(); type++) {
+                feesStartedByMonth[type] = Arrays.copyOf(feesStartedByMonth[type], nofMonths);
+                feesEndedByMonth[type] = Arrays.copyOf(feesEndedByMonth[type], nofMonths);
+            }
+        }
+    }
+
+    private int dayIndex(LocalDate date) {
+        return (int) (date.toEpochDay() - firstEpochDay);
+    }
+
+    private int monthIndex(LocalDate date) {
+        return (int) (epochMonth(date) - firstEpochMonth);
+    }
+
+    private static long epochMonth(LocalDate date) {
+        return YearMonth.from(date).getYear() * 12L + date.getMonthValue() - 1;
+    }
+}
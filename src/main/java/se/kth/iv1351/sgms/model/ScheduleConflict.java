@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+/**
+ * Two lessons given by the same instructor at overlapping times. The first lesson starts first.
+ */
+public class ScheduleConflict implements ScheduleConflictDTO {
+    private Instructor instructor;
+    private LessonSlot first;
+    private LessonSlot second;
+
+    public ScheduleConflict(Instructor instructor, LessonSlot first, LessonSlot second) {
+        this.instructor = instructor;
+        this.first = first;
+        this.second = second;
+    }
+
+    public String getInstructorName() {
+        return instructor.getName();
+    }
+
+    public String getInstructorPersonalNumber() {
+        return instructor.getPersonalNumber();
+    }
+
+    public String getFirstLessonType() {
+        return first.getType();
+    }
+
+    public String getFirstLessonId() {
+        return first.getLessonId();
+    }
+
+    public String getFirstStart() {
+        return first.getStart().toString();
+    }
+
+    public String getSecondLessonType() {
+        return second.getType();
+    }
+
+    public String getSecondLessonId() {
+        return second.getLessonId();
+    }
+
+    public String getSecondStart() {
+        return second.getStart().toString();
+    }
+
+    @Override
+    public String toString() {
+        return "[instructor: " + instructor.getName() +
+                ", first: " + first +
+                ", second: " + second +
+                ']';
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import java.util.List;
+
+/**
+ * A student's profile, together with the student's active rentals, contact persons, siblings
+ * and upcoming lessons.
+ */
+public class StudentOverview implements StudentOverviewDTO {
+    private Student student;
+    private List<RentalAgreement> activeRentals;
+    private List<ContactPerson> contactPersons;
+    private List<Student> siblings;
+    private List<UpcomingLesson> upcomingLessons;
+
+    /**
+     * @param upcomingLessons The lessons the student is booked on, ordered by start.
+     */
+    public StudentOverview(Student student, List<RentalAgreement> activeRentals, List<ContactPerson> contactPersons,
+                           List<Student> siblings, List<UpcomingLesson> upcomingLessons) {
+        this.student = student;
+        this.activeRentals = List.copyOf(activeRentals);
+        this.contactPersons = List.copyOf(contactPersons);
+        this.siblings = List.copyOf(siblings);
+        this.upcomingLessons = List.copyOf(upcomingLessons);
+    }
+
+    public Student getStudent() {
+        return student;
+    }
+
+    public List<RentalAgreement> getActiveRentals() {
+        return activeRentals;
+    }
+
+    public List<ContactPerson> getContactPersons() {
+        return contactPersons;
+    }
+
+    public List<Student> getSiblings() {
+        return siblings;
+    }
+
+    public List<UpcomingLesson> getUpcomingLessons() {
+        return upcomingLessons;
+    }
+
+    @Override
+    public String toString() {
+        return "[student: " + student +
+                ", active rentals: " + activeRentals +
+                ", contact persons: " + contactPersons +
+                ", siblings: " + siblings +
+                ", upcoming lessons: " + upcomingLessons +
+                ']';
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+/**
+ * An individual lesson, group lesson or ensemble a student is booked on, that has not been given
+ * yet. Ensembles have no instrument.
+ */
+public class UpcomingLesson implements UpcomingLessonDTO {
+    private String lessonId;
+    private String type;
+    private String instrument;
+    private String instructorName;
+    private String date;
+    private String time;
+
+    public UpcomingLesson(String lessonId, String type, String instrument, String instructorName, String date, String time) {
+        this.lessonId = lessonId;
+        this.type = type;
+        this.instrument = instrument;
+        this.instructorName = instructorName;
+        this.date = date;
+        this.time = time;
+    }
+
+    public String getLessonId() {
+        return lessonId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getInstrument() {
+        return instrument;
+    }
+
+    public String getInstructorName() {
+        return instructorName;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "[lesson_id: " + lessonId +
+                ", type: " + type +
+                ", instrument: " + instrument +
+                ", instructor: " + instructorName +
+                ", when: " + date + " " + time +
+                ']';
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+/**
+ * A student waiting for an instrument type. Students with siblings are prioritized, and are
+ * served before all students without siblings.
+ */
+public class WaitlistEntry implements WaitlistEntryDTO {
+    private long waitlistNo;
+    private long position;
+    private String studentId;
+    private String personalNumber;
+    private String name;
+    private String instrument;
+    private boolean prioritized;
+    private String dateQueued;
+
+    public WaitlistEntry(long waitlistNo, long position, String studentId, String personalNumber, String name,
+                         String instrument, boolean prioritized, String dateQueued) {
+        this.waitlistNo = waitlistNo;
+        this.position = position;
+        this.studentId = studentId;
+        this.personalNumber = personalNumber;
+        this.name = name;
+        this.instrument = instrument;
+        this.prioritized = prioritized;
+        this.dateQueued = dateQueued;
+    }
+
+    /**
+     * @return The number identifying this entry, later entries have higher numbers.
+     */
+    public long getWaitlistNo() {
+        return waitlistNo;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public String getStudentId() {
+        return studentId;
+    }
+
+    public String getPersonalNumber() {
+        return personalNumber;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getInstrument() {
+        return instrument;
+    }
+
+    public boolean isPrioritized() {
+        return prioritized;
+    }
+
+    public String getDateQueued() {
+        return dateQueued;
+    }
+
+    @Override
+    public String toString() {
+        return "[position: " + position +
+                ", student: " + name +
+                ", pn: " + personalNumber +
+                ", instrument: " + instrument +
+                ", prioritized: " + prioritized +
+                ", since: " + dateQueued +
+                ']';
+    }
+}
@@ -24,23 +24,79 @@
 
 package se.kth.iv1351.sgms.startup;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 import se.kth.iv1351.sgms.controller.Controller;
 import se.kth.iv1351.sgms.integration.SchoolDBException;
 import se.kth.iv1351.sgms.view.BlockingInterpreter;
+import se.kth.iv1351.sgms.view.ScriptInterpreter;
 
 /**
  * Starts the bank client.
  */
 public class Main {
+    private static final String WARM_UP_FLAG = "--warmup";
+    private static final String SCRIPT_FLAG = "--script";
+    private static final String STANDARD_INPUT = "-";
+
     /**
-     * @param args There are no command line arguments.
+     * @param args <code>--warmup</code> starts the application without background jobs, waits
+     *             until the database connection is open, and then quits. This is used to record
+     *             the class data sharing archive, see the <code>appcds</code> maven profile.
+     *             <code>--script [&lt;file&gt;]</code> executes the commands in the specified file,
+     *             or on standard input if there is no file or the file is <code>-</code>, instead
+     *             of reading commands interactively. The exit status is 1 if any command was
+     *             rejected or failed.
      */
     public static void main(String[] args) {
         try {
-        new BlockingInterpreter(new Controller()).handleCmds();
+            boolean warmUp = args.length > 0 && args[0].equals(WARM_UP_FLAG);
+            Controller ctrl = new Controller(!warmUp);
+            if (warmUp) {
+                ctrl.awaitStartup();
+                System.out.println("Warm-up done in " + millisSinceJvmStart() + " ms.");
+                ctrl.close();
+                return;
+            }
+            if (args.length > 0 && args[0].equals(SCRIPT_FLAG)) {
+                int nofFailedCmds = runScript(ctrl, args.length > 1 ? args[1] : STANDARD_INPUT);
+                ctrl.close();
+                System.exit(nofFailedCmds == 0 ? 0 : 1);
+            }
+            BlockingInterpreter interpreter = new BlockingInterpreter(ctrl);
+            System.out.println("Prompt in " + millisSinceJvmStart() + " ms, see the startup.readyMillis metric"
+                               + " for when the database answered.");
+            interpreter.handleCmds();
+            ctrl.close();
         } catch(SchoolDBException bdbe) {
             System.out.println("Could not connect to Bank db.");
             bdbe.printStackTrace();
+        } catch(IOException ioe) {
+            System.out.println("Could not write audit journal.");
+            ioe.printStackTrace();
         }
     }
+
+    private static int runScript(Controller ctrl, String scriptFile) throws IOException {
+        BufferedReader script = STANDARD_INPUT.equals(scriptFile)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(scriptFile));
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        try (script) {
+            return new ScriptInterpreter(ctrl, script, out).run();
+        }
+    }
+
+    private static long millisSinceJvmStart() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
 }
@@ -24,12 +24,16 @@
 
 package se.kth.iv1351.sgms.view;
 
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
 import java.util.Scanner;
 
 import se.kth.iv1351.sgms.controller.Controller;
-import se.kth.iv1351.sgms.model.InstrumentDTO;
-import se.kth.iv1351.sgms.model.RentalAgreementDTO;
+import se.kth.iv1351.sgms.model.RejectedException;
 
 /**
  * Reads and interprets user commands. This command interpreter is blocking, the user
@@ -37,8 +41,11 @@ import se.kth.iv1351.sgms.model.RentalAgreementDTO;
  */
 public class BlockingInterpreter {
     private static final String PROMPT = "> ";
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
     private final Scanner console = new Scanner(System.in);
-    private Controller ctrl;
+    private final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(FileDescriptor.out), Charset.defaultCharset()), OUTPUT_BUFFER_SIZE));
+    private final CommandExecutor executor;
     private boolean keepReceivingCmds = false;
 
     /**
@@ -47,7 +54,7 @@ public class BlockingInterpreter {
      * @param ctrl The controller used by this instance.
      */
     public BlockingInterpreter(Controller ctrl) {
-        this.ctrl = ctrl;
+        this.executor = new CommandExecutor(ctrl);
     }
 
     /**
@@ -67,54 +74,26 @@ public class BlockingInterpreter {
         while (keepReceivingCmds) {
             try {
                 CmdLine cmdLine = new CmdLine(readNextLine());
-                switch (cmdLine.getCmd()) {
-                    case HELP:
-                        for (Command command : Command.values())
-                            if (command != Command.ILLEGAL_COMMAND)
-                                System.out.println(command.toString().toLowerCase());
-                        break;
-                    case RENT:
-                        // first parameter is students personal number, second parameter is instrument
-                        System.out.println(ctrl.rent(cmdLine.getParameter(0), cmdLine.getParameter(1)));
-                        break;
-                    case QUIT:
-                        keepReceivingCmds = false;
-                        break;
-                    case AGREEMENTS:
-                        List<? extends RentalAgreementDTO> agreements = null;
-                        agreements = ctrl.listActiveAgreements();
-                        for (RentalAgreementDTO agreement: agreements) {
-                            System.out.println(agreement);
-                        }
-                        break;
-                    case LIST:
-                        // optional parameter: type of instrument
-                        List<? extends InstrumentDTO> instruments = null;
-                        if (cmdLine.getParameter(0).equals("")) {
-                            instruments = ctrl.getAllInstruments();
-                        } else {
-                            instruments = ctrl.getInstrumentsForType(cmdLine.getParameter(0));
-                        }
-                        for (InstrumentDTO inst : instruments)
-                            System.out.println(inst.toString());
-                        break;
-                    case TERMINATE:
-                        // parameter: rental_agreement_id
-                        System.out.println(ctrl.terminate(cmdLine.getParameter(0)));
-                        break;
-                    default:
-                        System.out.println("illegal command");
+                if (cmdLine.getCmd() == Command.QUIT) {
+                    keepReceivingCmds = false;
+                } else {
+                    executor.execute(cmdLine, out);
                 }
+            } catch (RejectedException re) {
+                out.println(re.getMessage());
             } catch (Exception e) {
-                System.out.println("Operation failed");
-                System.out.println(e.getMessage());
+                out.println("Operation failed");
+                out.println(e.getMessage());
+                out.flush();
                 e.printStackTrace();
             }
+            out.flush();
         }
     }
 
     private String readNextLine() {
-        System.out.print(PROMPT);
+        out.print(PROMPT);
+        out.flush();
         return console.nextLine();
     }
 }
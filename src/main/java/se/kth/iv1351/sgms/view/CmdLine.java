@@ -24,13 +24,25 @@
 
 package se.kth.iv1351.sgms.view;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * One line of user input, which should be a command and parameters associated
- * with that command (if any).
+ * with that command (if any). Parameters starting with <code>--</code> are
+ * options, for example <code>--json</code> or <code>--key=value</code>, and may
+ * be placed anywhere after the command. Commands of several words are entered
+ * with <code>-</code> between the words, for example <code>find-instructor</code>.
  */
 class CmdLine {
     private static final String PARAM_DELIMETER = " ";
+    private static final String OPTION_PREFIX = "--";
+    private static final String OPTION_VALUE_DELIMETER = "=";
+    private static final char COMMAND_WORD_DELIMETER = '-';
     private String[] params;
+    private final Map<String, String> options = new HashMap<>();
     private Command cmd;
     private final String enteredLine;
 
@@ -77,6 +89,42 @@ class CmdLine {
         return params[index];
     }
 
+    /**
+     * Returns all parameters starting at the specified index.
+     *
+     * @param fromIndex The index of the first returned parameter.
+     * @return The parameters, or an empty list if there are no parameters at or after that index.
+     */
+    List<String> getParameters(int fromIndex) {
+        List<String> found = new ArrayList<>();
+        if (params == null) {
+            return found;
+        }
+        for (int i = fromIndex; i < params.length; i++) {
+            if (!params[i].isEmpty()) {
+                found.add(params[i]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param name The name of the option, without <code>--</code>.
+     * @return <code>true</code> if the specified option was given, with or without value.
+     */
+    boolean hasOption(String name) {
+        return options.containsKey(name);
+    }
+
+    /**
+     * @param name The name of the option, without <code>--</code>.
+     * @return The value of the specified option, an empty string if the option was given
+     *         without value, or <code>null</code> if the option was not given.
+     */
+    String getOptionValue(String name) {
+        return options.get(name);
+    }
+
     private String removeExtraSpaces(String source) {
         if (source == null) {
             return source;
@@ -94,7 +142,7 @@ class CmdLine {
                 return;
             }
             String[] enteredTokens = trimmed.split(PARAM_DELIMETER);
-            cmd = Command.valueOf(enteredTokens[cmdNameIndex].toUpperCase());
+            cmd = Command.valueOf(enteredTokens[cmdNameIndex].toUpperCase().replace(COMMAND_WORD_DELIMETER, '_'));
         } catch (Exception failedToReadCmd) {
             cmd = Command.ILLEGAL_COMMAND;
         }
@@ -110,15 +158,30 @@ class CmdLine {
             params = null;
             return;
         }
-        params = paramPartOfCmd.split(PARAM_DELIMETER);
+        List<String> positionalParams = new ArrayList<>();
+        for (String param : paramPartOfCmd.split(PARAM_DELIMETER)) {
+            if (param.startsWith(OPTION_PREFIX)) {
+                String[] nameAndValue = param.substring(OPTION_PREFIX.length()).split(OPTION_VALUE_DELIMETER, 2);
+                options.put(nameAndValue[0], nameAndValue.length > 1 ? nameAndValue[1] : "");
+            } else {
+                positionalParams.add(param);
+            }
+        }
+        if (positionalParams.isEmpty()) {
+            positionalParams.add("");
+        }
+        params = positionalParams.toArray(new String[0]);
     }
 
     private String removeCmd(String enteredLine) {
         if (cmd == Command.ILLEGAL_COMMAND) {
             return enteredLine;
         }
-        int indexAfterCmd = enteredLine.toUpperCase().indexOf(cmd.name()) + cmd.name().length();
-        String withoutCmd = enteredLine.substring(indexAfterCmd, enteredLine.length());
-        return withoutCmd.trim();
+        String trimmed = enteredLine.trim();
+        int indexAfterCmd = trimmed.indexOf(PARAM_DELIMETER);
+        if (indexAfterCmd < 0) {
+            return "";
+        }
+        return trimmed.substring(indexAfterCmd).trim();
     }
 }
@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.view;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * One column of a result, reads the value of the column from a row.
+ *
+ * @param <T> The type of the rows.
+ */
+class Column<T> {
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000};
+
+    private final String name;
+    private final Function<? super T, String> text;
+    private final ToLongFunction<? super T> number;
+    private final int decimals;
+    private final Function<? super T, ? extends List<?>> elements;
+    private final List<Function<Object, String>> parts;
+
+    private Column(String name, Function<? super T, String> text, ToLongFunction<? super T> number, int decimals,
+                   Function<? super T, ? extends List<?>> elements, List<Function<Object, String>> parts) {
+        this.name = name;
+        this.text = text;
+        this.number = number;
+        this.decimals = decimals;
+        this.elements = elements;
+        this.parts = parts;
+    }
+
+    /**
+     * Creates a column that is written as it is.
+     */
+    static <T> Column<T> text(String name, Function<? super T, String> value) {
+        return new Column<>(name, value, null, 0, null, null);
+    }
+
+    /**
+     * Creates a column with integer values, which is right aligned in tables.
+     */
+    static <T> Column<T> number(String name, ToLongFunction<? super T> value) {
+        return new Column<>(name, null, value, 0, null, null);
+    }
+
+    /**
+     * Creates a column with decimal values, which is right aligned in tables.
+     *
+     * @param decimals The number of decimals that are written, at most 4.
+     */
+    static <T> Column<T> decimal(String name, ToDoubleFunction<? super T> value, int decimals) {
+        long scale = POWERS_OF_TEN[decimals];
+        return new Column<>(name, null, row -> Math.round(value.applyAsDouble(row) * scale), decimals, null, null);
+    }
+
+    /**
+     * Creates a column whose value is a list. Each element is written as its parts separated by
+     * spaces, and the elements are separated by semicolons. The parts are written one at a time,
+     * no string is built for the whole value.
+     *
+     * @param elements Reads the list from a row.
+     * @param parts    Each reads one part of an element.
+     */
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    static <T, E> Column<T> list(String name, Function<? super T, ? extends List<? extends E>> elements,
+                                 Function<? super E, String>... parts) {
+        List<?> partList = List.of(parts);
+        return new Column<>(name, null, null, 0, elements, (List<Function<Object, String>>) partList);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isNumeric() {
+        return number != null;
+    }
+
+    boolean isList() {
+        return elements != null;
+    }
+
+    /**
+     * @return The value of a text column.
+     */
+    String text(T row) {
+        return text.apply(row);
+    }
+
+    /**
+     * @return The value of a numeric column, multiplied by ten to the power of the number of
+     *         decimals.
+     */
+    long scaledNumber(T row) {
+        return number.applyAsLong(row);
+    }
+
+    /**
+     * @return The elements of a list column.
+     */
+    List<?> elements(T row) {
+        return elements.apply(row);
+    }
+
+    int getNofParts() {
+        return parts.size();
+    }
+
+    /**
+     * @return The specified part of an element of a list column.
+     */
+    String part(Object element, int part) {
+        return parts.get(part).apply(element);
+    }
+
+    int getDecimals() {
+        return decimals;
+    }
+}
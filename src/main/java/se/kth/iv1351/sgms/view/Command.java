@@ -24,6 +24,8 @@
 
 package se.kth.iv1351.sgms.view;
 
+import java.util.Set;
+
 /**
  * Defines all commands that can be performed by a user of the chat application.
  */
@@ -35,7 +37,7 @@ public enum Command {
     /**
      * Terminate a rental agreement.
      */
-    TERMINATE,
+    TERMINATE(true),
     /**
      * Show all commands.
      */
@@ -47,13 +49,100 @@ public enum Command {
     /**
      * Rent an instrument.
      */
-    RENT,
+    RENT(true),
     /**
-     * List all active agreements.
+     * List all active agreements, or with <code>--as-of=yyyy-mm-dd</code> the agreements that
+     * were active on a past day.
      */
     AGREEMENTS,
+    /**
+     * Book one or more students on a group lesson or an ensemble.
+     */
+    BOOK(true),
+    /**
+     * List group lessons and ensembles with open seats.
+     */
+    SEATS,
+    /**
+     * Show counters, for example committed and retried transactions.
+     */
+    METRICS,
+    /**
+     * Show rental statistics per instrument type, or monthly revenue of one instrument type, or
+     * rebuild the statistics.
+     */
+    STATS("refresh"),
+    /**
+     * List reminders about overdue rentals, or create the reminders now.
+     */
+    REMINDERS("run"),
+    /**
+     * Join or leave the waitlist for an instrument type, or list the waitlist.
+     */
+    WAITLIST("join", "leave", "run"),
+    /**
+     * Check the database of each branch.
+     */
+    HEALTH,
+    /**
+     * Check if an instructor is free at a certain time.
+     */
+    FREE,
+    /**
+     * List lessons given by the same instructor at overlapping times.
+     */
+    CONFLICTS,
+    /**
+     * Find instructors that teach an instrument and are free during a period. Entered as
+     * <code>find-instructor</code>.
+     */
+    FIND_INSTRUCTOR,
+    /**
+     * Show the profile, active rentals, contact persons, siblings and upcoming lessons of one or
+     * more students.
+     */
+    OVERVIEW,
+    /**
+     * Show the overviews of all students booked on a lesson.
+     */
+    ROSTER,
     /**
      * None of the valid commands above was specified.
      */
-    ILLEGAL_COMMAND
+    ILLEGAL_COMMAND;
+
+    private final boolean write;
+    private final Set<String> writeSubcommands;
+
+    Command() {
+        this(false);
+    }
+
+    /**
+     * @param write <code>true</code> if the command changes the database.
+     */
+    Command(boolean write) {
+        this.write = write;
+        this.writeSubcommands = Set.of();
+    }
+
+    /**
+     * @param writeSubcommands The subcommands, given as the first parameter, that change the
+     *                         database or the rental statistics. The command only reads with
+     *                         any other first parameter.
+     */
+    Command(String... writeSubcommands) {
+        this.write = false;
+        this.writeSubcommands = Set.of(writeSubcommands);
+    }
+
+    /**
+     * @param cmdLine A command line with this command.
+     * @return <code>true</code> if the command line changes the database or the rental
+     *         statistics, scripts execute such command lines one at a time, in script order.
+     */
+    boolean isWrite(CmdLine cmdLine) {
+        String subcommand = cmdLine.getParameter(0);
+        return write || subcommand != null && writeSubcommands.contains(subcommand);
+    }
 }
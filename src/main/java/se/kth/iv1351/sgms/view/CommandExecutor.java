@@ -0,0 +1,317 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.view;
+
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import se.kth.iv1351.sgms.controller.Controller;
+import se.kth.iv1351.sgms.model.ContactPersonDTO;
+import se.kth.iv1351.sgms.model.DatabaseHealthDTO;
+import se.kth.iv1351.sgms.model.InstructorDTO;
+import se.kth.iv1351.sgms.model.InstrumentDTO;
+import se.kth.iv1351.sgms.model.InstrumentTypeStatisticsDTO;
+import se.kth.iv1351.sgms.model.LessonDTO;
+import se.kth.iv1351.sgms.model.OverdueRentalDTO;
+import se.kth.iv1351.sgms.model.RentalAgreementDTO;
+import se.kth.iv1351.sgms.model.ScheduleConflictDTO;
+import se.kth.iv1351.sgms.model.StudentDTO;
+import se.kth.iv1351.sgms.model.StudentOverviewDTO;
+import se.kth.iv1351.sgms.model.UpcomingLessonDTO;
+import se.kth.iv1351.sgms.model.WaitlistEntryDTO;
+
+/**
+ * Performs one command against a controller, and writes the result of the command. Used by both
+ * the interactive and the script interpreter, the commands behave the same way in both. Commands
+ * that list rows write them in the format selected with <code>--table</code> (default),
+ * <code>--csv</code> or <code>--json</code>. <code>rent</code> and <code>terminate</code> accept a
+ * request key, <code>--key=&lt;key&gt;</code>, a command retried with the same key is executed
+ * only once.
+ */
+class CommandExecutor {
+    private static final int WAITLIST_DEFAULT_SIZE = 20;
+    private static final List<Column<InstrumentDTO>> INSTRUMENT_COLUMNS = List.of(
+            Column.text("id", InstrumentDTO::getRentalInstrumentId),
+            Column.text("instrument", InstrumentDTO::getInstrument),
+            Column.text("brand", InstrumentDTO::getBrand),
+            Column.text("fee", InstrumentDTO::getFee));
+    private static final List<Column<RentalAgreementDTO>> AGREEMENT_COLUMNS = List.of(
+            Column.text("rental_id", RentalAgreementDTO::getRentalAgreementId),
+            Column.text("student", RentalAgreementDTO::getName),
+            Column.text("pn", RentalAgreementDTO::getPersonalNumber),
+            Column.text("instrument", RentalAgreementDTO::getInstrument),
+            Column.text("brand", RentalAgreementDTO::getBrand),
+            Column.text("fee", RentalAgreementDTO::getFee),
+            Column.text("since", RentalAgreementDTO::getDateRented));
+    private static final List<Column<LessonDTO>> LESSON_COLUMNS = List.of(
+            Column.text("lesson_id", LessonDTO::getLessonId),
+            Column.text("type", LessonDTO::getType),
+            Column.text("instrument", LessonDTO::getInstrument),
+            Column.text("level", LessonDTO::getLevel),
+            Column.text("date", LessonDTO::getDate),
+            Column.text("time", LessonDTO::getTime),
+            Column.number("open_seats", LessonDTO::getOpenSeats));
+    private static final List<Column<InstrumentTypeStatisticsDTO>> STATISTICS_COLUMNS = List.of(
+            Column.text("instrument", InstrumentTypeStatisticsDTO::getInstrument),
+            Column.number("instruments", InstrumentTypeStatisticsDTO::getNofInstruments),
+            Column.number("rentals", InstrumentTypeStatisticsDTO::getNofRentals),
+            Column.decimal("utilization_percent", stats -> stats.getUtilization() * 100, 1),
+            Column.number("revenue", InstrumentTypeStatisticsDTO::getRevenue),
+            Column.decimal("average_days", InstrumentTypeStatisticsDTO::getAverageRentalDays, 1));
+    private static final List<Column<OverdueRentalDTO>> REMINDER_COLUMNS = List.of(
+            Column.text("rental_id", OverdueRentalDTO::getRentalAgreementId),
+            Column.text("student", OverdueRentalDTO::getName),
+            Column.text("pn", OverdueRentalDTO::getPersonalNumber),
+            Column.text("instrument", OverdueRentalDTO::getInstrument),
+            Column.text("brand", OverdueRentalDTO::getBrand),
+            Column.text("since", OverdueRentalDTO::getDateRented),
+            Column.text("overdue_since", OverdueRentalDTO::getOverdueSince));
+    private static final List<Column<DatabaseHealthDTO>> HEALTH_COLUMNS = List.of(
+            Column.text("branch", DatabaseHealthDTO::getBranch),
+            Column.text("breaker", DatabaseHealthDTO::getBreakerState),
+            Column.number("connections", DatabaseHealthDTO::getConnections),
+            Column.text("reachable", health -> health.isReachable() ? "yes" : "no"),
+            Column.number("latency_ms", DatabaseHealthDTO::getLatencyMillis),
+            Column.text("status", DatabaseHealthDTO::getStatus));
+    private static final List<Column<WaitlistEntryDTO>> WAITLIST_COLUMNS = List.of(
+            Column.number("position", WaitlistEntryDTO::getPosition),
+            Column.text("student", WaitlistEntryDTO::getName),
+            Column.text("pn", WaitlistEntryDTO::getPersonalNumber),
+            Column.text("sibling", entry -> entry.isPrioritized() ? "yes" : "no"),
+            Column.text("since", WaitlistEntryDTO::getDateQueued));
+    private static final List<Column<ScheduleConflictDTO>> CONFLICT_COLUMNS = List.of(
+            Column.text("instructor", ScheduleConflictDTO::getInstructorName),
+            Column.text("pn", ScheduleConflictDTO::getInstructorPersonalNumber),
+            Column.text("first_type", ScheduleConflictDTO::getFirstLessonType),
+            Column.text("first_id", ScheduleConflictDTO::getFirstLessonId),
+            Column.text("first_start", ScheduleConflictDTO::getFirstStart),
+            Column.text("second_type", ScheduleConflictDTO::getSecondLessonType),
+            Column.text("second_id", ScheduleConflictDTO::getSecondLessonId),
+            Column.text("second_start", ScheduleConflictDTO::getSecondStart));
+    private static final List<Column<InstructorDTO>> INSTRUCTOR_COLUMNS = List.of(
+            Column.text("instructor", InstructorDTO::getName),
+            Column.text("pn", InstructorDTO::getPersonalNumber),
+            Column.text("instruments", InstructorDTO::getInstruments));
+    private static final List<Column<StudentOverviewDTO>> OVERVIEW_COLUMNS = List.of(
+            Column.text("student", overview -> overview.getStudent().getName()),
+            Column.text("pn", overview -> overview.getStudent().getPersonalNumber()),
+            Column.text("phone", overview -> overview.getStudent().getPhone()),
+            Column.text("email", overview -> overview.getStudent().getEmail()),
+            Column.list("contacts", StudentOverviewDTO::getContactPersons, ContactPersonDTO::getName, ContactPersonDTO::getPhone),
+            Column.list("siblings", StudentOverviewDTO::getSiblings, StudentDTO::getName),
+            Column.list("rentals", StudentOverviewDTO::getActiveRentals, RentalAgreementDTO::getInstrument,
+                        RentalAgreementDTO::getBrand),
+            Column.number("lessons", overview -> overview.getUpcomingLessons().size()),
+            Column.list("next_lesson",
+                        overview -> overview.getUpcomingLessons().subList(0, Math.min(1, overview.getUpcomingLessons().size())),
+                        UpcomingLessonDTO::getType, UpcomingLessonDTO::getDate, UpcomingLessonDTO::getTime));
+    private static final List<Column<Map.Entry<String, Long>>> METRIC_COLUMNS = List.of(
+            Column.text("metric", Map.Entry::getKey),
+            Column.number("value", Map.Entry::getValue));
+
+    private final Controller ctrl;
+    private final ResultRenderer renderer = new ResultRenderer();
+
+    /**
+     * Creates a new instance that will use the specified controller for all operations.
+     *
+     * @param ctrl The controller used by this instance.
+     */
+    CommandExecutor(Controller ctrl) {
+        this.ctrl = ctrl;
+    }
+
+    /**
+     * @return The controller used by this instance.
+     */
+    Controller getController() {
+        return ctrl;
+    }
+
+    /**
+     * Performs the specified command. <code>QUIT</code> is not handled here, since it is up to
+     * the interpreter what quitting means.
+     *
+     * @param cmdLine The command to perform.
+     * @param out     The result of the command is written here.
+     * @throws Exception If the command failed.
+     */
+    void execute(CmdLine cmdLine, PrintWriter out) throws Exception {
+        // The writer is not flushed here, the interpreter flushes once the whole result is written.
+        switch (cmdLine.getCmd()) {
+            case HELP:
+                for (Command command : Command.values())
+                    if (command != Command.ILLEGAL_COMMAND)
+                        out.println(command.toString().toLowerCase().replace('_', '-'));
+                break;
+            case RENT:
+                // first parameter is students personal number, second parameter is instrument
+                out.println(ctrl.rent(cmdLine.getParameter(0), cmdLine.getParameter(1), requestKey(cmdLine)));
+                break;
+            case AGREEMENTS:
+                // optional option: --as-of=yyyy-mm-dd lists the agreements active on that day
+                String asOf = cmdLine.getOptionValue("as-of");
+                List<? extends RentalAgreementDTO> agreements = asOf == null ? ctrl.listActiveAgreements()
+                                                                             : ctrl.listAgreementsActiveOn(LocalDate.parse(asOf));
+                renderer.render(agreements, AGREEMENT_COLUMNS, OutputFormat.of(cmdLine), out);
+                break;
+            case LIST:
+                // optional parameter: type of instrument
+                List<? extends InstrumentDTO> instruments = null;
+                if (cmdLine.getParameter(0).equals("")) {
+                    instruments = ctrl.getAllInstruments();
+                } else {
+                    instruments = ctrl.getInstrumentsForType(cmdLine.getParameter(0));
+                }
+                renderer.render(instruments, INSTRUMENT_COLUMNS, OutputFormat.of(cmdLine), out);
+                break;
+            case TERMINATE:
+                // parameter: rental_agreement_id
+                out.println(ctrl.terminate(cmdLine.getParameter(0), requestKey(cmdLine)));
+                break;
+            case BOOK:
+                // first parameter is the lesson id, the rest are students personal numbers
+                out.println(ctrl.book(cmdLine.getParameter(0), cmdLine.getParameters(1)));
+                break;
+            case SEATS:
+                // parameters: instrument, level, optional first date
+                List<? extends LessonDTO> lessons = ctrl.getLessonsWithOpenSeats(
+                        cmdLine.getParameter(0), cmdLine.getParameter(1), cmdLine.getParameter(2));
+                renderer.render(lessons, LESSON_COLUMNS, OutputFormat.of(cmdLine), out);
+                break;
+            case METRICS:
+                renderer.render(List.copyOf(ctrl.getMetrics().entrySet()), METRIC_COLUMNS, OutputFormat.of(cmdLine), out);
+                break;
+            case STATS:
+                printStatistics(cmdLine, out);
+                break;
+            case REMINDERS:
+                // optional parameter: "run" to create reminders now, or the date the reminders were created
+                String reminderParam = cmdLine.getParameter(0);
+                if ("run".equals(reminderParam)) {
+                    out.println("Created " + ctrl.createOverdueReminders() + " reminders");
+                } else {
+                    LocalDate createdOn = reminderParam.equals("") ? LocalDate.now() : LocalDate.parse(reminderParam);
+                    renderer.render(ctrl.getOverdueRentals(createdOn), REMINDER_COLUMNS, OutputFormat.of(cmdLine), out);
+                }
+                break;
+            case WAITLIST:
+                printWaitlist(cmdLine, out);
+                break;
+            case HEALTH:
+                renderer.render(ctrl.getDatabaseHealth(), HEALTH_COLUMNS, OutputFormat.of(cmdLine), out);
+                break;
+            case FREE:
+                // parameters: instructors personal number, date, time
+                if (cmdLine.getParameter(2) == null) {
+                    out.println("usage: free <pn> <yyyy-mm-dd> <hh:mm>");
+                } else {
+                    LocalDateTime start = LocalDateTime.of(LocalDate.parse(cmdLine.getParameter(1)), LocalTime.parse(cmdLine.getParameter(2)));
+                    out.println(ctrl.checkInstructorFree(cmdLine.getParameter(0), start));
+                }
+                break;
+            case CONFLICTS:
+                // optional parameters: first date, last date. Default is the current term
+                LocalDate conflictsFrom = cmdLine.getParameter(0).equals("") ? null : LocalDate.parse(cmdLine.getParameter(0));
+                LocalDate conflictsTo = cmdLine.getParameter(1) == null ? null : LocalDate.parse(cmdLine.getParameter(1));
+                renderer.render(ctrl.getScheduleConflicts(conflictsFrom, conflictsTo), CONFLICT_COLUMNS, OutputFormat.of(cmdLine), out);
+                break;
+            case FIND_INSTRUCTOR:
+                // parameters: instrument, start and end of the period (yyyy-mm-ddThh:mm)
+                if (cmdLine.getParameter(2) == null) {
+                    out.println("usage: find-instructor <instrument> <yyyy-mm-ddThh:mm> <yyyy-mm-ddThh:mm>");
+                } else {
+                    List<? extends InstructorDTO> instructors = ctrl.findFreeInstructors(cmdLine.getParameter(0),
+                            LocalDateTime.parse(cmdLine.getParameter(1)), LocalDateTime.parse(cmdLine.getParameter(2)));
+                    renderer.render(instructors, INSTRUCTOR_COLUMNS, OutputFormat.of(cmdLine), out);
+                }
+                break;
+            case OVERVIEW:
+                // parameters: one or more students personal numbers
+                renderer.render(ctrl.getStudentOverviews(cmdLine.getParameters(0)), OVERVIEW_COLUMNS, OutputFormat.of(cmdLine), out);
+                break;
+            case ROSTER:
+                renderer.render(ctrl.getLessonRoster(cmdLine.getParameter(0)), OVERVIEW_COLUMNS, OutputFormat.of(cmdLine), out);
+                break;
+            default:
+                out.println("illegal command");
+        }
+    }
+
+    /**
+     * @return The value of <code>--key</code>, or <code>null</code> if no key was given.
+     */
+    static String requestKey(CmdLine cmdLine) {
+        String key = cmdLine.getOptionValue("key");
+        return key == null || key.isEmpty() ? null : key;
+    }
+
+    private void printWaitlist(CmdLine cmdLine, PrintWriter out) throws Exception {
+        String action = cmdLine.getParameter(0);
+        if ("join".equals(action) && cmdLine.getParameter(2) != null) {
+            // parameters: students personal number, instrument type
+            out.println(ctrl.joinWaitlist(cmdLine.getParameter(1), cmdLine.getParameter(2)));
+        } else if ("leave".equals(action) && cmdLine.getParameter(2) != null) {
+            out.println(ctrl.leaveWaitlist(cmdLine.getParameter(1), cmdLine.getParameter(2)));
+        } else if ("show".equals(action) && cmdLine.getParameter(1) != null) {
+            // optional parameter: number of students to list
+            int maxEntries = cmdLine.getParameter(2) == null ? WAITLIST_DEFAULT_SIZE : Integer.parseInt(cmdLine.getParameter(2));
+            renderer.render(ctrl.getWaitlist(cmdLine.getParameter(1), maxEntries), WAITLIST_COLUMNS, OutputFormat.of(cmdLine), out);
+        } else if ("run".equals(action)) {
+            out.println("Gave " + ctrl.allocateWaitlistedInstruments() + " instruments to waitlisted students");
+        } else {
+            out.println("usage: waitlist join <pn> <instrument> | leave <pn> <instrument> | show <instrument> [<max>] | run");
+        }
+    }
+
+    private void printStatistics(CmdLine cmdLine, PrintWriter out) throws Exception {
+        String report = cmdLine.getParameter(0);
+        if ("revenue".equals(report)) {
+            // parameters: instrument type, year
+            long[] revenue = ctrl.getMonthlyRevenue(cmdLine.getParameter(1), Integer.parseInt(cmdLine.getParameter(2)));
+            List<Column<Month>> revenueColumns = List.of(
+                    Column.text("month", month -> month.toString().toLowerCase()),
+                    Column.number("revenue", month -> revenue[month.ordinal()]));
+            renderer.render(Arrays.asList(Month.values()), revenueColumns, OutputFormat.of(cmdLine), out);
+        } else if ("refresh".equals(report)) {
+            ctrl.refreshRentalStatistics();
+            out.println("Rental statistics rebuilt");
+        } else if ("".equals(report) || "rentals".equals(report)) {
+            // optional parameters: first date, last date. Default is the last twelve months
+            LocalDate to = cmdLine.getParameter(2) == null ? LocalDate.now() : LocalDate.parse(cmdLine.getParameter(2));
+            LocalDate from = cmdLine.getParameter(1) == null ? to.minusYears(1).plusDays(1) : LocalDate.parse(cmdLine.getParameter(1));
+            List<? extends InstrumentTypeStatisticsDTO> statistics = ctrl.getRentalStatistics(from, to);
+            renderer.render(statistics, STATISTICS_COLUMNS, OutputFormat.of(cmdLine), out);
+        } else {
+            out.println("usage: stats [rentals [<from> [<to>]] | revenue <instrument> <year> | refresh]");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.view;
+
+/**
+ * The formats results can be written in. The format is selected by adding <code>--table</code>,
+ * <code>--csv</code> or <code>--json</code> to a command.
+ */
+enum OutputFormat {
+    /**
+     * Columns aligned with spaces, with a header line. This is the default.
+     */
+    TABLE,
+    /**
+     * Comma separated values, with a header line.
+     */
+    CSV,
+    /**
+     * An array with one object per row.
+     */
+    JSON;
+
+    /**
+     * @return The format selected by the options of the specified command, or
+     *         <code>TABLE</code> if no format is selected.
+     */
+    static OutputFormat of(CmdLine cmdLine) {
+        for (OutputFormat format : values()) {
+            if (cmdLine.hasOption(format.toString().toLowerCase())) {
+                return format;
+            }
+        }
+        return TABLE;
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.view;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes rows of a result as a table, CSV or JSON. Values are written directly from the rows to
+ * the writer, without building a string for each row. Numbers are formatted in a buffer that is
+ * reused for all values, which means an instance must not be used by more than one thread at a
+ * time.
+ */
+class ResultRenderer {
+    private static final String COLUMN_SEPARATOR = "  ";
+    private static final String ELEMENT_SEPARATOR = "; ";
+    private static final String PART_SEPARATOR = " ";
+    private static final char[] SPACES = new char[64];
+    private static final char[] DASHES = new char[64];
+
+    static {
+        Arrays.fill(SPACES, ' ');
+        Arrays.fill(DASHES, '-');
+    }
+
+    private final char[] digits = new char[24];
+    private final String lineSeparator = System.lineSeparator();
+
+    /**
+     * Writes the specified rows.
+     *
+     * @param rows    The rows to write.
+     * @param columns The columns of each row to write.
+     * @param format  The format to write the rows in.
+     * @param out     The rows are written here. Should be buffered, this method makes one call to
+     *                the writer for each value.
+     */
+    <T> void render(List<? extends T> rows, List<Column<T>> columns, OutputFormat format, Writer out) throws IOException {
+        switch (format) {
+            case CSV:
+                renderCsv(rows, columns, out);
+                break;
+            case JSON:
+                renderJson(rows, columns, out);
+                break;
+            default:
+                renderTable(rows, columns, out);
+        }
+    }
+
+    private <T> void renderTable(List<? extends T> rows, List<Column<T>> columns, Writer out) throws IOException {
+        int[] widths = new int[columns.size()];
+        for (int col = 0; col < widths.length; col++) {
+            widths[col] = columns.get(col).getName().length();
+        }
+        for (T row : rows) {
+            for (int col = 0; col < widths.length; col++) {
+                widths[col] = Math.max(widths[col], cellLength(row, columns.get(col)));
+            }
+        }
+
+        for (int col = 0; col < widths.length; col++) {
+            Column<T> column = columns.get(col);
+            boolean last = col == widths.length - 1;
+            if (column.isNumeric()) {
+                repeat(SPACES, widths[col] - column.getName().length(), out);
+            }
+            out.write(column.getName());
+            if (!column.isNumeric() && !last) {
+                repeat(SPACES, widths[col] - column.getName().length(), out);
+            }
+            out.write(last ? lineSeparator : COLUMN_SEPARATOR);
+        }
+        for (int col = 0; col < widths.length; col++) {
+            repeat(DASHES, widths[col], out);
+            out.write(col == widths.length - 1 ? lineSeparator : COLUMN_SEPARATOR);
+        }
+        for (T row : rows) {
+            for (int col = 0; col < widths.length; col++) {
+                Column<T> column = columns.get(col);
+                boolean last = col == widths.length - 1;
+                if (column.isNumeric()) {
+                    int start = formatNumber(column.scaledNumber(row), column.getDecimals());
+                    repeat(SPACES, widths[col] - (digits.length - start), out);
+                    out.write(digits, start, digits.length - start);
+                } else if (column.isList()) {
+                    writeList(row, column, Writer::write, out);
+                    if (!last) {
+                        repeat(SPACES, widths[col] - listLength(row, column), out);
+                    }
+                } else {
+                    String value = column.text(row);
+                    if (value != null) {
+                        out.write(value);
+                    }
+                    if (!last) {
+                        repeat(SPACES, widths[col] - (value == null ? 0 : value.length()), out);
+                    }
+                }
+                out.write(last ? lineSeparator : COLUMN_SEPARATOR);
+            }
+        }
+    }
+
+    private <T> void renderCsv(List<? extends T> rows, List<Column<T>> columns, Writer out) throws IOException {
+        for (int col = 0; col < columns.size(); col++) {
+            if (col > 0) {
+                out.write(',');
+            }
+            writeCsvValue(columns.get(col).getName(), out);
+        }
+        out.write(lineSeparator);
+        for (T row : rows) {
+            for (int col = 0; col < columns.size(); col++) {
+                if (col > 0) {
+                    out.write(',');
+                }
+                Column<T> column = columns.get(col);
+                if (column.isNumeric()) {
+                    writeNumber(column.scaledNumber(row), column.getDecimals(), out);
+                } else if (column.isList()) {
+                    writeCsvList(row, column, out);
+                } else {
+                    writeCsvValue(column.text(row), out);
+                }
+            }
+            out.write(lineSeparator);
+        }
+    }
+
+    private <T> void renderJson(List<? extends T> rows, List<Column<T>> columns, Writer out) throws IOException {
+        out.write('[');
+        boolean firstRow = true;
+        for (T row : rows) {
+            out.write(firstRow ? lineSeparator : "," + lineSeparator);
+            firstRow = false;
+            out.write("  {");
+            for (int col = 0; col < columns.size(); col++) {
+                Column<T> column = columns.get(col);
+                if (col > 0) {
+                    out.write(", ");
+                }
+                writeJsonString(column.getName(), out);
+                out.write(": ");
+                if (column.isNumeric()) {
+                    writeNumber(column.scaledNumber(row), column.getDecimals(), out);
+                } else if (column.isList()) {
+                    out.write('"');
+                    writeList(row, column, ResultRenderer::writeJsonChars, out);
+                    out.write('"');
+                } else {
+                    writeJsonString(column.text(row), out);
+                }
+            }
+            out.write('}');
+        }
+        out.write(firstRow ? "]" : lineSeparator + "]");
+        out.write(lineSeparator);
+    }
+
+    private <T> int cellLength(T row, Column<T> column) {
+        if (column.isNumeric()) {
+            return digits.length - formatNumber(column.scaledNumber(row), column.getDecimals());
+        }
+        if (column.isList()) {
+            return listLength(row, column);
+        }
+        String value = column.text(row);
+        return value == null ? 0 : value.length();
+    }
+
+    private <T> int listLength(T row, Column<T> column) {
+        List<?> elements = column.elements(row);
+        int length = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            length += i > 0 ? ELEMENT_SEPARATOR.length() : 0;
+            for (int part = 0; part < column.getNofParts(); part++) {
+                String value = column.part(elements.get(i), part);
+                length += (part > 0 ? PART_SEPARATOR.length() : 0) + (value == null ? 0 : value.length());
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the parts of all elements of a list column, and the separators between them, with the
+     * specified writer.
+     */
+    private <T> void writeList(T row, Column<T> column, ValueWriter valueWriter, Writer out) throws IOException {
+        List<?> elements = column.elements(row);
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) {
+                valueWriter.write(out, ELEMENT_SEPARATOR);
+            }
+            for (int part = 0; part < column.getNofParts(); part++) {
+                if (part > 0) {
+                    valueWriter.write(out, PART_SEPARATOR);
+                }
+                String value = column.part(elements.get(i), part);
+                if (value != null) {
+                    valueWriter.write(out, value);
+                }
+            }
+        }
+    }
+
+    private void writeNumber(long scaledValue, int decimals, Writer out) throws IOException {
+        int start = formatNumber(scaledValue, decimals);
+        out.write(digits, start, digits.length - start);
+    }
+
+    /**
+     * Formats the specified number at the end of <code>digits</code>.
+     *
+     * @return The index of the first character of the formatted number.
+     */
+    private int formatNumber(long scaledValue, int decimals) {
+        boolean negative = scaledValue < 0;
+        long remaining = Math.abs(scaledValue);
+        int pos = digits.length;
+        int written = 0;
+        do {
+            if (decimals > 0 && written == decimals) {
+                digits[--pos] = '.';
+            }
+            digits[--pos] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+            written++;
+        } while (remaining > 0 || written <= decimals);
+        if (negative) {
+            digits[--pos] = '-';
+        }
+        return pos;
+    }
+
+    private void writeCsvValue(String value, Writer out) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (!needsCsvQuotes(value)) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        writeCsvQuotedChars(out, value);
+        out.write('"');
+    }
+
+    private <T> void writeCsvList(T row, Column<T> column, Writer out) throws IOException {
+        boolean quote = false;
+        List<?> elements = column.elements(row);
+        for (int i = 0; i < elements.size() && !quote; i++) {
+            for (int part = 0; part < column.getNofParts() && !quote; part++) {
+                String value = column.part(elements.get(i), part);
+                quote = value != null && needsCsvQuotes(value);
+            }
+        }
+        if (!quote) {
+            writeList(row, column, Writer::write, out);
+            return;
+        }
+        out.write('"');
+        writeList(row, column, ResultRenderer::writeCsvQuotedChars, out);
+        out.write('"');
+    }
+
+    private static boolean needsCsvQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the characters of a quoted CSV value, without the surrounding quotes.
+     */
+    private static void writeCsvQuotedChars(Writer out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+    }
+
+    private void writeJsonString(String value, Writer out) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        writeJsonChars(out, value);
+        out.write('"');
+    }
+
+    /**
+     * Writes the characters of a JSON string, escaped but without the surrounding quotes.
+     */
+    private static void writeJsonChars(Writer out, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+    }
+
+    private void repeat(char[] chars, int count, Writer out) throws IOException {
+        while (count > 0) {
+            int chunk = Math.min(count, chars.length);
+            out.write(chars, 0, chunk);
+            count -= chunk;
+        }
+    }
+
+    /**
+     * Writes a value, or part of a value, to a writer, escaping it as required by the format.
+     */
+    private interface ValueWriter {
+        void write(Writer out, String value) throws IOException;
+    }
+}
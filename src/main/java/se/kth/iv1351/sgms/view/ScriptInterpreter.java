@@ -0,0 +1,292 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.view;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import se.kth.iv1351.sgms.controller.Controller;
+import se.kth.iv1351.sgms.model.RejectedException;
+
+/**
+ * Interprets a script of commands, one command per line, without user interaction. All lines
+ * are parsed before anything is executed. Consecutive <code>rent</code> commands, and
+ * consecutive <code>terminate</code> commands, are executed in one transaction, unless they
+ * have a request key. Consecutive commands that only read are executed concurrently, in separate
+ * sessions. A command that writes is never executed concurrently with any other command, and
+ * does not start until all commands before it are finished.
+ * <p>
+ * The result of each command is written in the same order as the commands appear in the
+ * script, preceded by the line number, the status of the command (<code>ok</code>,
+ * <code>rejected</code> or <code>failed</code>) and the command itself. Last, the number of
+ * executed commands and the throughput is written. Empty lines and lines starting with
+ * <code>#</code> are ignored, and the script ends at the first <code>quit</code> command.
+ */
+public class ScriptInterpreter {
+    private static final String COMMENT = "#";
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("sgms.script.batchSize", 50);
+    private static final int NOF_READERS = Integer.getInteger("sgms.script.readers", 4);
+
+    private final CommandExecutor writer;
+    private final BufferedReader script;
+    private final PrintWriter out;
+    private final List<ScriptLine> lines = new ArrayList<>();
+    private int nextLineToPrint = 0;
+    private int nofTransactions = 0;
+
+    /**
+     * Creates a new instance that will read the specified script, and write the results to the
+     * specified writer.
+     *
+     * @param ctrl   All commands that write are performed by this controller. Commands that only
+     *               read are performed by sessions opened from this controller.
+     * @param script The script to interpret.
+     * @param out    The results are written here. Should be buffered, it is flushed only after
+     *               each group of commands and when the script is finished.
+     */
+    public ScriptInterpreter(Controller ctrl, BufferedReader script, PrintWriter out) {
+        this.writer = new CommandExecutor(ctrl);
+        this.script = script;
+        this.out = out;
+    }
+
+    /**
+     * Interprets and performs all commands in the script.
+     *
+     * @return The number of commands that were rejected or failed.
+     * @throws IOException If the script could not be read.
+     */
+    public int run() throws IOException {
+        readScript();
+        long startNanos = System.nanoTime();
+        ExecutorService readerThreads = Executors.newFixedThreadPool(NOF_READERS);
+        BlockingQueue<CommandExecutor> readers = new ArrayBlockingQueue<>(NOF_READERS);
+        for (int i = 0; i < NOF_READERS; i++) {
+            readers.add(new CommandExecutor(writer.getController().openSession()));
+        }
+        try {
+            List<CompletableFuture<Void>> ongoingReads = new ArrayList<>();
+            int next = 0;
+            while (next < lines.size()) {
+                ScriptLine line = lines.get(next);
+                if (!isWrite(line.cmdLine)) {
+                    ongoingReads.add(CompletableFuture.runAsync(() -> executeInSession(line, readers), readerThreads));
+                    next++;
+                    continue;
+                }
+                awaitAndPrint(ongoingReads);
+                int end = endOfBatch(next);
+                if (end - next > 1) {
+                    executeBatch(lines.subList(next, end));
+                } else {
+                    execute(line, writer);
+                }
+                next = end;
+                printFinishedLines();
+            }
+            awaitAndPrint(ongoingReads);
+        } finally {
+            readerThreads.shutdown();
+            for (CommandExecutor reader : readers) {
+                reader.getController().close();
+            }
+        }
+        return printSummary(System.nanoTime() - startNanos);
+    }
+
+    private void readScript() throws IOException {
+        int lineNumber = 0;
+        String line;
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.trim().startsWith(COMMENT)) {
+                continue;
+            }
+            CmdLine cmdLine = new CmdLine(line);
+            if (cmdLine.getCmd() == Command.QUIT) {
+                return;
+            }
+            lines.add(new ScriptLine(lineNumber, cmdLine));
+        }
+    }
+
+    private boolean isWrite(CmdLine cmdLine) {
+        return cmdLine.getCmd().isWrite(cmdLine);
+    }
+
+    private int endOfBatch(int first) {
+        Command cmd = lines.get(first).cmdLine.getCmd();
+        if (!isBatchable(lines.get(first).cmdLine)) {
+            return first + 1;
+        }
+        int end = first + 1;
+        while (end < lines.size() && end - first < MAX_BATCH_SIZE && lines.get(end).cmdLine.getCmd() == cmd
+               && isBatchable(lines.get(end).cmdLine)) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Commands with a request key are executed one by one, since batches do not store keys.
+     */
+    private boolean isBatchable(CmdLine cmdLine) {
+        Command cmd = cmdLine.getCmd();
+        return (cmd == Command.RENT || cmd == Command.TERMINATE) && CommandExecutor.requestKey(cmdLine) == null;
+    }
+
+    private void executeBatch(List<ScriptLine> batch) {
+        Controller ctrl = writer.getController();
+        List<String> firstParams = new ArrayList<>();
+        List<String> secondParams = new ArrayList<>();
+        for (ScriptLine line : batch) {
+            firstParams.add(line.cmdLine.getParameter(0));
+            secondParams.add(line.cmdLine.getParameter(1));
+        }
+        List<String> outcomes;
+        try {
+            if (batch.get(0).cmdLine.getCmd() == Command.RENT) {
+                outcomes = ctrl.rentAll(firstParams, secondParams);
+            } else {
+                outcomes = ctrl.terminateAll(firstParams);
+            }
+        } catch (Exception batchFailed) {
+            // Nothing was committed, find out which command failed by executing them one by one.
+            for (ScriptLine line : batch) {
+                execute(line, writer);
+            }
+            return;
+        }
+        nofTransactions++;
+        for (int i = 0; i < batch.size(); i++) {
+            ScriptLine line = batch.get(i);
+            if (outcomes.get(i) == null) {
+                // Not in this client's branch, terminate alone, in the branch that has it.
+                execute(line, writer);
+                continue;
+            }
+            line.result.println(outcomes.get(i));
+            line.status = Status.OK;
+        }
+    }
+
+    private void executeInSession(ScriptLine line, BlockingQueue<CommandExecutor> readers) {
+        CommandExecutor reader = readers.remove();
+        try {
+            execute(line, reader);
+        } finally {
+            readers.add(reader);
+        }
+    }
+
+    private void execute(ScriptLine line, CommandExecutor executor) {
+        if (line.cmdLine.getCmd() == Command.ILLEGAL_COMMAND) {
+            line.result.println("illegal command");
+            line.status = Status.FAILED;
+            return;
+        }
+        try {
+            executor.execute(line.cmdLine, line.result);
+            line.status = Status.OK;
+        } catch (RejectedException re) {
+            line.result.println(re.getMessage());
+            line.status = Status.REJECTED;
+        } catch (Exception e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                line.result.println(cause.getMessage());
+            }
+            line.status = Status.FAILED;
+        }
+        if (isWrite(line.cmdLine)) {
+            nofTransactions++;
+        }
+    }
+
+    private void awaitAndPrint(List<CompletableFuture<Void>> ongoingReads) {
+        CompletableFuture.allOf(ongoingReads.toArray(new CompletableFuture<?>[0])).join();
+        ongoingReads.clear();
+        printFinishedLines();
+    }
+
+    private void printFinishedLines() {
+        while (nextLineToPrint < lines.size() && lines.get(nextLineToPrint).status != null) {
+            ScriptLine line = lines.get(nextLineToPrint++);
+            out.println(line.lineNumber + " " + line.status.toString().toLowerCase() + " " +
+                        line.cmdLine.getUserInput().trim());
+            out.print(line.output);
+        }
+        out.flush();
+    }
+
+    private int printSummary(long elapsedNanos) {
+        int nofOk = 0;
+        int nofRejected = 0;
+        int nofFailed = 0;
+        for (ScriptLine line : lines) {
+            switch (line.status) {
+                case OK:
+                    nofOk++;
+                    break;
+                case REJECTED:
+                    nofRejected++;
+                    break;
+                default:
+                    nofFailed++;
+            }
+        }
+        double elapsedMillis = elapsedNanos / 1_000_000.0;
+        double commandsPerSecond = lines.size() / Math.max(elapsedMillis / 1000, 1e-9);
+        out.println(String.format("%d commands in %.0f ms, %.1f commands/s, %d write transactions: %d ok, %d rejected, %d failed",
+                                  lines.size(), elapsedMillis, commandsPerSecond, nofTransactions, nofOk, nofRejected, nofFailed));
+        out.flush();
+        return nofRejected + nofFailed;
+    }
+
+    private enum Status {
+        OK, REJECTED, FAILED
+    }
+
+    private static class ScriptLine {
+        private final int lineNumber;
+        private final CmdLine cmdLine;
+        private final StringWriter output = new StringWriter();
+        private final PrintWriter result = new PrintWriter(output);
+        private volatile Status status;
+
+        private ScriptLine(int lineNumber, CmdLine cmdLine) {
+            this.lineNumber = lineNumber;
+            this.cmdLine = cmdLine;
+        }
+    }
+}
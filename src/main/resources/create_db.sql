@@ -55,12 +55,15 @@ ALTER TABLE additional_contact_person
 ADD CONSTRAINT PK_additional_contact_person PRIMARY KEY (student_id);
 
 CREATE TABLE ensemble (
-    ensemble_id uuid DEFAULT uuid_generate_v4 () NOT NULL, min_no_of_students INT NOT NULL, max_no_of_students INT NOT NULL, genre VARCHAR(100) NOT NULL, time TIME NOT NULL, date DATE NOT NULL, instructor_id UUID NOT NULL, pricing_schema_id UUID NOT NULL, compensation_schema_id UUID NOT NULL
+    ensemble_id uuid DEFAULT uuid_generate_v4 () NOT NULL, min_no_of_students INT NOT NULL, max_no_of_students INT NOT NULL, no_of_booked_students INT DEFAULT 0 NOT NULL, genre VARCHAR(100) NOT NULL, time TIME NOT NULL, date DATE NOT NULL, instructor_id UUID NOT NULL, pricing_schema_id UUID NOT NULL, compensation_schema_id UUID NOT NULL
 );
 
 ALTER TABLE ensemble
 ADD CONSTRAINT PK_ensemble PRIMARY KEY (ensemble_id);
 
+ALTER TABLE ensemble
+ADD CONSTRAINT CHK_ensemble_seats CHECK (no_of_booked_students BETWEEN 0 AND max_no_of_students);
+
 CREATE TABLE ensemble_instrument (
     ensemble_id UUID NOT NULL, instrument_id UUID NOT NULL
 );
@@ -69,12 +72,15 @@ ALTER TABLE ensemble_instrument
 ADD CONSTRAINT PK_ensemble_instrument PRIMARY KEY (ensemble_id, instrument_id);
 
 CREATE TABLE group_lesson (
-    group_lesson_id uuid DEFAULT uuid_generate_v4 () NOT NULL, min_no_of_students INT NOT NULL, max_no_of_students INT NOT NULL, time TIME NOT NULL, date DATE NOT NULL, instructor_id UUID NOT NULL, pricing_schema_id UUID NOT NULL, compensation_schema_id UUID NOT NULL, level_id UUID NOT NULL, instrument_id UUID NOT NULL
+    group_lesson_id uuid DEFAULT uuid_generate_v4 () NOT NULL, min_no_of_students INT NOT NULL, max_no_of_students INT NOT NULL, no_of_booked_students INT DEFAULT 0 NOT NULL, time TIME NOT NULL, date DATE NOT NULL, instructor_id UUID NOT NULL, pricing_schema_id UUID NOT NULL, compensation_schema_id UUID NOT NULL, level_id UUID NOT NULL, instrument_id UUID NOT NULL
 );
 
 ALTER TABLE group_lesson
 ADD CONSTRAINT PK_group_lesson PRIMARY KEY (group_lesson_id);
 
+ALTER TABLE group_lesson
+ADD CONSTRAINT CHK_group_lesson_seats CHECK (no_of_booked_students BETWEEN 0 AND max_no_of_students);
+
 CREATE TABLE individual_lesson (
     individual_lesson_id uuid DEFAULT uuid_generate_v4 () NOT NULL, time TIME NOT NULL, date DATE NOT NULL, instructor_id UUID NOT NULL, student_id UUID, pricing_schema_id UUID NOT NULL, compensation_schema_id UUID NOT NULL, level_id UUID, instrument_id UUID
 );
@@ -214,6 +220,199 @@ ALTER TABLE student_group_lesson
 ADD CONSTRAINT FK_student_group_lesson_1 FOREIGN KEY (student_id) REFERENCES student (student_id) ON
 DELETE CASCADE;
 
+-- lessons with open seats, only rows that can still be booked are indexed
+CREATE INDEX IDX_group_lesson_open_seats ON group_lesson (instrument_id, level_id, date)
+WHERE no_of_booked_students < max_no_of_students;
+
+CREATE INDEX IDX_ensemble_open_seats ON ensemble (date)
+WHERE no_of_booked_students < max_no_of_students;
+
+-- active rentals by date rented, the overdue rental job scans a range of this index
+CREATE INDEX IDX_rental_agreement_active ON rental_agreement (date_rented)
+WHERE date_returned IS NULL;
+
+-- reminders about rentals kept longer than the rental term
+CREATE TABLE rental_reminder (
+ rental_agreement_id UUID NOT NULL,
+ overdue_since DATE NOT NULL,
+ date_created DATE NOT NULL
+);
+
+ALTER TABLE rental_reminder ADD CONSTRAINT PK_rental_reminder PRIMARY KEY (rental_agreement_id, overdue_since);
+
+ALTER TABLE rental_reminder ADD CONSTRAINT FK_rental_reminder_0 FOREIGN KEY (rental_agreement_id) REFERENCES rental_agreement (rental_agreement_id) ON
+DELETE CASCADE;
+
+CREATE INDEX IDX_rental_reminder_date_created ON rental_reminder (date_created);
+
+-- active rentals by instrument, used to tell if an instrument is available
+CREATE INDEX IDX_rental_agreement_active_instrument ON rental_agreement (rental_instrument_id)
+WHERE date_returned IS NULL;
+
+-- one row per rental instrument with its current fee and whether it is available for rent,
+-- maintained by the triggers below so that listing instruments does not read the rental history
+CREATE TABLE instrument_availability (
+ rental_instrument_id UUID NOT NULL,
+ instrument VARCHAR(100) NOT NULL,
+ brand VARCHAR(100) NOT NULL,
+ category VARCHAR(100) NOT NULL,
+ fee INT,
+ available BOOLEAN NOT NULL
+);
+
+ALTER TABLE instrument_availability ADD CONSTRAINT PK_instrument_availability PRIMARY KEY (rental_instrument_id);
+
+ALTER TABLE instrument_availability ADD CONSTRAINT FK_instrument_availability_0 FOREIGN KEY (rental_instrument_id) REFERENCES rental_instrument (rental_instrument_id) ON
+DELETE CASCADE;
+
+CREATE INDEX IDX_instrument_availability_available ON instrument_availability (instrument COLLATE "C", fee)
+WHERE available;
+
+-- the latest fee that has started, or the first future fee if none has started yet
+CREATE FUNCTION current_instrument_fee(instrument_id UUID) RETURNS INT AS $$
+    SELECT f.fee FROM instrument_fee f WHERE f.rental_instrument_id = instrument_id
+    ORDER BY f.starting_from <= CURRENT_DATE DESC, f.starting_from DESC LIMIT 1
+$$ LANGUAGE SQL STABLE;
+
+-- recomputes the availability row of one instrument. The row is locked first, so that the
+-- computation sees all changes committed by concurrent transactions that changed the same row
+CREATE FUNCTION refresh_instrument_availability(instrument_id UUID) RETURNS VOID AS $$
+BEGIN
+    PERFORM 1 FROM instrument_availability WHERE rental_instrument_id = instrument_id FOR UPDATE;
+    INSERT INTO instrument_availability (rental_instrument_id, instrument, brand, category, fee, available)
+    SELECT ri.rental_instrument_id, ri.instrument, ri.brand, ri.category, current_instrument_fee(ri.rental_instrument_id),
+           NOT EXISTS (SELECT 1 FROM rental_agreement ra WHERE ra.rental_instrument_id = ri.rental_instrument_id AND ra.date_returned IS NULL)
+    FROM rental_instrument ri WHERE ri.rental_instrument_id = instrument_id
+    ON CONFLICT (rental_instrument_id) DO UPDATE SET instrument = EXCLUDED.instrument, brand = EXCLUDED.brand,
+        category = EXCLUDED.category, fee = EXCLUDED.fee, available = EXCLUDED.available;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION instrument_availability_trigger() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM refresh_instrument_availability(NEW.rental_instrument_id);
+    END IF;
+    IF TG_OP = 'DELETE' OR (TG_OP = 'UPDATE' AND OLD.rental_instrument_id IS DISTINCT FROM NEW.rental_instrument_id) THEN
+        PERFORM refresh_instrument_availability(OLD.rental_instrument_id);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER TRG_rental_instrument_availability AFTER INSERT OR UPDATE ON rental_instrument
+FOR EACH ROW EXECUTE FUNCTION instrument_availability_trigger();
+
+CREATE TRIGGER TRG_rental_agreement_availability AFTER INSERT OR UPDATE OF date_returned, rental_instrument_id OR DELETE ON rental_agreement
+FOR EACH ROW EXECUTE FUNCTION instrument_availability_trigger();
+
+CREATE TRIGGER TRG_instrument_fee_availability AFTER INSERT OR UPDATE OR DELETE ON instrument_fee
+FOR EACH ROW EXECUTE FUNCTION instrument_availability_trigger();
+
+-- active rentals by student, used to check the maximum number of rentals
+CREATE INDEX IDX_rental_agreement_active_student ON rental_agreement (student_id)
+WHERE date_returned IS NULL;
+
+-- lessons and siblings by student, used to read the overviews of many students at once
+CREATE INDEX IDX_individual_lesson_student ON individual_lesson (student_id, date);
+
+CREATE INDEX IDX_student_group_lesson_student ON student_group_lesson (student_id);
+
+CREATE INDEX IDX_student_ensemble_student ON student_ensemble (student_id);
+
+CREATE INDEX IDX_sibling_relationship_second_student ON sibling_relationship (second_student_id);
+
+-- students waiting for an instrument type. Students with siblings get a higher priority, within
+-- the same priority students are served in the order they joined
+CREATE TABLE instrument_waitlist (
+ waitlist_no BIGINT GENERATED ALWAYS AS IDENTITY,
+ student_id UUID NOT NULL,
+ instrument VARCHAR(100) NOT NULL,
+ priority INT NOT NULL,
+ date_queued TIMESTAMP DEFAULT now() NOT NULL
+);
+
+ALTER TABLE instrument_waitlist ADD CONSTRAINT PK_instrument_waitlist PRIMARY KEY (waitlist_no);
+
+ALTER TABLE instrument_waitlist ADD CONSTRAINT UQ_instrument_waitlist UNIQUE (student_id, instrument);
+
+ALTER TABLE instrument_waitlist ADD CONSTRAINT FK_instrument_waitlist_0 FOREIGN KEY (student_id) REFERENCES student (student_id) ON
+DELETE CASCADE;
+
+CREATE INDEX IDX_instrument_waitlist_order ON instrument_waitlist (instrument, priority DESC, waitlist_no);
+
+-- the outcome of each rental and termination made with a client request key, so that a retried request is not
+-- executed twice. The outcome is null until the request is finished. Keys are removed when they expire
+CREATE TABLE request_key (
+ operation VARCHAR(20) NOT NULL,
+ request_key VARCHAR(100) NOT NULL,
+ outcome VARCHAR(500),
+ date_created TIMESTAMP DEFAULT now() NOT NULL
+);
+
+ALTER TABLE request_key ADD CONSTRAINT PK_request_key PRIMARY KEY (operation, request_key);
+
+CREATE INDEX IDX_request_key_date_created ON request_key (date_created);
+
+-- one row for each inserted, updated or deleted lesson, ensemble or instructor, and for each
+-- instrument an instructor starts or stops teaching, with the id of the instructor. Used to keep the
+-- schedules held in memory by the clients up to date. txid is the id of the changing transaction,
+-- a client that read the tables with a snapshot whose xmin was x has seen all changes with txid < x
+CREATE TABLE schedule_change (
+ txid BIGINT DEFAULT txid_current() NOT NULL,
+ table_name VARCHAR(100) NOT NULL,
+ row_id UUID NOT NULL,
+ date_changed TIMESTAMP DEFAULT now() NOT NULL
+);
+
+CREATE INDEX IDX_schedule_change_txid ON schedule_change (txid);
+
+CREATE INDEX IDX_schedule_change_date_changed ON schedule_change (date_changed);
+
+-- TG_ARGV[0] is the name of the column identifying the changed row, an update that changes the
+-- column records both the old and the new value
+CREATE FUNCTION schedule_change_trigger() RETURNS TRIGGER AS $$
+DECLARE
+    old_id UUID;
+    new_id UUID;
+BEGIN
+    IF TG_OP <> 'INSERT' THEN
+        old_id := (to_jsonb(OLD) ->> TG_ARGV[0])::UUID;
+        INSERT INTO schedule_change (table_name, row_id) VALUES (TG_TABLE_NAME, old_id);
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        new_id := (to_jsonb(NEW) ->> TG_ARGV[0])::UUID;
+        IF new_id IS DISTINCT FROM old_id THEN
+            INSERT INTO schedule_change (table_name, row_id) VALUES (TG_TABLE_NAME, new_id);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER TRG_individual_lesson_schedule AFTER INSERT OR UPDATE OR DELETE ON individual_lesson
+FOR EACH ROW EXECUTE FUNCTION schedule_change_trigger('individual_lesson_id');
+
+CREATE TRIGGER TRG_group_lesson_schedule AFTER INSERT OR UPDATE OF date, time, instructor_id OR DELETE ON group_lesson
+FOR EACH ROW EXECUTE FUNCTION schedule_change_trigger('group_lesson_id');
+
+CREATE TRIGGER TRG_ensemble_schedule AFTER INSERT OR UPDATE OF date, time, instructor_id OR DELETE ON ensemble
+FOR EACH ROW EXECUTE FUNCTION schedule_change_trigger('ensemble_id');
+
+CREATE TRIGGER TRG_instructor_schedule AFTER INSERT OR UPDATE OR DELETE ON instructor
+FOR EACH ROW EXECUTE FUNCTION schedule_change_trigger('instructor_id');
+
+CREATE TRIGGER TRG_instructor_instrument_schedule AFTER INSERT OR UPDATE OR DELETE ON instructor_instrument
+FOR EACH ROW EXECUTE FUNCTION schedule_change_trigger('instructor_id');
+
+-- how far each scheduled job has come, null if it has never run
+CREATE TABLE scheduled_job (
+ job VARCHAR(100) NOT NULL,
+ scanned_until DATE
+);
+
+ALTER TABLE scheduled_job ADD CONSTRAINT PK_scheduled_job PRIMARY KEY (job);
+
 -- historic data
 CREATE TABLE last_backup (
  last_backup_id uuid DEFAULT uuid_generate_v4() NOT NULL,
@@ -0,0 +1,195 @@
+-- The tables of create_db.sql for MySQL 8.0.16 or later. UUIDs are stored as BINARY(16) with the
+-- time fields first, UUID_TO_BIN(UUID(), 1), so that new rows are appended to the primary key index
+-- instead of being spread over it. instrument_availability, the waitlist and the schedule change log
+-- are PostgreSQL only, see MySqlDialect.
+
+CREATE TABLE compensation_schema (
+    compensation_schema_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, base_compensation FLOAT NOT NULL, individual_lesson_quanitifier FLOAT NOT NULL, group_lesson_quantifier FLOAT NOT NULL, ensemble_quantifier FLOAT NOT NULL, beginner_quantifier FLOAT NOT NULL, intermediate_quantifier FLOAT NOT NULL, advanced_quantifier FLOAT NOT NULL,
+    CONSTRAINT PK_compensation_schema PRIMARY KEY (compensation_schema_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE instructor (
+    instructor_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, personal_number VARCHAR(12) NOT NULL UNIQUE, name VARCHAR(100) NOT NULL, phone VARCHAR(100) NOT NULL, email VARCHAR(100) NOT NULL, address_line VARCHAR(100) NOT NULL, zip VARCHAR(100) NOT NULL, city VARCHAR(100) NOT NULL,
+    CONSTRAINT PK_instructor PRIMARY KEY (instructor_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE instrument (
+    instrument_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, instrument VARCHAR(100) NOT NULL,
+    CONSTRAINT PK_instrument PRIMARY KEY (instrument_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE level (
+    level_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, level VARCHAR(100) UNIQUE,
+    CONSTRAINT PK_level PRIMARY KEY (level_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE pricing_schema (
+    pricing_schema_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, base_price FLOAT NOT NULL, individual_lesson_quanitifier FLOAT NOT NULL, group_lesson_quantifier FLOAT NOT NULL, ensemble_quantifier FLOAT NOT NULL, beginner_quantifier FLOAT NOT NULL, intermediate_quantifier FLOAT NOT NULL, advanced_quantifier FLOAT NOT NULL, discount_percentage FLOAT NOT NULL,
+    CONSTRAINT PK_pricing_schema PRIMARY KEY (pricing_schema_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+-- instrument types are compared and sorted by code point, as with the "C" collation in PostgreSQL
+CREATE TABLE rental_instrument (
+    rental_instrument_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, instrument VARCHAR(100) COLLATE utf8mb4_bin NOT NULL, brand VARCHAR(100) NOT NULL, category VARCHAR(100) NOT NULL,
+    CONSTRAINT PK_rental_instrument PRIMARY KEY (rental_instrument_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE INDEX IDX_rental_instrument_instrument ON rental_instrument (instrument);
+
+CREATE TABLE student (
+    student_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, personal_number VARCHAR(12) NOT NULL UNIQUE, name VARCHAR(100) NOT NULL, phone VARCHAR(100) NOT NULL, email VARCHAR(100) NOT NULL, address_line VARCHAR(100) NOT NULL, zip VARCHAR(100) NOT NULL, city VARCHAR(100) NOT NULL,
+    CONSTRAINT PK_student PRIMARY KEY (student_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE additional_contact_person (
+    student_id BINARY(16) NOT NULL, name VARCHAR(100) NOT NULL, phone VARCHAR(100) NOT NULL, email VARCHAR(100) NOT NULL,
+    CONSTRAINT PK_additional_contact_person PRIMARY KEY (student_id),
+    CONSTRAINT FK_additional_contact_person_0 FOREIGN KEY (student_id) REFERENCES student (student_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE ensemble (
+    ensemble_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, min_no_of_students INT NOT NULL, max_no_of_students INT NOT NULL, no_of_booked_students INT DEFAULT 0 NOT NULL, genre VARCHAR(100) NOT NULL, time TIME NOT NULL, date DATE NOT NULL, instructor_id BINARY(16) NOT NULL, pricing_schema_id BINARY(16) NOT NULL, compensation_schema_id BINARY(16) NOT NULL,
+    CONSTRAINT PK_ensemble PRIMARY KEY (ensemble_id),
+    CONSTRAINT CHK_ensemble_seats CHECK (no_of_booked_students BETWEEN 0 AND max_no_of_students),
+    CONSTRAINT FK_ensemble_0 FOREIGN KEY (instructor_id) REFERENCES instructor (instructor_id),
+    CONSTRAINT FK_ensemble_1 FOREIGN KEY (pricing_schema_id) REFERENCES pricing_schema (pricing_schema_id),
+    CONSTRAINT FK_ensemble_2 FOREIGN KEY (compensation_schema_id) REFERENCES compensation_schema (compensation_schema_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE INDEX IDX_ensemble_date ON ensemble (date);
+
+CREATE TABLE ensemble_instrument (
+    ensemble_id BINARY(16) NOT NULL, instrument_id BINARY(16) NOT NULL,
+    CONSTRAINT PK_ensemble_instrument PRIMARY KEY (ensemble_id, instrument_id),
+    CONSTRAINT FK_ensemble_instrument_0 FOREIGN KEY (ensemble_id) REFERENCES ensemble (ensemble_id),
+    CONSTRAINT FK_ensemble_instrument_1 FOREIGN KEY (instrument_id) REFERENCES instrument (instrument_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE group_lesson (
+    group_lesson_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, min_no_of_students INT NOT NULL, max_no_of_students INT NOT NULL, no_of_booked_students INT DEFAULT 0 NOT NULL, time TIME NOT NULL, date DATE NOT NULL, instructor_id BINARY(16) NOT NULL, pricing_schema_id BINARY(16) NOT NULL, compensation_schema_id BINARY(16) NOT NULL, level_id BINARY(16) NOT NULL, instrument_id BINARY(16) NOT NULL,
+    CONSTRAINT PK_group_lesson PRIMARY KEY (group_lesson_id),
+    CONSTRAINT CHK_group_lesson_seats CHECK (no_of_booked_students BETWEEN 0 AND max_no_of_students),
+    CONSTRAINT FK_group_lesson_0 FOREIGN KEY (instructor_id) REFERENCES instructor (instructor_id),
+    CONSTRAINT FK_group_lesson_1 FOREIGN KEY (pricing_schema_id) REFERENCES pricing_schema (pricing_schema_id),
+    CONSTRAINT FK_group_lesson_2 FOREIGN KEY (compensation_schema_id) REFERENCES compensation_schema (compensation_schema_id),
+    CONSTRAINT FK_group_lesson_3 FOREIGN KEY (level_id) REFERENCES level (level_id),
+    CONSTRAINT FK_group_lesson_4 FOREIGN KEY (instrument_id) REFERENCES instrument (instrument_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+-- lessons by instrument, level and date, used to find lessons with open seats
+CREATE INDEX IDX_group_lesson_instrument_level_date ON group_lesson (instrument_id, level_id, date);
+
+CREATE TABLE individual_lesson (
+    individual_lesson_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, time TIME NOT NULL, date DATE NOT NULL, instructor_id BINARY(16) NOT NULL, student_id BINARY(16), pricing_schema_id BINARY(16) NOT NULL, compensation_schema_id BINARY(16) NOT NULL, level_id BINARY(16), instrument_id BINARY(16),
+    CONSTRAINT PK_individual_lesson PRIMARY KEY (individual_lesson_id),
+    CONSTRAINT FK_individual_lesson_0 FOREIGN KEY (instructor_id) REFERENCES instructor (instructor_id),
+    CONSTRAINT FK_individual_lesson_1 FOREIGN KEY (student_id) REFERENCES student (student_id),
+    CONSTRAINT FK_individual_lesson_2 FOREIGN KEY (pricing_schema_id) REFERENCES pricing_schema (pricing_schema_id),
+    CONSTRAINT FK_individual_lesson_3 FOREIGN KEY (compensation_schema_id) REFERENCES compensation_schema (compensation_schema_id),
+    CONSTRAINT FK_individual_lesson_4 FOREIGN KEY (level_id) REFERENCES level (level_id),
+    CONSTRAINT FK_individual_lesson_5 FOREIGN KEY (instrument_id) REFERENCES instrument (instrument_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE instructor_instrument (
+    instrument_id BINARY(16) NOT NULL, instructor_id BINARY(16) NOT NULL,
+    CONSTRAINT PK_instructor_instrument PRIMARY KEY (instrument_id, instructor_id),
+    CONSTRAINT FK_instructor_instrument_0 FOREIGN KEY (instrument_id) REFERENCES instrument (instrument_id) ON DELETE CASCADE,
+    CONSTRAINT FK_instructor_instrument_1 FOREIGN KEY (instructor_id) REFERENCES instructor (instructor_id) ON DELETE CASCADE
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+-- fees of an instrument by start date, the current fee is read from this index
+CREATE TABLE instrument_fee (
+    instrument_fee_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, rental_instrument_id BINARY(16) NOT NULL, fee INT NOT NULL, starting_from DATE NOT NULL,
+    CONSTRAINT PK_instrument_fee PRIMARY KEY (instrument_fee_id),
+    CONSTRAINT FK_instrument_fee_0 FOREIGN KEY (rental_instrument_id) REFERENCES rental_instrument (rental_instrument_id),
+    INDEX IDX_instrument_fee_instrument (rental_instrument_id, starting_from)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+-- MySQL has no partial indexes. Active rentals are found by date_returned IS NULL in the second
+-- column of these indexes: by instrument to tell if an instrument is available, by student to check
+-- the maximum number of rentals, and by date rented for the overdue rental job
+CREATE TABLE rental_agreement (
+    rental_agreement_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL, date_rented DATE NOT NULL, date_returned DATE, student_id BINARY(16) NOT NULL, rental_instrument_id BINARY(16) NOT NULL,
+    CONSTRAINT PK_rental_agreement PRIMARY KEY (rental_agreement_id),
+    CONSTRAINT FK_rental_agreement_0 FOREIGN KEY (student_id) REFERENCES student (student_id),
+    CONSTRAINT FK_rental_agreement_1 FOREIGN KEY (rental_instrument_id) REFERENCES rental_instrument (rental_instrument_id),
+    INDEX IDX_rental_agreement_active_instrument (rental_instrument_id, date_returned),
+    INDEX IDX_rental_agreement_active_student (student_id, date_returned),
+    INDEX IDX_rental_agreement_active (date_returned, date_rented)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE sibling_relationship (
+    first_student_id BINARY(16) NOT NULL, second_student_id BINARY(16) NOT NULL,
+    CONSTRAINT PK_sibling_relationship PRIMARY KEY (first_student_id, second_student_id),
+    CONSTRAINT FK_sibling_relationship_0 FOREIGN KEY (first_student_id) REFERENCES student (student_id),
+    CONSTRAINT FK_sibling_relationship_1 FOREIGN KEY (second_student_id) REFERENCES student (student_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE student_ensemble (
+    ensemble_id BINARY(16) NOT NULL, student_id BINARY(16) NOT NULL,
+    CONSTRAINT PK_student_ensemble PRIMARY KEY (ensemble_id, student_id),
+    CONSTRAINT FK_student_ensemble_0 FOREIGN KEY (ensemble_id) REFERENCES ensemble (ensemble_id) ON DELETE CASCADE,
+    CONSTRAINT FK_student_ensemble_1 FOREIGN KEY (student_id) REFERENCES student (student_id) ON DELETE CASCADE
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE student_group_lesson (
+    group_lesson_id BINARY(16) NOT NULL, student_id BINARY(16) NOT NULL,
+    CONSTRAINT PK_student_group_lesson PRIMARY KEY (group_lesson_id, student_id),
+    CONSTRAINT FK_student_group_lesson_0 FOREIGN KEY (group_lesson_id) REFERENCES group_lesson (group_lesson_id) ON DELETE CASCADE,
+    CONSTRAINT FK_student_group_lesson_1 FOREIGN KEY (student_id) REFERENCES student (student_id) ON DELETE CASCADE
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+-- reminders about rentals kept longer than the rental term
+CREATE TABLE rental_reminder (
+    rental_agreement_id BINARY(16) NOT NULL,
+    overdue_since DATE NOT NULL,
+    date_created DATE NOT NULL,
+    CONSTRAINT PK_rental_reminder PRIMARY KEY (rental_agreement_id, overdue_since),
+    CONSTRAINT FK_rental_reminder_0 FOREIGN KEY (rental_agreement_id) REFERENCES rental_agreement (rental_agreement_id) ON DELETE CASCADE,
+    INDEX IDX_rental_reminder_date_created (date_created)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+-- the outcome of each rental and termination made with a client request key
+CREATE TABLE request_key (
+    operation VARCHAR(20) NOT NULL,
+    request_key VARCHAR(100) NOT NULL,
+    outcome VARCHAR(500),
+    date_created TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    CONSTRAINT PK_request_key PRIMARY KEY (operation, request_key),
+    INDEX IDX_request_key_date_created (date_created)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+-- how far each scheduled job has come, null if it has never run
+CREATE TABLE scheduled_job (
+    job VARCHAR(100) NOT NULL,
+    scanned_until DATE,
+    CONSTRAINT PK_scheduled_job PRIMARY KEY (job)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+-- historic data
+CREATE TABLE last_backup (
+    last_backup_id BINARY(16) DEFAULT (UUID_TO_BIN(UUID(), 1)) NOT NULL,
+    date DATE,
+    CONSTRAINT PK_last_backup PRIMARY KEY (last_backup_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE lesson_historic (
+    lesson_id BINARY(16) NOT NULL,
+    time TIME NOT NULL,
+    date DATE NOT NULL,
+    type VARCHAR(100) NOT NULL,
+    genre VARCHAR(100),
+    level VARCHAR(100),
+    instrument VARCHAR(100),
+    last_backup_id BINARY(16) NOT NULL,
+    CONSTRAINT PK_lesson_historic PRIMARY KEY (lesson_id),
+    CONSTRAINT FK_lesson_historic_0 FOREIGN KEY (last_backup_id) REFERENCES last_backup (last_backup_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE student_lesson (
+    student_id BINARY(16) NOT NULL,
+    lesson_id BINARY(16) NOT NULL,
+    price FLOAT NOT NULL,
+    CONSTRAINT PK_student_lesson PRIMARY KEY (student_id, lesson_id),
+    CONSTRAINT FK_student_lesson_0 FOREIGN KEY (lesson_id) REFERENCES lesson_historic (lesson_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
@@ -0,0 +1,19 @@
+-- Synthetic students and instruments for se.kth.iv1351.sgms.loadtest.LoadGenerator. Run after populate_db.sql.
+-- The students get the personal numbers 900000000000 to 900000009999, change both generate_series and
+-- the generator's --students option to use another number of students.
+
+INSERT INTO student (personal_number, name, phone, email, address_line, zip, city)
+SELECT (900000000000 + n)::VARCHAR, 'Load ' || n, '000-000-0000', 'load' || n || '@example.com', 'Synthetic', '00000', 'Loadtest'
+FROM generate_series(0, 9999) AS n
+ON CONFLICT (personal_number) DO NOTHING;
+
+INSERT INTO rental_instrument (instrument, brand, category)
+SELECT (ARRAY['Guitar', 'Piano', 'Violin', 'Drums', 'Flute', 'Saxophone'])[1 + n % 6], 'Load ' || n, 'Loadtest'
+FROM generate_series(0, 1999) AS n
+WHERE NOT EXISTS (SELECT 1 FROM rental_instrument WHERE category = 'Loadtest');
+
+INSERT INTO instrument_fee (rental_instrument_id, fee, starting_from)
+SELECT ri.rental_instrument_id, 100 + (random() * 400)::INT, '2020-01-01'
+FROM rental_instrument ri
+WHERE ri.category = 'Loadtest'
+AND NOT EXISTS (SELECT 1 FROM instrument_fee f WHERE f.rental_instrument_id = ri.rental_instrument_id);
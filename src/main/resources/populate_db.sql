@@ -1,4 +1,4 @@
-TRUNCATE additional_contact_person ,compensation_schema ,ensemble ,ensemble_instrument ,group_lesson ,individual_lesson ,instructor ,instructor_instrument ,instrument ,instrument_fee ,pricing_schema ,rental_agreement ,rental_instrument ,sibling_relationship ,student ,student_ensemble ,student_group_lesson, "level", lesson_historic, student_lesson, last_backup;
+TRUNCATE additional_contact_person ,compensation_schema ,ensemble ,ensemble_instrument ,group_lesson ,individual_lesson ,instructor ,instructor_instrument ,instrument ,instrument_fee ,pricing_schema ,rental_agreement ,rental_instrument ,sibling_relationship ,student ,student_ensemble ,student_group_lesson, "level", lesson_historic, student_lesson, last_backup, rental_reminder, scheduled_job, instrument_availability, instrument_waitlist, request_key, schedule_change;
 
 --DROP VIEW students_with_siblings;
 
@@ -230,5 +230,9 @@ insert into student_group_lesson (group_lesson_id, student_id) values ((SELECT g
 insert into student_group_lesson (group_lesson_id, student_id) values ((SELECT group_lesson_id FROM group_lesson WHERE date = '11/21/2022'), (SELECT student_id FROM student WHERE name = 'William'));
 insert into student_group_lesson (group_lesson_id, student_id) values ((SELECT group_lesson_id FROM group_lesson WHERE date = '11/21/2022'), (SELECT student_id FROM student WHERE name = 'Donald'));
 
+-- seat counters must match the bookings above
+UPDATE group_lesson gl SET no_of_booked_students = (SELECT count(*) FROM student_group_lesson sgl WHERE sgl.group_lesson_id = gl.group_lesson_id);
+UPDATE ensemble e SET no_of_booked_students = (SELECT count(*) FROM student_ensemble se WHERE se.ensemble_id = e.ensemble_id);
+
 INSERT INTO last_backup (date) values ('09/15/2022');
 INSERT INTO last_backup (date) values ('11/15/2022');
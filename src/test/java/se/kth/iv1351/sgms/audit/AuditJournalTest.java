@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import se.kth.iv1351.sgms.integration.Metrics;
+
+class AuditJournalTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    private static void record(AuditJournal journal, String subject) {
+        journal.record(AuditRecord.Operation.RENT, AuditRecord.Outcome.SUCCESS, "clerk", subject, "instrument 1");
+    }
+
+    private static List<String> subjects(Path directory) throws IOException {
+        List<String> subjects = new ArrayList<>();
+        new AuditLogReader(directory).replay(record -> subjects.add(record.getSubject()));
+        return subjects;
+    }
+
+    @Test
+    void reopenedJournalOverwritesTornRecord() throws IOException {
+        Path directory = Files.createTempDirectory("audit");
+        try (AuditJournal journal = new AuditJournal(directory, SEGMENT_SIZE, 16, new Metrics())) {
+            record(journal, "first");
+            record(journal, "second");
+        }
+        Path segmentFile = AuditLogFormat.segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            while (AuditLogFormat.read(segment) != null) {
+            }
+            segment.putInt(segment.position(), 40);
+            segment.putInt(segment.position() + Integer.BYTES, 12345);
+            segment.put(segment.position() + AuditLogFormat.HEADER_SIZE, (byte) 1);
+        }
+        assertEquals(List.of("first", "second"), subjects(directory));
+
+        try (AuditJournal journal = new AuditJournal(directory, SEGMENT_SIZE, 16, new Metrics())) {
+            record(journal, "third");
+        }
+
+        assertEquals(List.of("first", "second", "third"), subjects(directory));
+    }
+
+    @Test
+    void fullSegmentIsRotated() throws IOException {
+        Path directory = Files.createTempDirectory("audit");
+        Metrics metrics = new Metrics();
+        try (AuditJournal journal = new AuditJournal(directory, 128, 16, metrics)) {
+            for (int i = 0; i < 5; i++) {
+                record(journal, "student " + i);
+            }
+        }
+
+        assertEquals(List.of("student 0", "student 1", "student 2", "student 3", "student 4"), subjects(directory));
+        assertEquals(AuditLogFormat.segments(directory).size() - 1, (long) metrics.snapshot().get("audit.segments"));
+        assertNull(metrics.snapshot().get("audit.dropped"));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class AuditLogFormatTest {
+    private static int put(ByteBuffer segment, long timestampMillis, String subject) {
+        byte[] actor = AuditLogFormat.encodeField("clerk");
+        byte[] subjectBytes = AuditLogFormat.encodeField(subject);
+        byte[] object = AuditLogFormat.encodeField("");
+        int payloadLength = AuditLogFormat.FIXED_PAYLOAD_SIZE + actor.length + subjectBytes.length + object.length;
+        int start = segment.position();
+        segment.position(start + AuditLogFormat.HEADER_SIZE);
+        segment.putLong(timestampMillis);
+        segment.put((byte) AuditRecord.Operation.TERMINATE.ordinal());
+        segment.put((byte) AuditRecord.Outcome.REJECTED.ordinal());
+        for (byte[] field : new byte[][] {actor, subjectBytes, object}) {
+            segment.putShort((short) field.length);
+            segment.put(field);
+        }
+        segment.putInt(start + Integer.BYTES, AuditLogFormat.crc(segment, start + AuditLogFormat.HEADER_SIZE, payloadLength));
+        segment.putInt(start, payloadLength);
+        return start;
+    }
+
+    @Test
+    void readsRecordsUntilEndOfRecords() {
+        ByteBuffer segment = ByteBuffer.allocate(256);
+        put(segment, 1, "19900101-1234");
+        put(segment, 2, "agreement 7");
+        segment.position(0);
+
+        AuditRecord first = AuditLogFormat.read(segment);
+        AuditRecord second = AuditLogFormat.read(segment);
+        int end = segment.position();
+
+        assertEquals(1, first.getTimestampMillis());
+        assertEquals(AuditRecord.Operation.TERMINATE, first.getOperation());
+        assertEquals(AuditRecord.Outcome.REJECTED, first.getOutcome());
+        assertEquals("clerk", first.getActor());
+        assertEquals("19900101-1234", first.getSubject());
+        assertEquals("", first.getObject());
+        assertEquals("agreement 7", second.getSubject());
+        assertNull(AuditLogFormat.read(segment));
+        assertEquals(end, segment.position());
+    }
+
+    @Test
+    void recordWithBadCrcIsNotRead() {
+        ByteBuffer segment = ByteBuffer.allocate(256);
+        put(segment, 1, "first");
+        int second = put(segment, 2, "second");
+        segment.put(second + AuditLogFormat.HEADER_SIZE + AuditLogFormat.FIXED_PAYLOAD_SIZE + 5, (byte) 'X');
+        segment.position(0);
+
+        assertEquals("first", AuditLogFormat.read(segment).getSubject());
+        assertNull(AuditLogFormat.read(segment));
+        assertEquals(second, segment.position());
+    }
+
+    @Test
+    void recordTornAtEndOfSegmentIsNotRead() {
+        ByteBuffer full = ByteBuffer.allocate(256);
+        put(full, 1, "first");
+        int second = put(full, 2, "second");
+        ByteBuffer torn = ByteBuffer.wrap(full.array(), 0, full.position() - 3).slice();
+
+        assertEquals("first", AuditLogFormat.read(torn).getSubject());
+        assertNull(AuditLogFormat.read(torn));
+        assertEquals(second, torn.position());
+    }
+
+    @Test
+    void truncatesLongFields() {
+        String longField = "x".repeat(AuditLogFormat.MAX_FIELD_BYTES + 10);
+
+        byte[] encoded = AuditLogFormat.encodeField(longField);
+
+        assertEquals(AuditLogFormat.MAX_FIELD_BYTES, encoded.length);
+        assertEquals(0, AuditLogFormat.encodeField(null).length);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class AuditRingBufferTest {
+    private static boolean publish(AuditRingBuffer buffer, long timestampMillis) {
+        return buffer.publish(timestampMillis, AuditRecord.Operation.RENT, AuditRecord.Outcome.SUCCESS, "a", "s", "o");
+    }
+
+    @Test
+    void drainsInSequenceOrderAcrossWraparound() {
+        AuditRingBuffer buffer = new AuditRingBuffer(4);
+        List<Long> drained = new ArrayList<>();
+        List<Long> expected = new ArrayList<>();
+
+        for (long round = 0; round < 5; round++) {
+            for (long i = 0; i < 3; i++) {
+                assertTrue(publish(buffer, round * 3 + i));
+                expected.add(round * 3 + i);
+            }
+            assertEquals(3, buffer.drain((timestamp, operation, outcome, actor, subject, object) -> drained.add(timestamp)));
+        }
+
+        assertEquals(expected, drained);
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void drainHandsOutEventAgainAfterHandlerThrew() {
+        AuditRingBuffer buffer = new AuditRingBuffer(4);
+        publish(buffer, 1);
+        publish(buffer, 2);
+        publish(buffer, 3);
+        List<Long> drained = new ArrayList<>();
+
+        try {
+            buffer.drain((timestamp, operation, outcome, actor, subject, object) -> {
+                if (timestamp == 2) {
+                    throw new IllegalStateException();
+                }
+                drained.add(timestamp);
+            });
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(2, buffer.drain((timestamp, operation, outcome, actor, subject, object) -> drained.add(timestamp)));
+
+        assertEquals(List.of(1L, 2L, 3L), drained);
+    }
+
+    @Test
+    void publishFailsAfterAbandon() {
+        AuditRingBuffer buffer = new AuditRingBuffer(2);
+        publish(buffer, 1);
+        publish(buffer, 2);
+
+        buffer.abandon();
+
+        assertEquals(false, publish(buffer, 3));
+    }
+}
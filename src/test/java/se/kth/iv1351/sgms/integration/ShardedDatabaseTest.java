@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ShardedDatabaseTest {
+    @Test
+    void mergesSortedRuns() {
+        List<Integer> merged = ShardedDatabase.merge(List.of(List.of(1, 4, 7), List.of(2, 5, 8), List.of(3, 6, 9)),
+                                                     Comparator.naturalOrder());
+
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9), merged);
+    }
+
+    @Test
+    void mergesRunsOfDifferentLengths() {
+        List<Integer> merged = ShardedDatabase.merge(List.of(List.of(), List.of(5), List.of(1, 2, 3, 6), List.of()),
+                                                     Comparator.naturalOrder());
+
+        assertEquals(List.of(1, 2, 3, 5, 6), merged);
+    }
+
+    @Test
+    void mergesNoRuns() {
+        assertTrue(ShardedDatabase.merge(List.<List<Integer>>of(), Comparator.<Integer>naturalOrder()).isEmpty());
+    }
+
+    @Test
+    void keepsOrderOfRunsForEqualRows() {
+        String first = new String("a");
+        String second = new String("a");
+        String third = new String("a");
+
+        List<String> merged = ShardedDatabase.merge(List.of(List.of(first), List.of(second, "b"), List.of(third)),
+                                                    Comparator.naturalOrder());
+
+        assertEquals(4, merged.size());
+        assertSame(first, merged.get(0));
+        assertSame(second, merged.get(1));
+        assertSame(third, merged.get(2));
+        assertEquals("b", merged.get(3));
+    }
+}
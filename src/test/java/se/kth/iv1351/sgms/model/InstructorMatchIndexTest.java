@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class InstructorMatchIndexTest {
+    private static final long SLOT_MINUTES = 15;
+    private static final long LESSON_MINUTES = 60;
+    private static final LocalDateTime NINE = LocalDateTime.of(2024, 3, 4, 9, 0);
+    private static final Instructor ANNA = new Instructor("i1", "197001010001", "Anna", Set.of("piano"));
+    private static final Instructor BERT = new Instructor("i2", "197001010002", "Bert", Set.of("guitar"));
+
+    private static LessonSlot[] lessonsAt(String instructorId, LocalDateTime... starts) {
+        LessonSlot[] lessons = new LessonSlot[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            lessons[i] = new LessonSlot("l" + i, "individual lesson", instructorId, starts[i]);
+        }
+        return lessons;
+    }
+
+    @Test
+    void findsInstructorsTeachingInstrument() {
+        InstructorMatchIndex index = new InstructorMatchIndex(SLOT_MINUTES);
+        index.putInstructor(ANNA);
+        index.putInstructor(BERT);
+
+        assertEquals(List.of(ANNA), index.findFree("piano", NINE, NINE.plusHours(1)));
+        assertEquals(List.of(BERT), index.findFree("guitar", NINE, NINE.plusHours(1)));
+        assertTrue(index.findFree("violin", NINE, NINE.plusHours(1)).isEmpty());
+    }
+
+    @Test
+    void instructorIsBusyInEverySlotALessonOverlaps() {
+        InstructorMatchIndex index = new InstructorMatchIndex(SLOT_MINUTES);
+        index.putInstructor(ANNA);
+        index.setLessons("i1", lessonsAt("i1", NINE.plusMinutes(5)), LESSON_MINUTES);
+
+        assertTrue(index.findFree("piano", NINE, NINE.plusMinutes(15)).isEmpty());
+        assertTrue(index.findFree("piano", NINE.plusMinutes(60), NINE.plusMinutes(75)).isEmpty());
+        assertEquals(List.of(ANNA), index.findFree("piano", NINE.minusMinutes(15), NINE));
+        assertEquals(List.of(ANNA), index.findFree("piano", NINE.plusMinutes(75), NINE.plusMinutes(90)));
+    }
+
+    @Test
+    void setLessonsReplacesPreviousLessons() {
+        InstructorMatchIndex index = new InstructorMatchIndex(SLOT_MINUTES);
+        index.putInstructor(ANNA);
+        index.setLessons("i1", lessonsAt("i1", NINE), LESSON_MINUTES);
+        index.setLessons("i1", lessonsAt("i1", NINE.plusHours(2)), LESSON_MINUTES);
+
+        assertEquals(List.of(ANNA), index.findFree("piano", NINE, NINE.plusHours(1)));
+        assertTrue(index.findFree("piano", NINE.plusHours(2), NINE.plusHours(3)).isEmpty());
+    }
+
+    @Test
+    void putInstructorReplacesInstruments() {
+        InstructorMatchIndex index = new InstructorMatchIndex(SLOT_MINUTES);
+        index.putInstructor(ANNA);
+        Instructor annaOnGuitar = new Instructor("i1", "197001010001", "Anna", Set.of("guitar"));
+        index.putInstructor(annaOnGuitar);
+
+        assertTrue(index.findFree("piano", NINE, NINE.plusHours(1)).isEmpty());
+        assertEquals(List.of(annaOnGuitar), index.findFree("guitar", NINE, NINE.plusHours(1)));
+    }
+
+    @Test
+    void lessonsOfUnknownInstructorAreIgnored() {
+        InstructorMatchIndex index = new InstructorMatchIndex(SLOT_MINUTES);
+        index.setLessons("i1", lessonsAt("i1", NINE), LESSON_MINUTES);
+        index.putInstructor(ANNA);
+
+        assertEquals(List.of(ANNA), index.findFree("piano", NINE, NINE.plusHours(1)));
+    }
+
+    @Test
+    void reusedOrdinalDoesNotInheritLessons() {
+        InstructorMatchIndex index = new InstructorMatchIndex(SLOT_MINUTES);
+        index.putInstructor(ANNA);
+        index.setLessons("i1", lessonsAt("i1", NINE), LESSON_MINUTES);
+        index.removeInstructor("i1");
+        Instructor carl = new Instructor("i3", "197001010003", "Carl", Set.of("piano"));
+        index.putInstructor(carl);
+
+        assertEquals(List.of(carl), index.findFree("piano", NINE, NINE.plusHours(1)));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class InstructorScheduleTest {
+    private static final LocalDateTime NINE = LocalDateTime.of(2024, 3, 4, 9, 0);
+    private static final Instructor ANNA = new Instructor("i1", "197001010001", "Anna", Set.of("piano"));
+    private static final Instructor BERT = new Instructor("i2", "197001010002", "Bert", Set.of("piano", "guitar"));
+
+    private static InstructorSchedule schedule(List<Instructor> instructors, List<LessonSlot> lessons) {
+        return new InstructorSchedule(instructors, lessons, 1, Duration.ofMinutes(60), Duration.ofMinutes(15));
+    }
+
+    private static LessonSlot lesson(String lessonId, String instructorId, LocalDateTime start) {
+        return new LessonSlot(lessonId, "individual lesson", instructorId, start);
+    }
+
+    @Test
+    void findsLessonOverlappingStart() {
+        InstructorSchedule schedule = schedule(List.of(ANNA), List.of(lesson("l1", "i1", NINE)));
+
+        assertEquals("l1", schedule.findLessonDuring("i1", NINE.plusMinutes(30)).getLessonId());
+        assertEquals("l1", schedule.findLessonDuring("i1", NINE.minusMinutes(30)).getLessonId());
+        assertNull(schedule.findLessonDuring("i1", NINE.plusMinutes(60)));
+        assertNull(schedule.findLessonDuring("i1", NINE.minusMinutes(60)));
+    }
+
+    @Test
+    void findsOverlappingLessonAmongSeveral() {
+        InstructorSchedule schedule = schedule(List.of(ANNA), List.of(lesson("l1", "i1", NINE),
+                                                                       lesson("l2", "i1", NINE.plusMinutes(10))));
+
+        assertEquals("l2", schedule.findLessonDuring("i1", NINE.plusMinutes(65)).getLessonId());
+    }
+
+    @Test
+    void findsConflictsStartingInPeriod() {
+        InstructorSchedule schedule = schedule(List.of(ANNA, BERT),
+                                               List.of(lesson("l1", "i1", NINE), lesson("l2", "i1", NINE.plusMinutes(30)),
+                                                       lesson("l3", "i2", NINE), lesson("l4", "i2", NINE.plusMinutes(60))));
+
+        List<ScheduleConflict> conflicts = schedule.findConflicts(NINE.toLocalDate().atStartOfDay(), NINE.plusDays(1));
+
+        assertEquals(1, conflicts.size());
+        assertEquals("l1", conflicts.get(0).getFirstLessonId());
+        assertEquals("l2", conflicts.get(0).getSecondLessonId());
+        assertTrue(schedule.findConflicts(NINE.plusMinutes(31), NINE.plusDays(1)).isEmpty());
+    }
+
+    @Test
+    void applyReplacesAndRemovesLessons() {
+        InstructorSchedule schedule = schedule(List.of(ANNA, BERT), List.of(lesson("l1", "i1", NINE)));
+
+        schedule.apply(List.of(), List.of(), List.of(lesson("l1", "i2", NINE)), List.of("l1"), 2);
+
+        assertNull(schedule.findLessonDuring("i1", NINE));
+        assertEquals("l1", schedule.findLessonDuring("i2", NINE).getLessonId());
+        assertEquals(List.of(ANNA), schedule.findFreeInstructors("piano", NINE, NINE.plusMinutes(60)));
+
+        schedule.apply(List.of(), List.of(), List.of(), List.of("l1"), 3);
+
+        assertNull(schedule.findLessonDuring("i2", NINE));
+        assertEquals(List.of(ANNA, BERT), schedule.findFreeInstructors("piano", NINE, NINE.plusMinutes(60)));
+        assertEquals(3, schedule.getSnapshotXmin());
+    }
+
+    @Test
+    void lessonsReadBeforeTheirInstructorAreIndexedWhenTheInstructorArrives() {
+        InstructorSchedule schedule = schedule(List.of(ANNA), List.of(lesson("l1", "i2", NINE)));
+
+        assertEquals(List.of(ANNA), schedule.findFreeInstructors("piano", NINE, NINE.plusMinutes(60)));
+
+        schedule.apply(List.of(BERT), List.of("i2"), List.of(), List.of(), 2);
+
+        assertEquals(List.of(ANNA), schedule.findFreeInstructors("piano", NINE, NINE.plusMinutes(60)));
+        assertEquals(List.of(ANNA, BERT), schedule.findFreeInstructors("piano", NINE.plusMinutes(60), NINE.plusMinutes(120)));
+    }
+
+    @Test
+    void removedInstructorIsNotFound() {
+        InstructorSchedule schedule = schedule(List.of(ANNA, BERT), List.of());
+
+        schedule.apply(List.of(), List.of("i2"), List.of(), List.of(), 2);
+
+        assertNull(schedule.findInstructorByPersonalNumber("197001010002"));
+        assertEquals(List.of(ANNA), schedule.findFreeInstructors("piano", NINE, NINE.plusMinutes(60)));
+        assertTrue(schedule.findFreeInstructors("guitar", NINE, NINE.plusMinutes(60)).isEmpty());
+    }
+}
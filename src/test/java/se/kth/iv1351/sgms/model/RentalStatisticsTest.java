@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Leif Lindbäck <leifl@kth.se>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package se.kth.iv1351.sgms.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class RentalStatisticsTest {
+    private static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+
+    private static RentalStatistics pianosAndGuitar() {
+        RentalStatistics statistics = new RentalStatistics(FIRST_DATE);
+        statistics.addInstrument("r1", "piano", 100);
+        statistics.addInstrument("r2", "piano", 100);
+        statistics.addInstrument("r3", "guitar", 50);
+        return statistics;
+    }
+
+    @Test
+    void summarizesOnlyThePeriod() {
+        RentalStatistics statistics = pianosAndGuitar();
+        statistics.addRentals("piano", 100, LocalDate.of(2020, 1, 15), LocalDate.of(2020, 3, 10), 1);
+        statistics.addRentals("piano", 100, LocalDate.of(2020, 2, 1), null, 1);
+
+        List<InstrumentTypeStatistics> february = statistics.summarize(LocalDate.of(2020, 2, 1), LocalDate.of(2020, 2, 29));
+        List<InstrumentTypeStatistics> march = statistics.summarize(LocalDate.of(2020, 3, 1), LocalDate.of(2020, 3, 31));
+
+        assertEquals("guitar", february.get(0).getInstrument());
+        assertEquals(0, february.get(0).getNofRentals());
+        InstrumentTypeStatistics pianosInFebruary = february.get(1);
+        assertEquals(2, pianosInFebruary.getNofInstruments());
+        assertEquals(1, pianosInFebruary.getNofRentals());
+        assertEquals(1.0, pianosInFebruary.getUtilization());
+        assertEquals(200, pianosInFebruary.getRevenue());
+        assertEquals(0.0, pianosInFebruary.getAverageRentalDays());
+        InstrumentTypeStatistics pianosInMarch = march.get(1);
+        assertEquals(0, pianosInMarch.getNofRentals());
+        assertEquals(200, pianosInMarch.getRevenue());
+        assertEquals(55.0, pianosInMarch.getAverageRentalDays());
+        assertEquals((31 + 9) / 62.0, pianosInMarch.getUtilization());
+    }
+
+    @Test
+    void monthlyRevenueSpansYearBoundary() {
+        RentalStatistics statistics = pianosAndGuitar();
+        statistics.addRentals("piano", 100, LocalDate.of(2020, 11, 20), LocalDate.of(2021, 2, 5), 2);
+
+        assertArrayEquals(new long[] {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 200, 200}, statistics.monthlyRevenue("piano", 2020));
+        assertArrayEquals(new long[] {200, 200, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, statistics.monthlyRevenue("piano", 2021));
+        assertArrayEquals(new long[12], statistics.monthlyRevenue("violin", 2020));
+    }
+
+    @Test
+    void recordedRentalAndReturnAreSummarized() {
+        LocalDate today = LocalDate.now();
+        RentalStatistics statistics = pianosAndGuitar();
+
+        statistics.recordRental("r1", today);
+        statistics.recordReturn(new RentalPeriod("r1", 100, today, null), today.plusDays(3));
+
+        InstrumentTypeStatistics pianos = statistics.summarize(today, today.plusDays(3)).get(1);
+        assertEquals(1, pianos.getNofRentals());
+        assertEquals(3.0, pianos.getAverageRentalDays());
+        assertEquals(100, pianos.getRevenue());
+        assertFalse(statistics.isStale());
+    }
+
+    @Test
+    void growsForDatesAfterTheInitialRange() {
+        LocalDate later = LocalDate.now().plusYears(3);
+        RentalStatistics statistics = pianosAndGuitar();
+        statistics.addRentals("piano", 100, FIRST_DATE, null, 1);
+
+        statistics.addRentals("guitar", 50, later, later.plusMonths(1), 1);
+
+        InstrumentTypeStatistics guitars = statistics.summarize(later, later.plusMonths(1)).get(0);
+        assertEquals(1, guitars.getNofRentals());
+        assertEquals(100, guitars.getRevenue());
+        assertEquals(1, statistics.summarize(FIRST_DATE, FIRST_DATE).get(1).getNofRentals());
+        assertEquals(100, statistics.monthlyRevenue("piano", later.getYear())[11]);
+        assertEquals(50, statistics.monthlyRevenue("guitar", later.getYear())[later.getMonthValue() - 1]);
+    }
+
+    @Test
+    void unknownInstrumentMakesStatisticsStale() {
+        RentalStatistics statistics = pianosAndGuitar();
+
+        statistics.recordRental("r9", LocalDate.now());
+
+        assertTrue(statistics.isStale());
+    }
+
+    @Test
+    void markStaleMakesStatisticsStale() {
+        RentalStatistics statistics = pianosAndGuitar();
+
+        statistics.markStale();
+
+        assertTrue(statistics.isStale());
+    }
+}